@@ -0,0 +1,20 @@
+package org.payment.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point of {@code benchmarks.jar}: the JMH command line with the GC profiler enabled, so every run
+ * reports allocation rates next to the timings. Passing any {@code -prof} option replaces the default.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        if (!arguments.contains("-prof")) {
+            arguments.add("-prof");
+            arguments.add("gc");
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,102 @@
+package org.payment.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.payment.CompactInput;
+import org.payment.Main;
+import org.payment.Order;
+import org.payment.PaymentMethod;
+import org.payment.StreamingOrderReader;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading generated input files: the {@code ObjectMapper} path {@link Main} uses for the legacy
+ * engine, and the streaming reader of the fixed-point engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonLoadingBenchmark {
+    private static final Method READ_JSON_FILE;
+
+    static {
+        try {
+            READ_JSON_FILE = Main.class.getDeclaredMethod("readJsonFile", String.class, TypeReference.class);
+            READ_JSON_FILE.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class InputFiles {
+        Path directory;
+        Path orders;
+        Path methods;
+        List<PaymentMethod> loadedMethods;
+
+        @Setup(Level.Trial)
+        public void write(WorkloadState state) throws IOException {
+            directory = Files.createTempDirectory("payment-benchmark");
+            orders = directory.resolve("orders.json");
+            methods = directory.resolve("paymentmethods.json");
+            state.workload.write(orders, methods);
+            loadedMethods = state.workload.methods();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(orders);
+            Files.deleteIfExists(methods);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Benchmark
+    public List<Order> mainReadsOrders(InputFiles files) {
+        return readJsonFile(files.orders, new TypeReference<List<Order>>() {});
+    }
+
+    @Benchmark
+    public List<PaymentMethod> mainReadsPaymentMethods(InputFiles files) {
+        return readJsonFile(files.methods, new TypeReference<List<PaymentMethod>>() {});
+    }
+
+    @Benchmark
+    public CompactInput streamOrders(InputFiles files) throws IOException {
+        CompactInput input = new CompactInput(files.loadedMethods);
+        StreamingOrderReader.read(files.orders, input, order -> { });
+        return input;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T readJsonFile(Path path, TypeReference<T> type) {
+        try {
+            return (T) READ_JSON_FILE.invoke(null, path.toString(), type);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.payment.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.payment.Candidate;
+import org.payment.FixedPointSelector;
+import org.payment.Order;
+import org.payment.PaymentMethod;
+import org.payment.PaymentSelector;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks every phase of {@link PaymentSelector} and the whole run of both engines.
+ * <p>
+ * The phases are private, so they are called reflectively, the same way the unit tests reach them. Phases that
+ * spend limits get a fresh selector for every invocation; the fallback phases start from the state the greedy
+ * pass leaves behind.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentSelectorBenchmark {
+    private static final String POINTS_ID = "PUNKTY";
+    private static final Comparator<Candidate> PRIORITY = Comparator
+            .comparing(Candidate::getRatioDiscountPercent)
+            .thenComparing(Candidate::getDiscountAmount).reversed();
+
+    private static final Method GENERATE = phase("generateAllPossibleCandidates", PaymentMethod.class);
+    private static final Method PAY_GREEDILY = phase("payGreedily", PaymentMethod.class);
+    private static final Method ASSIGN_FULL_CARD = phase("assignFullCardNoDiscount");
+    private static final Method PAY_UNPAID = phase("payForUnpaidOrders", PaymentMethod.class);
+    private static final Method PAY_ALL_NO_DISCOUNT = phase("payAllNoDiscount", PaymentMethod.class);
+
+    @State(Scope.Thread)
+    public static class Selector {
+        PaymentSelector selector;
+        PaymentMethod points;
+        List<Order> orders;
+        List<PaymentMethod> methods;
+
+        @Setup(Level.Invocation)
+        public void create(WorkloadState state) {
+            orders = state.workload.orders();
+            methods = state.workload.methods();
+            points = points(methods);
+            selector = new PaymentSelector(orders, methods);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AfterGreedy {
+        PaymentSelector selector;
+        PaymentMethod points;
+
+        @Setup(Level.Invocation)
+        public void payGreedily(WorkloadState state) {
+            List<PaymentMethod> methods = state.workload.methods();
+            points = points(methods);
+            selector = new PaymentSelector(state.workload.orders(), methods);
+            invoke(PAY_GREEDILY, selector, points);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Candidates {
+        List<Candidate> generated;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void generate(WorkloadState state) {
+            List<PaymentMethod> methods = state.workload.methods();
+            generated = (List<Candidate>) invoke(GENERATE, new PaymentSelector(state.workload.orders(), methods),
+                    points(methods));
+        }
+    }
+
+    /**
+     * Discards what the selectors print, so the benchmarks do not measure the console.
+     */
+    @State(Scope.Benchmark)
+    public static class QuietOutput {
+        private PrintStream original;
+        private PrintStream originalErr;
+
+        @Setup(Level.Trial)
+        public void silence() {
+            original = System.out;
+            originalErr = System.err;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        @TearDown(Level.Trial)
+        public void restore() {
+            System.setOut(original);
+            System.setErr(originalErr);
+        }
+    }
+
+    @Benchmark
+    public Object generateCandidates(Selector state) {
+        return invoke(GENERATE, state.selector, state.points);
+    }
+
+    @Benchmark
+    public List<Candidate> sortCandidates(Candidates state) {
+        List<Candidate> candidates = new ArrayList<>(state.generated);
+        candidates.sort(PRIORITY);
+        return candidates;
+    }
+
+    /**
+     * Candidate generation, sort and the greedy commit loop.
+     */
+    @Benchmark
+    public Object greedyCommit(Selector state) {
+        return invoke(PAY_GREEDILY, state.selector, state.points);
+    }
+
+    @Benchmark
+    public Object fullCardFallback(AfterGreedy state) {
+        return invoke(ASSIGN_FULL_CARD, state.selector);
+    }
+
+    /**
+     * Full-card fallback followed by the partial fallback, which throws when the limits are too tight.
+     */
+    @Benchmark
+    public Object partialFallback(AfterGreedy state) {
+        invoke(ASSIGN_FULL_CARD, state.selector);
+        try {
+            return invoke(PAY_UNPAID, state.selector, state.points);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object noDiscountFallback(Selector state) {
+        try {
+            return invoke(PAY_ALL_NO_DISCOUNT, state.selector, state.points);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+
+    /**
+     * End-to-end run, including the no-discount restart, which throws when even that does not fit.
+     */
+    @Benchmark
+    public Object runSelector(Selector state, QuietOutput output) {
+        try {
+            state.selector.runSelector();
+            return state.methods;
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object fixedPointSelect(Selector state, QuietOutput output) {
+        try {
+            return new FixedPointSelector(state.orders, state.methods).select();
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+
+    private static PaymentMethod points(List<PaymentMethod> methods) {
+        return methods.stream().filter(m -> m.getId().equals(POINTS_ID)).findFirst().orElseThrow();
+    }
+
+    private static Method phase(String name, Class<?>... parameterTypes) {
+        try {
+            Method method = PaymentSelector.class.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return method;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("PaymentSelector has no phase " + name, e);
+        }
+    }
+
+    private static Object invoke(Method phase, PaymentSelector selector, Object... args) {
+        try {
+            return phase.invoke(selector, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
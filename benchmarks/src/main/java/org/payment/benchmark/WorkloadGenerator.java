@@ -0,0 +1,132 @@
+package org.payment.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import org.payment.Order;
+import org.payment.PaymentMethod;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of synthetic {@code orders.json} / {@code paymentmethods.json} inputs.
+ * <p>
+ * Order values follow a log-normal distribution between 1.00 and 2000.00, each order is promoted by up to
+ * {@code promotionsPerOrder} distinct cards, and the total order value is {@code tightness} times the sum of all
+ * limits: close to {@code 1.0} the discounts no longer fit, so the fallback paths get exercised.
+ */
+public class WorkloadGenerator {
+    private static final String POINTS_ID = "PUNKTY";
+    private static final List<String> BANK_CARDS = List.of(
+            "mZysk", "BosBankrut", "Pekao", "Santander", "ING", "Millennium", "Alior", "Citi");
+    private static final double POINTS_SHARE = 0.15;
+
+    private final List<Order> orders;
+    private final List<PaymentMethod> methods;
+
+    public WorkloadGenerator(long seed, int orderCount, int promotionsPerOrder, int cardCount, double tightness) {
+        Random random = new Random(seed);
+        List<String> cards = new ArrayList<>();
+        for (int card = 0; card < cardCount; card++) {
+            cards.add(card < BANK_CARDS.size() ? BANK_CARDS.get(card) : "CARD" + card);
+        }
+
+        this.orders = new ArrayList<>(orderCount);
+        long totalCents = 0;
+        for (int order = 0; order < orderCount; order++) {
+            long cents = Math.clamp(Math.round(Math.exp(9.0 + 1.1 * random.nextGaussian())), 100, 200_000);
+            totalCents += cents;
+            List<String> shuffled = new ArrayList<>(cards);
+            Collections.shuffle(shuffled, random);
+            int promotions = Math.min(random.nextInt(promotionsPerOrder + 1), shuffled.size());
+            orders.add(new Order("ORDER" + (order + 1), BigDecimal.valueOf(cents, 2),
+                    List.copyOf(shuffled.subList(0, promotions))));
+        }
+
+        long limitCents = Math.round(totalCents / tightness);
+        double[] weights = new double[cardCount];
+        double weightSum = 0;
+        for (int card = 0; card < cardCount; card++) {
+            weights[card] = 0.5 + random.nextDouble();
+            weightSum += weights[card];
+        }
+        this.methods = new ArrayList<>(cardCount + 1);
+        methods.add(new PaymentMethod(POINTS_ID, BigDecimal.valueOf(10 + random.nextInt(11)),
+                BigDecimal.valueOf(Math.round(limitCents * POINTS_SHARE), 2)));
+        for (int card = 0; card < cardCount; card++) {
+            long cardCents = Math.round(limitCents * (1 - POINTS_SHARE) * weights[card] / weightSum);
+            methods.add(new PaymentMethod(cards.get(card), BigDecimal.valueOf(random.nextInt(21)),
+                    BigDecimal.valueOf(cardCents, 2)));
+        }
+    }
+
+    public List<Order> orders() {
+        return orders;
+    }
+
+    /**
+     * Returns fresh, unused payment methods; the selectors mutate the methods they are given.
+     */
+    public List<PaymentMethod> methods() {
+        return methods.stream()
+                .map(m -> new PaymentMethod(m.getId(), m.getDiscountPercent(), m.getLimit()))
+                .toList();
+    }
+
+    public void write(Path ordersFile, Path methodsFile) throws IOException {
+        JsonFactory factory = JsonFactory.builder().enable(StreamWriteFeature.WRITE_BIGDECIMAL_AS_PLAIN).build();
+        try (JsonGenerator json = factory.createGenerator(ordersFile.toFile(), JsonEncoding.UTF8)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartArray();
+            for (Order order : orders) {
+                json.writeStartObject();
+                json.writeStringField("id", order.id());
+                json.writeNumberField("value", order.amountToPay());
+                if (!order.promotions().isEmpty()) {
+                    json.writeArrayFieldStart("promotions");
+                    for (String promotion : order.promotions()) {
+                        json.writeString(promotion);
+                    }
+                    json.writeEndArray();
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+        try (JsonGenerator json = factory.createGenerator(methodsFile.toFile(), JsonEncoding.UTF8)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartArray();
+            for (PaymentMethod method : methods) {
+                json.writeStartObject();
+                json.writeStringField("id", method.getId());
+                json.writeNumberField("discount", method.getDiscountPercent());
+                json.writeNumberField("limit", method.getLimit());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes a workload: {@code <output dir> <orders> <promotions per order> <cards> <tightness> [seed]}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Usage: WorkloadGenerator <output dir> <orders> <promotions per order> <cards> "
+                    + "<tightness> [seed]");
+            System.exit(1);
+        }
+        Path directory = Path.of(args[0]);
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42;
+        WorkloadGenerator generator = new WorkloadGenerator(seed, Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]), Double.parseDouble(args[4]));
+        generator.write(directory.resolve("orders.json"), directory.resolve("paymentmethods.json"));
+    }
+}
@@ -0,0 +1,35 @@
+package org.payment.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Synthetic workload shared by all benchmarks of one parameter combination.
+ */
+@State(Scope.Benchmark)
+public class WorkloadState {
+    @Param({"1000", "10000"})
+    public int orders;
+
+    @Param({"1", "3"})
+    public int promotionsPerOrder;
+
+    @Param({"3", "8"})
+    public int cards;
+
+    @Param({"0.5", "0.95"})
+    public double tightness;
+
+    @Param("42")
+    public long seed;
+
+    public WorkloadGenerator workload;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        workload = new WorkloadGenerator(seed, orders, promotionsPerOrder, cards, tightness);
+    }
+}
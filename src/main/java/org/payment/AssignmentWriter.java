@@ -0,0 +1,173 @@
+package org.payment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams per-order assignments to a file, one record per settled order, as JSON lines or CSV.
+ * <p>
+ * Records are encoded into one fixed direct buffer that is written to a {@link FileChannel} whenever it fills,
+ * so the memory used does not depend on the number of orders. Amounts are printed in whole cents, rounded like
+ * the totals. A record carries the order id, the card id (empty, or {@code null} in JSON, when the order is paid
+ * with points only), the points, the card amount and the discount.
+ */
+public final class AssignmentWriter implements Closeable {
+    static final int BUFFER_BYTES = 1 << 20;
+    private static final String CSV_HEADER = "orderId,cardId,points,cardAmount,discount\n";
+
+    public enum Format {
+        JSON_LINES, CSV;
+
+        /**
+         * Returns {@link #CSV} for a {@code .csv} file and {@link #JSON_LINES} otherwise.
+         */
+        public static Format forPath(Path path) {
+            return path.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : JSON_LINES;
+        }
+    }
+
+    private final FileChannel channel;
+    private final Format format;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final StringBuilder record = new StringBuilder(256);
+    private long records;
+
+    private AssignmentWriter(FileChannel channel, Format format) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        if (format == Format.CSV) {
+            put(CSV_HEADER);
+        }
+    }
+
+    /**
+     * Creates or truncates {@code path} and writes the header, if the format has one.
+     */
+    public static AssignmentWriter open(Path path, Format format) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new AssignmentWriter(channel, format);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes every settled order of {@code plan}, in input order.
+     */
+    public void write(PaymentPlan plan) throws IOException {
+        CompactInput input = plan.input();
+        for (int order = 0; order < plan.orderCount(); order++) {
+            if (plan.isSettled(order)) {
+                int card = plan.card(order);
+                write(input.orderId(order), card == PaymentPlan.NO_CARD ? null : input.methodId(card),
+                        plan.points(order), plan.cardAmount(order), plan.discount(order));
+            }
+        }
+    }
+
+    /**
+     * Writes one record; amounts are {@link MoneyUnits}.
+     */
+    public void write(String orderId, String cardId, long points, long cardAmount, long discount)
+            throws IOException {
+        record.setLength(0);
+        if (format == Format.CSV) {
+            appendCsv(orderId).append(',');
+            if (cardId != null) {
+                appendCsv(cardId);
+            }
+            record.append(',').append(MoneyUnits.toCents(points).toPlainString())
+                    .append(',').append(MoneyUnits.toCents(cardAmount).toPlainString())
+                    .append(',').append(MoneyUnits.toCents(discount).toPlainString());
+        } else {
+            record.append("{\"orderId\":");
+            appendJson(orderId);
+            record.append(",\"cardId\":");
+            if (cardId == null) {
+                record.append("null");
+            } else {
+                appendJson(cardId);
+            }
+            record.append(",\"points\":").append(MoneyUnits.toCents(points).toPlainString())
+                    .append(",\"cardAmount\":").append(MoneyUnits.toCents(cardAmount).toPlainString())
+                    .append(",\"discount\":").append(MoneyUnits.toCents(discount).toPlainString())
+                    .append('}');
+        }
+        record.append('\n');
+        put(record);
+        records++;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            flush();
+        }
+    }
+
+    private void put(CharSequence text) throws IOException {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.remaining()) {
+            flush();
+        }
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private StringBuilder appendCsv(String value) {
+        boolean quoted = value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                || value.indexOf('\r') >= 0;
+        if (!quoted) {
+            return record.append(value);
+        }
+        return record.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private void appendJson(String value) {
+        record.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> record.append("\\\"");
+                case '\\' -> record.append("\\\\");
+                case '\n' -> record.append("\\n");
+                case '\r' -> record.append("\\r");
+                case '\t' -> record.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        record.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        record.append(c);
+                    }
+                }
+            }
+        }
+        record.append('"');
+    }
+}
@@ -0,0 +1,31 @@
+package org.payment;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * One customer of a batch run: a line of the JSON-lines input, or one subdirectory of a batch directory.
+ * <p>
+ * A customer whose input could not be read carries the reason in {@code error} and gets an error line instead of
+ * a result.
+ */
+public record BatchProblem(String customer, List<Order> orders, List<PaymentMethod> paymentMethods, String error) {
+
+    @JsonCreator
+    public BatchProblem(
+            @JsonProperty("customer") String customer,
+            @JsonProperty("orders") List<Order> orders,
+            @JsonProperty("paymentMethods") List<PaymentMethod> paymentMethods) {
+        this(customer, orders == null ? List.of() : orders, paymentMethods == null ? List.of() : paymentMethods,
+                null);
+    }
+
+    /**
+     * Returns a customer whose input could not be read.
+     */
+    public static BatchProblem invalid(String customer, String error) {
+        return new BatchProblem(customer, List.of(), List.of(), error);
+    }
+}
@@ -0,0 +1,263 @@
+package org.payment;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Solves many independent customers on one work-stealing pool and streams one JSON line per customer.
+ * <p>
+ * Problems are read lazily and at most {@code WINDOW_PER_WORKER} of them per worker are in flight, so memory stays
+ * flat however many customers the input holds. Every worker keeps its candidate table and output buffer between
+ * customers. In ordered mode the lines come out in input order; otherwise each line is written as soon as its
+ * customer is solved and the {@code customer} field tells them apart.
+ */
+public final class BatchSelector {
+    private static final int WINDOW_PER_WORKER = 64;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int parallelism;
+    private final boolean ordered;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public BatchSelector(int parallelism, boolean ordered) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Solves every problem and writes its result line to {@code out}; returns the number of customers written.
+     * Customers whose input is infeasible or invalid get an {@code error} line instead of a result. A failure to
+     * write a line stops the run and is thrown once the lines in flight are done.
+     */
+    public long run(Iterator<BatchProblem> problems, OutputStream out) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return ordered ? runOrdered(pool, problems, out) : runUnordered(pool, problems, out);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private long runOrdered(ForkJoinPool pool, Iterator<BatchProblem> problems, OutputStream out)
+            throws IOException {
+        ArrayDeque<ForkJoinTask<byte[]>> window = new ArrayDeque<>();
+        long written = 0;
+        while (problems.hasNext()) {
+            BatchProblem problem = problems.next();
+            window.addLast(pool.submit(() -> solve(problem)));
+            if (window.size() >= parallelism * WINDOW_PER_WORKER) {
+                out.write(window.removeFirst().join());
+                written++;
+            }
+        }
+        while (!window.isEmpty()) {
+            out.write(window.removeFirst().join());
+            written++;
+        }
+        out.flush();
+        return written;
+    }
+
+    private long runUnordered(ForkJoinPool pool, Iterator<BatchProblem> problems, OutputStream out)
+            throws IOException {
+        int windowSize = parallelism * WINDOW_PER_WORKER;
+        Semaphore window = new Semaphore(windowSize);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        AtomicLong written = new AtomicLong();
+        try {
+            while (problems.hasNext() && failure.get() == null) {
+                BatchProblem problem = problems.next();
+                window.acquire();
+                pool.execute(() -> {
+                    try {
+                        byte[] line = solve(problem);
+                        synchronized (out) {
+                            if (failure.get() == null) {
+                                out.write(line);
+                                written.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (UncheckedIOException e) {
+                        failure.compareAndSet(null, e.getCause());
+                    } finally {
+                        window.release();
+                    }
+                });
+            }
+            window.acquire(windowSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing batch results", e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        out.flush();
+        return written.get();
+    }
+
+    private byte[] solve(BatchProblem problem) {
+        Scratch buffers = scratch.get();
+        buffers.out.reset();
+        try (JsonGenerator json = MAPPER.getFactory().createGenerator(buffers.out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("customer", problem.customer());
+            if (problem.error() != null) {
+                json.writeStringField("error", problem.error());
+            } else {
+                try {
+                    new SelectionRequest(problem.orders(), problem.paymentMethods()).validate();
+                    FixedPointSelector selector = new FixedPointSelector(
+                            CompactInput.of(problem.orders(), problem.paymentMethods()), buffers.candidates);
+                    selector.select();
+                    writeResult(json, SelectionResult.of(selector.getPlan()));
+                } catch (RuntimeException e) {
+                    json.writeStringField("error", String.valueOf(e.getMessage()));
+                }
+            }
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffers.out.write('\n');
+        return buffers.out.toByteArray();
+    }
+
+    private static void writeResult(JsonGenerator json, SelectionResult result) throws IOException {
+        json.writeObjectFieldStart("methodTotals");
+        for (Map.Entry<String, BigDecimal> total : result.methodTotals().entrySet()) {
+            json.writeStringField(total.getKey(), total.getValue().toPlainString());
+        }
+        json.writeEndObject();
+        json.writeStringField("totalDiscount", result.totalDiscount().toPlainString());
+        json.writeArrayFieldStart("assignments");
+        for (OrderAssignment assignment : result.assignments()) {
+            json.writeStartObject();
+            json.writeStringField("order", assignment.orderId());
+            if (assignment.cardId() != null) {
+                json.writeStringField("card", assignment.cardId());
+            }
+            json.writeStringField("points", assignment.points().toPlainString());
+            json.writeStringField("cardAmount", assignment.cardAmount().toPlainString());
+            json.writeStringField("discount", assignment.discount().toPlainString());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+    /**
+     * Reads problems lazily: one per non-blank line of a JSON-lines file, or one per subdirectory holding
+     * {@code orders.json} and {@code paymentmethods.json}, named after the subdirectory, in name order. A line or
+     * directory that cannot be parsed becomes an {@link BatchProblem#invalid(String, String) invalid} problem,
+     * named after its customer id when that can still be read and after its line number otherwise.
+     */
+    public static Iterator<BatchProblem> read(Path input) throws IOException {
+        if (Files.isDirectory(input)) {
+            List<Path> customers;
+            try (Stream<Path> entries = Files.list(input)) {
+                customers = entries.filter(Files::isDirectory).sorted().toList();
+            }
+            return customers.stream().map(BatchSelector::readDirectory).iterator();
+        }
+        BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+        return new Iterator<>() {
+            private long lineNumber;
+            private String line = nextLine();
+
+            private String nextLine() {
+                try {
+                    String next;
+                    do {
+                        next = reader.readLine();
+                        lineNumber++;
+                    } while (next != null && next.isBlank());
+                    if (next == null) {
+                        reader.close();
+                    }
+                    return next;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return line != null;
+            }
+
+            @Override
+            public BatchProblem next() {
+                if (line == null) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return MAPPER.readValue(line, BatchProblem.class);
+                } catch (IOException e) {
+                    return BatchProblem.invalid(customerOf(line, lineNumber), "Invalid input: " + e.getMessage());
+                } finally {
+                    line = nextLine();
+                }
+            }
+        };
+    }
+
+    private static BatchProblem readDirectory(Path directory) {
+        String customer = directory.getFileName().toString();
+        try {
+            return new BatchProblem(customer,
+                    List.of(MAPPER.readValue(directory.resolve("orders.json").toFile(), Order[].class)),
+                    List.of(MAPPER.readValue(directory.resolve("paymentmethods.json").toFile(),
+                            PaymentMethod[].class)));
+        } catch (IOException e) {
+            return BatchProblem.invalid(customer, "Invalid input: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the customer id of a line that did not parse as a problem, or {@code line N} when it has none.
+     */
+    private static String customerOf(String line, long lineNumber) {
+        try {
+            JsonNode customer = MAPPER.readTree(line).get("customer");
+            if (customer != null && customer.isTextual()) {
+                return customer.asText();
+            }
+        } catch (IOException | RuntimeException e) {
+            // not even valid JSON, fall back to the line number
+        }
+        return "line " + lineNumber;
+    }
+
+    private static final class Scratch {
+        private final CandidateTable candidates = new CandidateTable();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    }
+}
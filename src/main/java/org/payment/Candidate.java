@@ -7,6 +7,7 @@ import java.math.BigDecimal;
 @Getter
 public class Candidate {
     private final Order order;
+    private final int orderIndex;
     private final PaymentMethod paymentMethod;
     private BigDecimal usePoints;
     private BigDecimal useCardAmount;
@@ -15,7 +16,17 @@ public class Candidate {
 
     public Candidate(Order order, PaymentMethod paymentMethod, BigDecimal requiredPoints,
                      BigDecimal requiredCardAmount, BigDecimal discountAmount, BigDecimal ratioDiscountPercent) {
+        this(order, -1, paymentMethod, requiredPoints, requiredCardAmount, discountAmount, ratioDiscountPercent);
+    }
+
+    /**
+     * Creates a candidate for the order at {@code orderIndex} in the selector input, so the selector can track it
+     * by index instead of by id.
+     */
+    Candidate(Order order, int orderIndex, PaymentMethod paymentMethod, BigDecimal requiredPoints,
+              BigDecimal requiredCardAmount, BigDecimal discountAmount, BigDecimal ratioDiscountPercent) {
         this.order = order;
+        this.orderIndex = orderIndex;
         this.paymentMethod = paymentMethod;
         this.discountAmount = discountAmount;
         this.ratioDiscountPercent = ratioDiscountPercent;
@@ -33,6 +44,18 @@ public class Candidate {
         }
     }
 
+    /**
+     * Same as {@link #payForOrder(PaymentMethod)}, with every debit recorded in {@code journal}.
+     */
+    void payForOrder(PaymentMethod pointsPayment, PaymentJournal journal) {
+        if (usePoints.compareTo(BigDecimal.ZERO) > 0) {
+            journal.pay(orderIndex, pointsPayment, usePoints);
+        }
+        if (useCardAmount.compareTo(BigDecimal.ZERO) > 0) {
+            journal.pay(orderIndex, paymentMethod, useCardAmount);
+        }
+    }
+
     public boolean canAfford(PaymentMethod pointsMethod) {
         return isPointsEnough(pointsMethod) && isCardEnough();
     }
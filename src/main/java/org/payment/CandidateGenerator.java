@@ -0,0 +1,156 @@
+package org.payment;
+
+import java.util.Arrays;
+
+/**
+ * Builds the fixed-point candidates of single orders into a {@link CandidateTable}.
+ * <p>
+ * Candidates of an order depend only on that order and on the static limits and ratios of the methods, so
+ * several generators may work on disjoint orders at the same time. Each one owns its scratch state; use
+ * {@link #copy()} to get another generator for a different worker.
+ */
+class CandidateGenerator {
+    static final int TEN_PERCENT = 1_000;
+    static final int NINETY_PERCENT = 9_000;
+
+    private final CompactInput input;
+    private final int pointsMethod;
+    private final long[] sortedCardLimits;
+    private final int[] lastPromotedOrder;
+    private long generatedCandidates;
+
+    CandidateGenerator(CompactInput input) {
+        this(input, sortedCardLimits(input));
+    }
+
+    private CandidateGenerator(CompactInput input, long[] sortedCardLimits) {
+        this.input = input;
+        this.pointsMethod = input.pointsMethod();
+        this.sortedCardLimits = sortedCardLimits;
+        this.lastPromotedOrder = new int[input.methodCount()];
+        Arrays.fill(lastPromotedOrder, -1);
+    }
+
+    /**
+     * Forgets the orders seen so far, for an input whose orders were cleared and are numbered from zero again.
+     */
+    void reset() {
+        Arrays.fill(lastPromotedOrder, -1);
+    }
+
+    CandidateGenerator copy() {
+        return new CandidateGenerator(input, sortedCardLimits);
+    }
+
+    /**
+     * Returns how many candidates the legacy engine would have generated for the orders passed so far.
+     */
+    long getGeneratedCandidates() {
+        return generatedCandidates;
+    }
+
+    void generate(int order, CandidateTable candidates) {
+        for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++) {
+            int method = input.promotionMethod(i);
+            if (isPaymentMeetsLimitConditions(method, input.orderAmount(order), input.methodRatio(method))) {
+                generatedCandidates++;
+                if (lastPromotedOrder[method] != order) {
+                    lastPromotedOrder[method] = order;
+                    addPromotionCandidate(order, method, candidates);
+                }
+            }
+        }
+        if (addPointsCandidate(order, candidates)) {
+            generatedCandidates++;
+        }
+        generatedCandidates += addPartialPointsCandidate(order, candidates);
+    }
+
+    /**
+     * Adds the full-card candidate of {@code order} on the promoted {@code method}, without checking its limit.
+     */
+    void addPromotionCandidate(int order, int method, CandidateTable candidates) {
+        addCandidate(candidates, order, method, 0, input.orderAmount(order), input.methodRatio(method));
+    }
+
+    /**
+     * Returns whether the promoted card {@code method} can pay {@code order} after its discount.
+     */
+    boolean isPromotionEligible(int order, int method) {
+        return isPaymentMeetsLimitConditions(method, input.orderAmount(order), input.methodRatio(method));
+    }
+
+    /**
+     * Adds the full-points candidate of {@code order} when the points limit covers it; returns whether it did.
+     */
+    boolean addPointsCandidate(int order, CandidateTable candidates) {
+        long amountToPay = input.orderAmount(order);
+        int pointsRatio = input.methodRatio(pointsMethod);
+        if (!isPaymentMeetsLimitConditions(pointsMethod, amountToPay, pointsRatio)) {
+            return false;
+        }
+        addCandidate(candidates, order, pointsMethod, amountToPay, 0, pointsRatio);
+        return true;
+    }
+
+    /**
+     * Adds the shared 10%-points row of {@code order} when at least one card can take the rest; returns the number
+     * of cards the row stands for.
+     */
+    int addPartialPointsCandidate(int order, CandidateTable candidates) {
+        long amountToPay = input.orderAmount(order);
+        long pointsAmount = MoneyUnits.applyRatio(amountToPay, TEN_PERCENT);
+        long cardAmount = MoneyUnits.applyRatio(amountToPay, NINETY_PERCENT);
+        if (input.methodLimit(pointsMethod) < pointsAmount) {
+            return 0;
+        }
+        int eligibleCards = countCardsWithLimitAtLeast(cardAmount - pointsAmount);
+        if (eligibleCards > 0) {
+            addCandidate(candidates, order, CandidateTable.ANY_CARD, pointsAmount, cardAmount, TEN_PERCENT);
+        }
+        return eligibleCards;
+    }
+
+    private void addCandidate(CandidateTable candidates, int order, int method,
+                              long requiredPoints, long requiredCardAmount, int ratio) {
+        long discount = MoneyUnits.applyRatio(input.orderAmount(order), ratio);
+        if (requiredCardAmount == 0) {
+            requiredPoints -= discount;
+        } else {
+            requiredCardAmount -= discount;
+        }
+        candidates.add(order, method, requiredPoints, requiredCardAmount, discount, ratio);
+    }
+
+    private boolean isPaymentMeetsLimitConditions(int method, long amountToPay, int ratio) {
+        long amountToPayAfterDiscount = amountToPay - MoneyUnits.applyRatio(amountToPay, ratio);
+        return input.methodLimit(method) >= amountToPayAfterDiscount;
+    }
+
+    private int countCardsWithLimitAtLeast(long amount) {
+        int low = 0;
+        int high = sortedCardLimits.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedCardLimits[middle] < amount) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return sortedCardLimits.length - low;
+    }
+
+    private static long[] sortedCardLimits(CompactInput input) {
+        long[] limits = new long[input.methodCount()];
+        int cards = 0;
+        for (int method = 0; method < input.methodCount(); method++) {
+            if (method != input.pointsMethod()) {
+                limits[cards++] = input.methodLimit(method);
+            }
+        }
+        limits = Arrays.copyOf(limits, cards);
+        Arrays.sort(limits);
+        return limits;
+    }
+}
@@ -0,0 +1,145 @@
+package org.payment;
+
+/**
+ * Lazy ranking of a {@link CandidateTable}: a 4-ary heap holding the best remaining row of every order.
+ * <p>
+ * Rows of one order are generated next to each other, so each order's rows are ranked on their own and the heap
+ * merges the orders. Its top is always the row {@link CandidateTable#sortByPriority()} would list next among the
+ * rows not consumed yet, so a caller that drops an order once it is paid and {@link #advance() advances} past an
+ * unaffordable row sees the rows in exactly the sorted order, without sorting the rows it never reaches.
+ */
+class CandidateHeap {
+    private static final int ARITY = 4;
+
+    private final CandidateTable table;
+    private final long[] keys;
+    /**
+     * Row indices grouped by order, each group in priority order.
+     */
+    private final int[] rows;
+    private final int[] groupEnds;
+    private final int[] cursors;
+    /**
+     * Group, current row and packed key of every heap slot, kept side by side so sifting reads no other arrays.
+     */
+    private final int[] heapGroups;
+    private final int[] heapRows;
+    private final long[] heapKeys;
+    private int size;
+
+    CandidateHeap(CandidateTable table) {
+        this.table = table;
+        this.keys = table.isPackable() ? table.packedKeys() : null;
+        int rowCount = table.size();
+        this.rows = new int[rowCount];
+        int groups = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (row == 0 || table.order(row) != table.order(row - 1)) {
+                groups++;
+            }
+        }
+        this.groupEnds = new int[groups];
+        this.cursors = new int[groups];
+        this.heapGroups = new int[groups];
+        this.heapRows = new int[groups];
+        this.heapKeys = new long[groups];
+
+        int group = -1;
+        for (int row = 0; row < rowCount; row++) {
+            if (row == 0 || table.order(row) != table.order(row - 1)) {
+                cursors[++group] = row;
+            }
+            insert(row, cursors[group]);
+            groupEnds[group] = row + 1;
+        }
+        for (group = 0; group < groups; group++) {
+            heapGroups[group] = group;
+            heapRows[group] = rows[cursors[group]];
+            heapKeys[group] = keys == null ? 0 : keys[heapRows[group]];
+        }
+        size = groups;
+        for (int i = (size - 2) / ARITY; i >= 0; i--) {
+            siftDown(i, heapGroups[i], heapRows[i], heapKeys[i]);
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the next row in priority order.
+     */
+    int peek() {
+        return heapRows[0];
+    }
+
+    /**
+     * Drops the order of the top row, along with its remaining rows.
+     */
+    void removeTop() {
+        if (--size > 0) {
+            siftDown(0, heapGroups[size], heapRows[size], heapKeys[size]);
+        }
+    }
+
+    /**
+     * Replaces the top row with the next row of the same order, or drops the order when it has none left.
+     */
+    void advance() {
+        int group = heapGroups[0];
+        if (++cursors[group] == groupEnds[group]) {
+            removeTop();
+        } else {
+            int row = rows[cursors[group]];
+            siftDown(0, group, row, keys == null ? 0 : keys[row]);
+        }
+    }
+
+    /**
+     * Inserts {@code row} into its group, which starts at {@code start} and ends just before {@code row}.
+     */
+    private void insert(int row, int start) {
+        int i = row - 1;
+        while (i >= start && table.compare(rows[i], row, keys) > 0) {
+            rows[i + 1] = rows[i];
+            i--;
+        }
+        rows[i + 1] = row;
+    }
+
+    /**
+     * Places the entry of {@code group} at slot {@code i} or below, moving earlier-ranked children up.
+     */
+    private void siftDown(int i, int group, int row, long key) {
+        while (true) {
+            int first = ARITY * i + 1;
+            if (first >= size) {
+                break;
+            }
+            int child = first;
+            for (int next = first + 1; next < Math.min(first + ARITY, size); next++) {
+                if (before(heapRows[next], heapKeys[next], heapRows[child], heapKeys[child])) {
+                    child = next;
+                }
+            }
+            if (!before(heapRows[child], heapKeys[child], row, key)) {
+                break;
+            }
+            heapGroups[i] = heapGroups[child];
+            heapRows[i] = heapRows[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        heapGroups[i] = group;
+        heapRows[i] = row;
+        heapKeys[i] = key;
+    }
+
+    private boolean before(int row, long key, int otherRow, long otherKey) {
+        if (keys == null) {
+            return table.compare(row, otherRow, null) < 0;
+        }
+        return key > otherKey || key == otherKey && row < otherRow;
+    }
+}
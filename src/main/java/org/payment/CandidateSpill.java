@@ -0,0 +1,283 @@
+package org.payment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Out-of-core ranking of candidates: sorted runs of fixed-width binary records in temporary files, merged back into
+ * one stream in priority order.
+ * <p>
+ * Each {@link #spill(CandidateTable) spilled} table is sorted in memory and written as one run. Every record carries
+ * its generation sequence number, so the merge breaks ties the way {@link CandidateTable} breaks them by row index
+ * and the stream lists the rows exactly as an in-memory sort of all of them would. When there are more runs than
+ * the memory budget has read buffers for, groups of runs are merged into longer runs first. All file I/O goes
+ * through {@link FileChannel}s and direct buffers.
+ */
+class CandidateSpill implements Closeable {
+    /**
+     * Order, method, points, card amount, discount, ratio and sequence number.
+     */
+    static final int RECORD_BYTES = 4 + 4 + 8 + 8 + 8 + 4 + 8;
+    /**
+     * Heap bytes a row costs while a run is built: the table columns plus the sort's index, buffer and key arrays.
+     */
+    static final int ROW_BYTES = 64;
+    private static final int MAX_BUFFER_BYTES = 1 << 20;
+    private static final int MIN_BUFFER_RECORDS = 64;
+    private static final int MIN_RUN_ROWS = 64;
+
+    /**
+     * Receives the merged rows in priority order.
+     */
+    interface RowSink {
+        void accept(int order, int method, long points, long cardAmount, long discount);
+    }
+
+    private final Path directory;
+    private final int bufferBytes;
+    private final int runRows;
+    private final int fanIn;
+    private final ArrayDeque<Path> runs = new ArrayDeque<>();
+    private long rows;
+    private int mergePasses;
+
+    /**
+     * @param directory   where the run files are created
+     * @param memoryBytes memory budget for building a run in memory, or for the buffers of one merge
+     */
+    CandidateSpill(Path directory, long memoryBytes) {
+        if (memoryBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.directory = directory;
+        long buffer = Math.min(MAX_BUFFER_BYTES, Math.max(MIN_BUFFER_RECORDS * RECORD_BYTES, memoryBytes / 16));
+        this.bufferBytes = (int) (buffer / RECORD_BYTES * RECORD_BYTES);
+        this.runRows = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(MIN_RUN_ROWS, memoryBytes / 2 / ROW_BYTES));
+        this.fanIn = (int) Math.max(2, Math.min(1 << 12, memoryBytes / bufferBytes - 1));
+    }
+
+    /**
+     * Returns how many rows a table may hold before it should be spilled.
+     */
+    int runRows() {
+        return runRows;
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    int runCount() {
+        return runs.size();
+    }
+
+    int mergePasses() {
+        return mergePasses;
+    }
+
+    /**
+     * Sorts {@code table} and writes it as a new run; the caller clears the table afterwards.
+     */
+    void spill(CandidateTable table) {
+        if (table.size() == 0) {
+            return;
+        }
+        try {
+            Path run = Files.createTempFile(directory, "candidates-", ".run");
+            runs.add(run);
+            try (RunWriter writer = new RunWriter(run)) {
+                for (int row : table.sortByPriority()) {
+                    writer.write(table.order(row), table.method(row), table.points(row), table.cardAmount(row),
+                            table.discount(row), table.ratio(row), rows + row);
+                }
+            }
+            rows += table.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill candidates", e);
+        }
+    }
+
+    /**
+     * Merges all runs into {@code sink} and deletes them.
+     */
+    void merge(RowSink sink) {
+        try {
+            while (runs.size() > fanIn) {
+                List<Path> group = takeRuns(fanIn);
+                Path merged = Files.createTempFile(directory, "candidates-", ".run");
+                runs.add(merged);
+                try (RunWriter writer = new RunWriter(merged)) {
+                    mergeAndDelete(group, writer::write);
+                }
+                mergePasses++;
+            }
+            mergeAndDelete(takeRuns(runs.size()), (order, method, points, cardAmount, discount, ratio, sequence) ->
+                    sink.accept(order, method, points, cardAmount, discount));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to merge spilled candidates", e);
+        }
+    }
+
+    /**
+     * Deletes the runs that were not merged yet.
+     */
+    @Override
+    public void close() throws IOException {
+        delete(takeRuns(runs.size()));
+    }
+
+    private List<Path> takeRuns(int count) {
+        List<Path> taken = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            taken.add(runs.poll());
+        }
+        return taken;
+    }
+
+    /**
+     * Merges runs taken off the deque, which {@link #close()} no longer sees, so they are deleted even when reading
+     * them or the sink fails.
+     */
+    private void mergeAndDelete(List<Path> group, RecordSink sink) throws IOException {
+        try {
+            mergeRuns(group, sink);
+        } finally {
+            delete(group);
+        }
+    }
+
+    private void mergeRuns(List<Path> group, RecordSink sink) throws IOException {
+        List<RunReader> readers = new ArrayList<>(group.size());
+        try {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, group.size()), RunReader::compareTo);
+            for (Path run : group) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                sink.write(reader.order, reader.method, reader.points, reader.cardAmount, reader.discount,
+                        reader.ratio, reader.sequence);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void delete(List<Path> group) throws IOException {
+        for (Path run : group) {
+            Files.deleteIfExists(run);
+        }
+    }
+
+    private interface RecordSink {
+        void write(int order, int method, long points, long cardAmount, long discount, int ratio, long sequence)
+                throws IOException;
+    }
+
+    private class RunWriter implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferBytes);
+
+        RunWriter(Path run) throws IOException {
+            this.channel = FileChannel.open(run, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void write(int order, int method, long points, long cardAmount, long discount, int ratio, long sequence)
+                throws IOException {
+            if (buffer.remaining() < RECORD_BYTES) {
+                flush();
+            }
+            buffer.putInt(order).putInt(method).putLong(points).putLong(cardAmount).putLong(discount)
+                    .putInt(ratio).putLong(sequence);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (channel) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private class RunReader implements Closeable, Comparable<RunReader> {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferBytes);
+        int order;
+        int method;
+        long points;
+        long cardAmount;
+        long discount;
+        int ratio;
+        long sequence;
+
+        RunReader(Path run) throws IOException {
+            this.channel = FileChannel.open(run, StandardOpenOption.READ);
+            buffer.limit(0);
+        }
+
+        /**
+         * Reads the next record into the fields; returns {@code false} at the end of the run.
+         */
+        boolean next() throws IOException {
+            if (buffer.remaining() < RECORD_BYTES) {
+                buffer.compact();
+                while (buffer.position() < RECORD_BYTES && channel.read(buffer) >= 0) {
+                    // a run is written in whole records, so keep reading until one is complete
+                }
+                buffer.flip();
+                if (buffer.remaining() < RECORD_BYTES) {
+                    return false;
+                }
+            }
+            order = buffer.getInt();
+            method = buffer.getInt();
+            points = buffer.getLong();
+            cardAmount = buffer.getLong();
+            discount = buffer.getLong();
+            ratio = buffer.getInt();
+            sequence = buffer.getLong();
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            int result = Integer.compare(other.ratio, ratio);
+            if (result == 0) {
+                result = Long.compare(other.discount, discount);
+            }
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.payment;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar store of payment candidates: one primitive array per field instead of one {@link Candidate} object
+ * per row.
+ * <p>
+ * Rows are ranked the way {@link PaymentSelector} sorts its candidates: higher discount ratio first, then higher
+ * discount amount, then generation order. When every ratio and discount fits, ratio and discount are packed into
+ * a single {@code long} key so ranking compares one primitive per row.
+ */
+class CandidateTable {
+    /**
+     * Method of a row whose card is chosen when the row is committed.
+     */
+    static final int ANY_CARD = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int DISCOUNT_BITS = 48;
+    private static final int MAX_PACKED_RATIO = (1 << (Long.SIZE - 1 - DISCOUNT_BITS)) - 1;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+
+    private int size;
+    private int[] orders;
+    private int[] methods;
+    private long[] points;
+    private long[] cardAmounts;
+    private long[] discounts;
+    private int[] ratios;
+    private boolean packable = true;
+
+    CandidateTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private CandidateTable(int capacity) {
+        orders = new int[capacity];
+        methods = new int[capacity];
+        points = new long[capacity];
+        cardAmounts = new long[capacity];
+        discounts = new long[capacity];
+        ratios = new int[capacity];
+    }
+
+    /**
+     * Concatenates tables in the given order, so rows keep their relative generation order.
+     */
+    static CandidateTable concat(List<CandidateTable> tables) {
+        int total = tables.stream().mapToInt(CandidateTable::size).sum();
+        CandidateTable result = new CandidateTable(Math.max(total, INITIAL_CAPACITY));
+        for (CandidateTable table : tables) {
+            int offset = result.size;
+            System.arraycopy(table.orders, 0, result.orders, offset, table.size);
+            System.arraycopy(table.methods, 0, result.methods, offset, table.size);
+            System.arraycopy(table.points, 0, result.points, offset, table.size);
+            System.arraycopy(table.cardAmounts, 0, result.cardAmounts, offset, table.size);
+            System.arraycopy(table.discounts, 0, result.discounts, offset, table.size);
+            System.arraycopy(table.ratios, 0, result.ratios, offset, table.size);
+            result.packable &= table.packable;
+            result.size += table.size;
+        }
+        return result;
+    }
+
+    /**
+     * Drops all rows but keeps the arrays, so the table can be reused as scratch space by the next selection.
+     */
+    void clear() {
+        size = 0;
+        packable = true;
+    }
+
+    void add(int order, int method, long requiredPoints, long requiredCardAmount, long discount, int ratio) {
+        if (size == orders.length) {
+            grow();
+        }
+        orders[size] = order;
+        methods[size] = method;
+        points[size] = requiredPoints;
+        cardAmounts[size] = requiredCardAmount;
+        discounts[size] = discount;
+        ratios[size] = ratio;
+        packable &= ratio >= 0 && ratio <= MAX_PACKED_RATIO && discount >= 0 && discount >>> DISCOUNT_BITS == 0;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int order(int row) {
+        return orders[row];
+    }
+
+    int method(int row) {
+        return methods[row];
+    }
+
+    long points(int row) {
+        return points[row];
+    }
+
+    long cardAmount(int row) {
+        return cardAmounts[row];
+    }
+
+    long discount(int row) {
+        return discounts[row];
+    }
+
+    int ratio(int row) {
+        return ratios[row];
+    }
+
+    /**
+     * Returns whether every row fits a packed ranking key, see {@link #packedKeys()}.
+     */
+    boolean isPackable() {
+        return packable;
+    }
+
+    /**
+     * Returns the row indices in selection priority order.
+     */
+    int[] sortByPriority() {
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        long[] keys = packable ? packedKeys() : null;
+        mergeSort(rows, rows.clone(), 0, size, keys);
+        return rows;
+    }
+
+    /**
+     * Same as {@link #sortByPriority()}, with both halves of every large merge step sorted in parallel.
+     */
+    int[] sortByPriority(ForkJoinPool pool) {
+        int[] rows = new int[size];
+        long[] keys = packable ? new long[size] : null;
+        pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, size).parallel().forEach(row -> {
+            rows[row] = row;
+            if (keys != null) {
+                keys[row] = packedKey(row);
+            }
+        })));
+        pool.invoke(new SortTask(rows, rows.clone(), 0, size, keys));
+        return rows;
+    }
+
+    /**
+     * Sorts {@code rows} by priority and merges them into {@code ranked}, rows already in priority order; the two
+     * arrays must not share rows. Lets a caller re-rank only the rows it changed.
+     */
+    int[] mergeRanked(int[] ranked, int[] rows) {
+        mergeSort(rows, rows.clone(), 0, rows.length, null);
+        int[] merged = new int[ranked.length + rows.length];
+        int left = 0;
+        int right = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (right >= rows.length || left < ranked.length && compare(ranked[left], rows[right], null) <= 0) {
+                merged[i] = ranked[left++];
+            } else {
+                merged[i] = rows[right++];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Compares two rows by selection priority; negative when {@code a} is tried before {@code b}.
+     */
+    int compare(int a, int b, long[] keys) {
+        int result;
+        if (keys != null) {
+            result = Long.compare(keys[b], keys[a]);
+        } else {
+            result = Integer.compare(ratios[b], ratios[a]);
+            if (result == 0) {
+                result = Long.compare(discounts[b], discounts[a]);
+            }
+        }
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+
+    long[] packedKeys() {
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = packedKey(row);
+        }
+        return keys;
+    }
+
+    private long packedKey(int row) {
+        return (long) ratios[row] << DISCOUNT_BITS | discounts[row];
+    }
+
+    private void mergeSort(int[] rows, int[] buffer, int from, int to, long[] keys) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(rows, from, to, keys);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(buffer, rows, from, middle, keys);
+        mergeSort(buffer, rows, middle, to, keys);
+        merge(buffer, rows, from, middle, to, keys);
+    }
+
+    private void insertionSort(int[] rows, int from, int to, long[] keys) {
+        for (int i = from + 1; i < to; i++) {
+            int row = rows[i];
+            int j = i - 1;
+            while (j >= from && compare(rows[j], row, keys) > 0) {
+                rows[j + 1] = rows[j];
+                j--;
+            }
+            rows[j + 1] = row;
+        }
+    }
+
+    private void merge(int[] source, int[] target, int from, int middle, int to, long[] keys) {
+        if (compare(source[middle - 1], source[middle], keys) <= 0) {
+            System.arraycopy(source, from, target, from, to - from);
+            return;
+        }
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < middle && compare(source[left], source[right], keys) <= 0) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+
+    private class SortTask extends RecursiveAction {
+        private final int[] rows;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+        private final long[] keys;
+
+        SortTask(int[] rows, int[] buffer, int from, int to, long[] keys) {
+            this.rows = rows;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.keys = keys;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_SORT_THRESHOLD) {
+                mergeSort(rows, buffer, from, to, keys);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(buffer, rows, from, middle, keys), new SortTask(buffer, rows, middle, to, keys));
+            merge(buffer, rows, from, middle, to, keys);
+        }
+    }
+
+    private void grow() {
+        int capacity = orders.length * 2;
+        orders = Arrays.copyOf(orders, capacity);
+        methods = Arrays.copyOf(methods, capacity);
+        points = Arrays.copyOf(points, capacity);
+        cardAmounts = Arrays.copyOf(cardAmounts, capacity);
+        discounts = Arrays.copyOf(discounts, capacity);
+        ratios = Arrays.copyOf(ratios, capacity);
+    }
+}
@@ -0,0 +1,53 @@
+package org.payment;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Fixed-point twin of {@link RemainingLimitIndex}: cards keyed by remaining {@link MoneyUnits}, ties broken by
+ * method index. The owning selector calls {@link #update(int, long)} after every debit of a card.
+ */
+class CardLimitIndex {
+    private static final Comparator<Entry> ENTRY_ORDER = Comparator
+            .comparingLong(Entry::remaining)
+            .thenComparingInt(Entry::card);
+
+    private final TreeSet<Entry> entries = new TreeSet<>(ENTRY_ORDER);
+    private final Entry[] currentEntries;
+
+    CardLimitIndex(int methodCount) {
+        this.currentEntries = new Entry[methodCount];
+    }
+
+    void update(int card, long remaining) {
+        Entry previous = currentEntries[card];
+        if (previous != null) {
+            if (previous.remaining() == remaining) {
+                return;
+            }
+            entries.remove(previous);
+        }
+        Entry entry = new Entry(remaining, card);
+        entries.add(entry);
+        currentEntries[card] = entry;
+    }
+
+    /**
+     * Returns the card with the smallest remaining limit covering {@code amount}, or {@code -1}.
+     */
+    int findMinFit(long amount) {
+        Entry entry = entries.ceiling(new Entry(amount, -1));
+        return entry == null ? -1 : entry.card();
+    }
+
+    /**
+     * Returns the card with the largest remaining limit strictly below {@code amount}, or {@code -1}.
+     */
+    int findMaxBelow(long amount) {
+        Entry below = entries.lower(new Entry(amount, -1));
+        return below == null ? -1 : entries.ceiling(new Entry(below.remaining(), -1)).card();
+    }
+
+    private record Entry(long remaining, int card) {
+    }
+}
@@ -0,0 +1,249 @@
+package org.payment;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Columnar, fixed-point view of the selector input.
+ * <p>
+ * Payment methods keep their input order and are addressed by index. Each order stores its amount in
+ * {@link MoneyUnits} and the indices of its valid card promotions; unknown ids and {@code PUNKTY} are dropped
+ * here, exactly where {@link PaymentSelector} would skip them. Orders sharing an id share an order key, because
+ * the selector tracks paid orders by id.
+ */
+public final class CompactInput {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String[] methodIds;
+    private final long[] methodLimits;
+    private final int[] methodRatios;
+    private final int pointsMethod;
+    private final Map<String, Integer> methodIndex;
+
+    private final Map<String, Integer> orderKeyIndex = new HashMap<>();
+    private String[] orderIds = new String[INITIAL_CAPACITY];
+    private int[] orderKeys = new int[INITIAL_CAPACITY];
+    private long[] orderAmounts = new long[INITIAL_CAPACITY];
+    private int[] promotionEnds = new int[INITIAL_CAPACITY];
+    private int[] promotionMethods = new int[INITIAL_CAPACITY];
+    private int orderCount;
+    private int orderKeyCount;
+    private int promotionCount;
+    private IntFunction<String> snapshotOrderIds;
+    private boolean readOnly;
+
+    public CompactInput(List<PaymentMethod> methods) {
+        int count = methods.size();
+        this.methodIds = new String[count];
+        this.methodLimits = new long[count];
+        this.methodRatios = new int[count];
+        this.methodIndex = new HashMap<>();
+
+        int points = -1;
+        for (int i = 0; i < count; i++) {
+            PaymentMethod method = methods.get(i);
+            if (methodIndex.putIfAbsent(method.getId(), i) != null) {
+                throw new IllegalStateException("Duplicate payment method " + method.getId());
+            }
+            methodIds[i] = method.getId();
+            methodLimits[i] = MoneyUnits.toUnits(method.getLimit());
+            methodRatios[i] = MoneyUnits.toBasisPoints(method.calculateRatioDiscountPercent());
+            if (method.getId().equals(PaymentSelector.POINTS_ID)) {
+                points = i;
+            }
+        }
+        this.pointsMethod = points;
+    }
+
+    /**
+     * Returns a read-only view of this input with other method limits and ratios, indexed like the methods of this
+     * input. The order columns are shared, not copied, so this input must not take more orders while the view is
+     * in use.
+     */
+    CompactInput withMethodData(long[] limits, int[] ratios) {
+        return new CompactInput(this, limits.clone(), ratios.clone());
+    }
+
+    private CompactInput(CompactInput base, long[] limits, int[] ratios) {
+        this.methodIds = base.methodIds;
+        this.methodLimits = limits;
+        this.methodRatios = ratios;
+        this.pointsMethod = base.pointsMethod;
+        this.methodIndex = base.methodIndex;
+        this.orderIds = base.orderIds;
+        this.orderKeys = base.orderKeys;
+        this.orderAmounts = base.orderAmounts;
+        this.promotionEnds = base.promotionEnds;
+        this.promotionMethods = base.promotionMethods;
+        this.orderCount = base.orderCount;
+        this.orderKeyCount = base.orderKeyCount;
+        this.promotionCount = base.promotionCount;
+        this.snapshotOrderIds = base.snapshotOrderIds;
+        this.readOnly = true;
+    }
+
+    public static CompactInput of(List<Order> orders, List<PaymentMethod> methods) {
+        CompactInput input = new CompactInput(methods);
+        for (Order order : orders) {
+            input.addOrder(order);
+        }
+        return input;
+    }
+
+    public int addOrder(Order order) {
+        int[] promotions = new int[order.promotions().size()];
+        int count = 0;
+        for (String promotionId : order.promotions()) {
+            int method = cardMethodIndex(promotionId);
+            if (method >= 0) {
+                promotions[count++] = method;
+            }
+        }
+        return addOrder(order.id(), order.amountToPay(), promotions, count);
+    }
+
+    public int addOrder(String id, BigDecimal amount, int[] promotions, int promotionsLength) {
+        return addOrder(id, MoneyUnits.toUnits(amount), promotions, promotionsLength);
+    }
+
+    public int addOrder(String id, long amountUnits, int[] promotions, int promotionsLength) {
+        checkWritable();
+        ensureOrderCapacity(orderCount + 1);
+        ensurePromotionCapacity(promotionCount + promotionsLength);
+
+        int index = orderCount++;
+        orderIds[index] = id;
+        orderKeys[index] = orderKeyIndex.computeIfAbsent(id, key -> orderKeyIndex.size());
+        orderKeyCount = orderKeyIndex.size();
+        orderAmounts[index] = amountUnits;
+        System.arraycopy(promotions, 0, promotionMethods, promotionCount, promotionsLength);
+        promotionCount += promotionsLength;
+        promotionEnds[index] = promotionCount;
+        return index;
+    }
+
+    /**
+     * Returns the index of the card method with the given id, or {@code -1} when the id is unknown or is the
+     * points method, i.e. when it can never back a card promotion.
+     */
+    public int cardMethodIndex(String id) {
+        Integer index = methodIndex.get(id);
+        return index == null || index == pointsMethod ? -1 : index;
+    }
+
+    public int methodIndex(String id) {
+        Integer index = methodIndex.get(id);
+        return index == null ? -1 : index;
+    }
+
+    public int methodCount() {
+        return methodIds.length;
+    }
+
+    public String methodId(int method) {
+        return methodIds[method];
+    }
+
+    public long methodLimit(int method) {
+        return methodLimits[method];
+    }
+
+    public int methodRatio(int method) {
+        return methodRatios[method];
+    }
+
+    public int pointsMethod() {
+        return pointsMethod;
+    }
+
+    public int orderCount() {
+        return orderCount;
+    }
+
+    public int orderKeyCount() {
+        return orderKeyCount;
+    }
+
+    public String orderId(int order) {
+        return snapshotOrderIds != null ? snapshotOrderIds.apply(order) : orderIds[order];
+    }
+
+    public int orderKey(int order) {
+        return orderKeys[order];
+    }
+
+    public long orderAmount(int order) {
+        return orderAmounts[order];
+    }
+
+    public int promotionStart(int order) {
+        return order == 0 ? 0 : promotionEnds[order - 1];
+    }
+
+    public int promotionEnd(int order) {
+        return promotionEnds[order];
+    }
+
+    public int promotionMethod(int position) {
+        return promotionMethods[position];
+    }
+
+    /**
+     * Drops every order but keeps the methods and the allocated columns, so a long-lived owner can reuse the input
+     * for the next batch of orders.
+     */
+    void clearOrders() {
+        checkWritable();
+        Arrays.fill(orderIds, 0, orderCount, null);
+        orderKeyIndex.clear();
+        orderCount = 0;
+        orderKeyCount = 0;
+        promotionCount = 0;
+    }
+
+    /**
+     * Replaces the orders with columns read from a snapshot. The arrays are taken over as they are, order keys
+     * must already be dense, and order ids are decoded by {@code orderIds} only when asked for. Such an input
+     * cannot take more orders.
+     */
+    void loadSnapshot(long[] amounts, int[] keys, int keyCount, int[] promotionEnds, int[] promotionMethods,
+                      IntFunction<String> orderIds) {
+        checkWritable();
+        this.orderIds = new String[0];
+        this.orderAmounts = amounts;
+        this.orderKeys = keys;
+        this.promotionEnds = promotionEnds;
+        this.promotionMethods = promotionMethods;
+        this.orderCount = amounts.length;
+        this.orderKeyCount = keyCount;
+        this.promotionCount = promotionMethods.length;
+        this.snapshotOrderIds = orderIds;
+        this.readOnly = true;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("Read-only input cannot change its orders");
+        }
+    }
+
+    private void ensureOrderCapacity(int required) {
+        if (required > orderIds.length) {
+            int capacity = Math.max(required, orderIds.length * 2);
+            orderIds = Arrays.copyOf(orderIds, capacity);
+            orderKeys = Arrays.copyOf(orderKeys, capacity);
+            orderAmounts = Arrays.copyOf(orderAmounts, capacity);
+            promotionEnds = Arrays.copyOf(promotionEnds, capacity);
+        }
+    }
+
+    private void ensurePromotionCapacity(int required) {
+        if (required > promotionMethods.length) {
+            promotionMethods = Arrays.copyOf(promotionMethods, Math.max(required, promotionMethods.length * 2));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.payment;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-point twin of {@link PaymentJournal}: the payments of {@link FixedPointSelector} as parallel primitive
+ * columns. The selector owns the ledger, so rollbacks hand every undone payment back through a {@link Refund}.
+ */
+class CompactJournal {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private int[] orders = new int[INITIAL_CAPACITY];
+    private int[] methods = new int[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+
+    interface Refund {
+        void refund(int method, long amount);
+    }
+
+    void record(int order, int method, long amount) {
+        if (size == orders.length) {
+            orders = Arrays.copyOf(orders, size * 2);
+            methods = Arrays.copyOf(methods, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+        }
+        orders[size] = order;
+        methods[size] = method;
+        amounts[size] = amount;
+        size++;
+    }
+
+    int savepoint() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void rollbackTo(int savepoint, Refund refund) {
+        while (size > savepoint) {
+            size--;
+            refund.refund(methods[size], amounts[size]);
+        }
+    }
+
+    /**
+     * Refunds all payments of the most recently paid order and returns that order.
+     */
+    int rollbackLastOrder(Refund refund) {
+        int order = orders[size - 1];
+        while (size > 0 && orders[size - 1] == order) {
+            size--;
+            refund.refund(methods[size], amounts[size]);
+        }
+        return order;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
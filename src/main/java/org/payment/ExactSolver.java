@@ -0,0 +1,477 @@
+package org.payment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Branch-and-bound search for the payment plan with the largest total discount under the card and
+ * {@code PUNKTY} limits.
+ * <p>
+ * Every order is paid in one of four ways: fully by a promoted card, fully by points, with at least 10% points
+ * and the rest on one card, or on one card without a discount (optionally topped up with less than 10%
+ * points). Unlike the greedy engines, every order of the input is paid, including repeated order ids.
+ * <p>
+ * The split between points and card of the last two ways is not branched on. A partial assignment only fixes
+ * the smallest card part of each such order; whatever the cards can still take is moved off the points at the
+ * leaves, one card at a time.
+ * <p>
+ * Nodes are pruned by the smaller of two bounds: the sum of the best discounts of the unassigned orders, and
+ * the LP relaxation bound, computed through its Lagrangian dual. The multipliers of the limits are fitted once
+ * with a subgradient method, after which the bound of a node is a prefix plus a suffix sum.
+ */
+public class ExactSolver {
+    private static final int CLOCK_CHECK_INTERVAL = 1 << 12;
+    private static final int SUBGRADIENT_ITERATIONS = 200;
+    private static final int SUBGRADIENT_PATIENCE = 10;
+    private static final double BOUND_TOLERANCE = 1e-3;
+    private static final long MIN_CARD_PART = MoneyUnits.UNITS_PER_CENT;
+
+    private final CompactInput input;
+    private final int pointsMethod;
+    private final int orderCount;
+    private final long totalLimit;
+
+    private int[] orderAt;
+    private int[] optionStart;
+    private int[] optionCards;
+    private long[] optionDiscounts;
+    private long[] optionCardLoads;
+    private long[] optionFlexLoads;
+    private long[] optionPointsLoads;
+    private double[] optionReduced;
+    private double lagrangianBase;
+    private long[] suffixMaxDiscount;
+    private double[] suffixBestReduced;
+    private long[] suffixMinSpend;
+
+    public ExactSolver(CompactInput input) {
+        if (input.pointsMethod() < 0) {
+            throw new IllegalArgumentException("Missing " + PaymentSelector.POINTS_ID + " payment method");
+        }
+        this.input = input;
+        this.pointsMethod = input.pointsMethod();
+        this.orderCount = input.orderCount();
+        long limits = 0;
+        for (int method = 0; method < input.methodCount(); method++) {
+            limits += input.methodLimit(method);
+        }
+        this.totalLimit = limits;
+    }
+
+    /**
+     * Searches for the best plan within {@code timeBudgetMillis}.
+     *
+     * @param incumbent a complete feasible plan to start from, typically the greedy one, or {@code null}
+     */
+    public SolverResult solve(PaymentPlan incumbent, long timeBudgetMillis) {
+        long deadline = System.nanoTime() + Math.max(0, timeBudgetMillis) * 1_000_000;
+        List<List<Option>> options = options();
+        long best = incumbent != null ? incumbent.totalDiscount() : -1;
+        fitMultipliers(options, best, deadline);
+        layOut(options);
+        return search(incumbent, best, deadline);
+    }
+
+    private List<List<Option>> options() {
+        List<List<Option>> options = new ArrayList<>(orderCount);
+        long[] promotedDiscounts = new long[input.methodCount()];
+        int[] lastPromotedOrder = new int[input.methodCount()];
+        Arrays.fill(lastPromotedOrder, -1);
+        long pointsLimit = input.methodLimit(pointsMethod);
+
+        for (int order = 0; order < orderCount; order++) {
+            List<Option> orderOptions = new ArrayList<>();
+            long amount = input.orderAmount(order);
+            for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++) {
+                int card = input.promotionMethod(i);
+                if (lastPromotedOrder[card] == order) {
+                    continue;
+                }
+                lastPromotedOrder[card] = order;
+                long discount = MoneyUnits.applyRatio(amount, input.methodRatio(card));
+                promotedDiscounts[card] = discount;
+                if (amount - discount <= input.methodLimit(card)) {
+                    orderOptions.add(new Option(card, discount, amount - discount, 0, 0));
+                }
+            }
+
+            long pointsDiscount = MoneyUnits.applyRatio(amount, input.methodRatio(pointsMethod));
+            if (amount - pointsDiscount <= pointsLimit) {
+                orderOptions.add(new Option(PaymentPlan.NO_CARD, pointsDiscount, 0, 0, amount - pointsDiscount));
+            }
+
+            long tenPercent = MoneyUnits.applyRatio(amount, CandidateGenerator.TEN_PERCENT);
+            long partialCardPart = amount - 2 * tenPercent;
+            long plainPointsPart = Math.max(0, tenPercent - 1);
+            for (int card = 0; card < input.methodCount(); card++) {
+                if (card == pointsMethod) {
+                    continue;
+                }
+                long cardLimit = input.methodLimit(card);
+                if (tenPercent <= pointsLimit && MIN_CARD_PART <= Math.min(partialCardPart, cardLimit)) {
+                    orderOptions.add(new Option(card, tenPercent, MIN_CARD_PART, partialCardPart - MIN_CARD_PART,
+                            amount - tenPercent - MIN_CARD_PART));
+                }
+                boolean promotionDominates = lastPromotedOrder[card] == order
+                        && promotedDiscounts[card] >= plainPointsPart;
+                if (!promotionDominates && amount - plainPointsPart <= cardLimit) {
+                    orderOptions.add(new Option(card, 0, amount - plainPointsPart, plainPointsPart, plainPointsPart));
+                }
+            }
+            options.add(orderOptions);
+        }
+        return options;
+    }
+
+    /**
+     * Minimizes the Lagrangian dual over the multipliers of the method limits with a subgradient method and
+     * Polyak steps towards the incumbent, then stores the reduced value of every option for the best
+     * multipliers found.
+     */
+    private void fitMultipliers(List<List<Option>> options, long incumbent, long deadline) {
+        int methods = input.methodCount();
+        double[] multipliers = new double[methods];
+        double[] bestMultipliers = multipliers.clone();
+        double[] subgradient = new double[methods];
+        double bestValue = Double.POSITIVE_INFINITY;
+        double stepScale = 2;
+        int stalled = 0;
+
+        for (int iteration = 0; iteration < SUBGRADIENT_ITERATIONS && System.nanoTime() < deadline; iteration++) {
+            double value = 0;
+            for (int method = 0; method < methods; method++) {
+                value += multipliers[method] * input.methodLimit(method);
+                subgradient[method] = input.methodLimit(method);
+            }
+            for (List<Option> orderOptions : options) {
+                Option chosen = null;
+                double chosenValue = Double.NEGATIVE_INFINITY;
+                for (Option option : orderOptions) {
+                    double reduced = option.reduced(multipliers, pointsMethod);
+                    if (reduced > chosenValue) {
+                        chosen = option;
+                        chosenValue = reduced;
+                    }
+                }
+                if (chosen == null) {
+                    continue;
+                }
+                value += chosenValue;
+                boolean flexOnCard = chosen.flexOnCard(multipliers, pointsMethod);
+                if (chosen.card != PaymentPlan.NO_CARD) {
+                    subgradient[chosen.card] -= chosen.cardLoad + (flexOnCard ? chosen.flexLoad : 0);
+                }
+                subgradient[pointsMethod] -= chosen.pointsLoad - (flexOnCard ? chosen.flexLoad : 0);
+            }
+
+            if (value < bestValue) {
+                bestValue = value;
+                bestMultipliers = multipliers.clone();
+                stalled = 0;
+            } else if (++stalled >= SUBGRADIENT_PATIENCE) {
+                stepScale /= 2;
+                stalled = 0;
+            }
+
+            double norm = 0;
+            for (double component : subgradient) {
+                norm += component * component;
+            }
+            double step = stepScale * (value - Math.max(incumbent, 0)) / norm;
+            if (norm == 0 || !(step > 0)) {
+                break;
+            }
+            for (int method = 0; method < methods; method++) {
+                multipliers[method] = Math.max(0, multipliers[method] - step * subgradient[method]);
+            }
+        }
+
+        lagrangianBase = 0;
+        for (int method = 0; method < methods; method++) {
+            lagrangianBase += bestMultipliers[method] * input.methodLimit(method);
+        }
+        for (List<Option> orderOptions : options) {
+            for (Option option : orderOptions) {
+                option.reduced = option.reduced(bestMultipliers, pointsMethod);
+            }
+        }
+    }
+
+    /**
+     * Flattens the options into search order: orders with the largest possible discount first, options of an
+     * order by discount and then by reduced value.
+     */
+    private void layOut(List<List<Option>> options) {
+        Comparator<Option> byPriority = Comparator.<Option>comparingLong(o -> o.discount).reversed()
+                .thenComparing(Comparator.<Option>comparingDouble(o -> o.reduced).reversed());
+        long[] maxDiscounts = new long[orderCount];
+        int total = 0;
+        for (int order = 0; order < orderCount; order++) {
+            options.get(order).sort(byPriority);
+            maxDiscounts[order] = options.get(order).isEmpty() ? 0 : options.get(order).get(0).discount;
+            total += options.get(order).size();
+        }
+        orderAt = IntStream.range(0, orderCount).boxed()
+                .sorted(Comparator.comparingLong((Integer order) -> maxDiscounts[order]).reversed())
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        optionStart = new int[orderCount + 1];
+        optionCards = new int[total];
+        optionDiscounts = new long[total];
+        optionCardLoads = new long[total];
+        optionFlexLoads = new long[total];
+        optionPointsLoads = new long[total];
+        optionReduced = new double[total];
+        int next = 0;
+        for (int depth = 0; depth < orderCount; depth++) {
+            optionStart[depth] = next;
+            for (Option option : options.get(orderAt[depth])) {
+                optionCards[next] = option.card;
+                optionDiscounts[next] = option.discount;
+                optionCardLoads[next] = option.cardLoad;
+                optionFlexLoads[next] = option.flexLoad;
+                optionPointsLoads[next] = option.pointsLoad;
+                optionReduced[next] = option.reduced;
+                next++;
+            }
+        }
+        optionStart[orderCount] = next;
+
+        suffixMaxDiscount = new long[orderCount + 1];
+        suffixBestReduced = new double[orderCount + 1];
+        suffixMinSpend = new long[orderCount + 1];
+        for (int depth = orderCount - 1; depth >= 0; depth--) {
+            long maxDiscount = 0;
+            double bestReduced = Double.NEGATIVE_INFINITY;
+            long minSpend = Long.MAX_VALUE;
+            for (int option = optionStart[depth]; option < optionStart[depth + 1]; option++) {
+                maxDiscount = Math.max(maxDiscount, optionDiscounts[option]);
+                bestReduced = Math.max(bestReduced, optionReduced[option]);
+                minSpend = Math.min(minSpend, spend(option));
+            }
+            suffixMaxDiscount[depth] = suffixMaxDiscount[depth + 1] + maxDiscount;
+            suffixBestReduced[depth] = suffixBestReduced[depth + 1] + bestReduced;
+            suffixMinSpend[depth] = minSpend == Long.MAX_VALUE
+                    ? Long.MAX_VALUE / 2
+                    : suffixMinSpend[depth + 1] + minSpend;
+        }
+    }
+
+    private SolverResult search(PaymentPlan incumbent, long best, long deadline) {
+        if (orderCount == 0) {
+            return new SolverResult(new PaymentPlan(input), 0, 0, true, 0);
+        }
+        long[] cardLoads = new long[input.methodCount()];
+        long[] flexLoads = new long[input.methodCount()];
+        long pointsLoad = 0;
+        long pointsFlex = 0;
+        long discount = 0;
+        long spend = 0;
+        double reduced = 0;
+
+        int[] choice = new int[orderCount];
+        int[] bestChoice = null;
+        int depth = 0;
+        choice[0] = optionStart[0] - 1;
+        long nodes = 0;
+        boolean timedOut = false;
+
+        while (true) {
+            if ((++nodes & (CLOCK_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() > deadline) {
+                timedOut = true;
+                break;
+            }
+            int option = ++choice[depth];
+            if (option == optionStart[depth + 1]) {
+                if (depth == 0) {
+                    break;
+                }
+                option = choice[--depth];
+                int card = optionCards[option];
+                if (card != PaymentPlan.NO_CARD) {
+                    cardLoads[card] -= optionCardLoads[option];
+                    flexLoads[card] -= optionFlexLoads[option];
+                }
+                pointsLoad -= optionPointsLoads[option];
+                pointsFlex -= optionFlexLoads[option];
+                discount -= optionDiscounts[option];
+                spend -= spend(option);
+                reduced -= optionReduced[option];
+                continue;
+            }
+
+            int card = optionCards[option];
+            long nextDiscount = discount + optionDiscounts[option];
+            long nextSpend = spend + spend(option);
+            double nextReduced = reduced + optionReduced[option];
+            long nextPointsLoad = pointsLoad + optionPointsLoads[option];
+            long nextPointsFlex = pointsFlex + optionFlexLoads[option];
+            boolean feasible = nextPointsLoad - nextPointsFlex <= input.methodLimit(pointsMethod)
+                    && nextSpend + suffixMinSpend[depth + 1] <= totalLimit
+                    && (card == PaymentPlan.NO_CARD
+                        || cardLoads[card] + optionCardLoads[option] <= input.methodLimit(card));
+            if (!feasible || bound(nextDiscount, nextReduced, depth + 1) < best + 1 - BOUND_TOLERANCE) {
+                continue;
+            }
+
+            if (card != PaymentPlan.NO_CARD) {
+                cardLoads[card] += optionCardLoads[option];
+                flexLoads[card] += optionFlexLoads[option];
+            }
+            if (depth + 1 < orderCount) {
+                pointsLoad = nextPointsLoad;
+                pointsFlex = nextPointsFlex;
+                discount = nextDiscount;
+                spend = nextSpend;
+                reduced = nextReduced;
+                depth++;
+                choice[depth] = optionStart[depth] - 1;
+                continue;
+            }
+
+            if (requiredPoints(nextPointsLoad, cardLoads, flexLoads) <= input.methodLimit(pointsMethod)) {
+                best = nextDiscount;
+                bestChoice = choice.clone();
+            }
+            if (card != PaymentPlan.NO_CARD) {
+                cardLoads[card] -= optionCardLoads[option];
+                flexLoads[card] -= optionFlexLoads[option];
+            }
+        }
+
+        long upperBound = best;
+        if (timedOut) {
+            upperBound = Math.max(best, openBound(choice, depth));
+        }
+        if (bestChoice != null) {
+            PaymentPlan plan = plan(bestChoice);
+            return new SolverResult(plan, plan.totalDiscount(), Math.max(upperBound, plan.totalDiscount()),
+                    !timedOut, nodes);
+        }
+        if (incumbent != null) {
+            return new SolverResult(incumbent, best, upperBound, !timedOut, nodes);
+        }
+        return new SolverResult(null, 0, timedOut ? Math.max(0, upperBound) : 0, !timedOut, nodes);
+    }
+
+    private double bound(long discount, double reduced, int depth) {
+        return Math.min(discount + suffixMaxDiscount[depth], lagrangianBase + reduced + suffixBestReduced[depth]);
+    }
+
+    /**
+     * Returns the largest bound of the subtrees the search did not visit yet, given the current path.
+     */
+    private long openBound(int[] choice, int depth) {
+        double bound = Double.NEGATIVE_INFINITY;
+        long discount = 0;
+        double reduced = 0;
+        for (int level = 0; level <= depth; level++) {
+            for (int option = choice[level] + 1; option < optionStart[level + 1]; option++) {
+                bound = Math.max(bound, bound(discount + optionDiscounts[option],
+                        reduced + optionReduced[option], level + 1));
+            }
+            if (level < depth) {
+                discount += optionDiscounts[choice[level]];
+                reduced += optionReduced[choice[level]];
+            }
+        }
+        return bound == Double.NEGATIVE_INFINITY ? Long.MIN_VALUE : (long) Math.floor(bound + BOUND_TOLERANCE);
+    }
+
+    /**
+     * Returns the points needed once every card takes as much of the flexible card parts as its limit allows.
+     */
+    private long requiredPoints(long pointsLoad, long[] cardLoads, long[] flexLoads) {
+        long required = pointsLoad;
+        for (int card = 0; card < cardLoads.length; card++) {
+            if (flexLoads[card] > 0) {
+                required -= Math.min(flexLoads[card], input.methodLimit(card) - cardLoads[card]);
+            }
+        }
+        return required;
+    }
+
+    private PaymentPlan plan(int[] choice) {
+        long[] spare = new long[input.methodCount()];
+        for (int method = 0; method < spare.length; method++) {
+            spare[method] = input.methodLimit(method);
+        }
+        for (int option : choice) {
+            if (optionCards[option] != PaymentPlan.NO_CARD) {
+                spare[optionCards[option]] -= optionCardLoads[option];
+            }
+        }
+
+        PaymentPlan plan = new PaymentPlan(input);
+        for (int depth = 0; depth < orderCount; depth++) {
+            int option = choice[depth];
+            int card = optionCards[option];
+            int order = orderAt[depth];
+            long moved = 0;
+            if (card != PaymentPlan.NO_CARD) {
+                moved = Math.min(optionFlexLoads[option], spare[card]);
+                spare[card] -= moved;
+            }
+            long points = optionPointsLoads[option] - moved;
+            long promotedDiscount = points == 0 && optionDiscounts[option] == 0 ? promotedDiscount(order, card) : 0;
+            plan.settle(order, card, points, optionCardLoads[option] + moved - promotedDiscount,
+                    optionDiscounts[option] + promotedDiscount);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the discount of {@code card} when it promotes {@code order}, and {@code 0} otherwise. A
+     * no-discount option whose points part was moved entirely to a promoted card earns that discount.
+     */
+    private long promotedDiscount(int order, int card) {
+        for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++) {
+            if (input.promotionMethod(i) == card) {
+                return MoneyUnits.applyRatio(input.orderAmount(order), input.methodRatio(card));
+            }
+        }
+        return 0;
+    }
+
+    private long spend(int option) {
+        return optionCardLoads[option] + optionPointsLoads[option];
+    }
+
+    /**
+     * One way of paying an order. The card part starts at {@code cardLoad} and the points part at
+     * {@code pointsLoad}; up to {@code flexLoad} may be moved from the points to the card.
+     */
+    private static final class Option {
+        private final int card;
+        private final long discount;
+        private final long cardLoad;
+        private final long flexLoad;
+        private final long pointsLoad;
+        private double reduced;
+
+        Option(int card, long discount, long cardLoad, long flexLoad, long pointsLoad) {
+            this.card = card;
+            this.discount = discount;
+            this.cardLoad = cardLoad;
+            this.flexLoad = flexLoad;
+            this.pointsLoad = pointsLoad;
+        }
+
+        boolean flexOnCard(double[] multipliers, int pointsMethod) {
+            return card != PaymentPlan.NO_CARD && multipliers[card] < multipliers[pointsMethod];
+        }
+
+        double reduced(double[] multipliers, int pointsMethod) {
+            double value = discount - multipliers[pointsMethod] * pointsLoad;
+            if (card != PaymentPlan.NO_CARD) {
+                value -= multipliers[card] * cardLoad;
+                value += Math.max(0, multipliers[pointsMethod] - multipliers[card]) * flexLoad;
+            }
+            return value;
+        }
+    }
+}
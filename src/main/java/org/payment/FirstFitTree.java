@@ -0,0 +1,40 @@
+package org.payment;
+
+import java.util.Arrays;
+
+/**
+ * Max segment tree over method positions answering "first position whose value is at least {@code x}" in
+ * logarithmic time. Positions that must never be returned hold {@link Long#MIN_VALUE}.
+ */
+class FirstFitTree {
+    private final int leaves;
+    private final long[] tree;
+
+    FirstFitTree(int size) {
+        this.leaves = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.tree = new long[2 * leaves];
+        Arrays.fill(tree, Long.MIN_VALUE);
+    }
+
+    void set(int position, long value) {
+        int node = position + leaves;
+        tree[node] = value;
+        for (node >>= 1; node > 0; node >>= 1) {
+            tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Returns the lowest position holding a value {@code >= minimum}, or {@code -1}.
+     */
+    int findFirst(long minimum) {
+        if (tree[1] < minimum) {
+            return -1;
+        }
+        int node = 1;
+        while (node < leaves) {
+            node = tree[2 * node] >= minimum ? 2 * node : 2 * node + 1;
+        }
+        return node - leaves;
+    }
+}
@@ -0,0 +1,646 @@
+package org.payment;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fixed-point counterpart of {@link PaymentSelector}.
+ * <p>
+ * Runs the same greedy pipeline (candidates, greedy pass, full-card fallback, partial fallback and the
+ * no-discount restart) on {@code long} {@link MoneyUnits}, so it allocates nothing per comparison and never
+ * mutates the {@link PaymentMethod} instances it was built from. Tie-breaking follows the legacy engine
+ * step by step, which makes both engines print identical results.
+ * <p>
+ * Candidates depend only on their own order and the static method data, so they can be generated while the
+ * input is still loading: pass {@link #acceptOrder(int)} as the listener of a {@link StreamingOrderReader}.
+ * <p>
+ * Redundant candidates are pruned while they are generated. The 10%-points candidates of an order differ only
+ * by card and sit next to each other after sorting, so they are stored as one row whose card is picked when it
+ * is committed: the first card, in input order, that still covers the card part. Repeated promotions of the
+ * same card are dropped, as the greedy pass can never pick the copy.
+ * <p>
+ * With lazy selection the candidates are not sorted up front. A {@link CandidateHeap} holds the best remaining
+ * row of every order, and a row that cannot be afforded is replaced by the next row of its order. Limits only
+ * shrink during the greedy pass, so such a row could not be afforded later either, and the rows are committed in
+ * the same order as after a full sort.
+ * <p>
+ * With {@link #spillCandidates(Path, long) spilling} the candidates never have to fit in memory at once: whenever
+ * the table reaches the memory budget it is sorted and written to a temporary file, and the greedy pass consumes
+ * the merged files as a stream. Results match the in-memory run.
+ */
+public class FixedPointSelector {
+    private static final int PARTITIONS_PER_THREAD = 8;
+
+    private final CompactInput input;
+    private final int pointsMethod;
+    private final long[] usedAmounts;
+    private final CardLimitIndex cardIndex;
+    private final FirstFitTree firstFitCards;
+    private final CandidateGenerator generator;
+    private final int parallelism;
+    private final SelectionMetrics metrics;
+    private final boolean lazySelection;
+    private final CompactJournal journal = new CompactJournal();
+    private CandidateTable candidates = new CandidateTable();
+    private CandidateSpill spill;
+    private int[] rankedRows;
+    private int generatedOrders;
+    private long generatedCandidates;
+    private boolean[] paidOrders;
+    private PaymentPlan plan;
+    private int settledOrders;
+    private String fallbackReason;
+
+    public FixedPointSelector(List<Order> orders, List<PaymentMethod> methods) {
+        this(CompactInput.of(orders, methods));
+    }
+
+    public FixedPointSelector(CompactInput input) {
+        this(input, 1);
+    }
+
+    /**
+     * Creates a selector that generates and sorts candidates on a {@link ForkJoinPool} of the given parallelism.
+     * With parallelism {@code 1} everything runs on the calling thread and candidates are generated as orders
+     * are accepted.
+     */
+    public FixedPointSelector(CompactInput input, int parallelism) {
+        this(input, parallelism, SelectionMetrics.disabled("fixed"));
+    }
+
+    /**
+     * Creates a single-threaded selector that collects its candidates in {@code scratch} instead of a fresh
+     * table; the table is cleared first and must not be shared with a selector that is still running.
+     */
+    FixedPointSelector(CompactInput input, CandidateTable scratch) {
+        this(input, 1, SelectionMetrics.disabled("fixed"));
+        scratch.clear();
+        this.candidates = scratch;
+    }
+
+    /**
+     * Creates a single-threaded selector that runs on candidates built and ranked elsewhere, such as by
+     * {@link ScenarioEngine}; {@code rows} lists every row of {@code candidates} in priority order.
+     */
+    FixedPointSelector(CompactInput input, CandidateTable candidates, int[] rows) {
+        this(input, 1, SelectionMetrics.disabled("fixed"));
+        this.candidates = candidates;
+        this.rankedRows = rows;
+    }
+
+    public FixedPointSelector(CompactInput input, int parallelism, SelectionMetrics metrics) {
+        this(input, parallelism, metrics, false);
+    }
+
+    /**
+     * @param lazySelection whether the greedy pass pops candidates from a heap instead of sorting them all first
+     */
+    public FixedPointSelector(CompactInput input, int parallelism, SelectionMetrics metrics, boolean lazySelection) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        if (input.pointsMethod() < 0) {
+            throw new IllegalArgumentException("Missing " + PaymentSelector.POINTS_ID + " payment method");
+        }
+        this.input = input;
+        this.pointsMethod = input.pointsMethod();
+        this.usedAmounts = new long[input.methodCount()];
+        this.cardIndex = new CardLimitIndex(input.methodCount());
+        this.firstFitCards = new FirstFitTree(input.methodCount());
+        this.generator = new CandidateGenerator(input);
+        this.parallelism = parallelism;
+        this.metrics = metrics;
+        this.lazySelection = lazySelection;
+        resetCardIndex();
+    }
+
+    /**
+     * Keeps at most about {@code memoryBytes} of candidates in memory and spills the rest to sorted runs in
+     * {@code directory}. Must be called before the first order is accepted, on a single-threaded selector with
+     * sorted selection; the spilled candidates are consumed by the next {@link #select()}, so it runs only once.
+     */
+    public void spillCandidates(Path directory, long memoryBytes) {
+        if (parallelism > 1 || lazySelection || rankedRows != null) {
+            throw new IllegalArgumentException("Spilling candidates requires a single-threaded sorted selection");
+        }
+        if (generatedOrders > 0) {
+            throw new IllegalStateException("Candidates were already generated");
+        }
+        this.spill = new CandidateSpill(directory, memoryBytes);
+    }
+
+    /**
+     * Deletes the candidates spilled so far, for a selector that will not {@link #select()} after all, e.g.
+     * because reading the orders failed.
+     */
+    public void discardSpilledCandidates() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    public void runSelector() {
+        try {
+            select();
+        } finally {
+            reportFallback(System.err);
+        }
+        printResults(System.out);
+    }
+
+    /**
+     * Runs the selection and returns the used amount of every payment method, in {@link MoneyUnits}, indexed
+     * like the methods of the input. Prints nothing; a fallback to the no-discount plan is counted in the
+     * metrics and can be reported with {@link #reportFallback(PrintStream)}.
+     */
+    public long[] select() {
+        if (spill != null && spill.rows() > 0 && spill.runCount() == 0) {
+            throw new IllegalStateException("Spilled candidates were already consumed");
+        }
+        paidOrders = new boolean[input.orderKeyCount()];
+        journal.clear();
+        plan = new PaymentPlan(input);
+        settledOrders = 0;
+        fallbackReason = null;
+        try {
+            payGreedily();
+            int settledBefore = settledOrders;
+            long started = System.nanoTime();
+            assignFullCardNoDiscount();
+            metrics.endPhase(SelectionMetrics.Phase.FULL_CARD_FALLBACK, started, settledOrders - settledBefore);
+            settledBefore = settledOrders;
+            started = System.nanoTime();
+            payForUnpaidOrders();
+            metrics.endPhase(SelectionMetrics.Phase.PARTIAL_FALLBACK, started, settledOrders - settledBefore);
+        } catch (UncheckedIOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            fallbackReason = ex.getMessage();
+            metrics.noDiscountFallback();
+            clearUsage();
+            long started = System.nanoTime();
+            payAllNoDiscount();
+            metrics.endPhase(SelectionMetrics.Phase.NO_DISCOUNT_FALLBACK, started, settledOrders);
+        }
+        if (metrics.isEnabled()) {
+            metrics.addDiscount(MoneyUnits.toBigDecimal(plan.totalDiscount()));
+        }
+        metrics.finish();
+        return usedAmounts.clone();
+    }
+
+    /**
+     * Generates the candidates of every order added to the input up to and including {@code order}. A parallel
+     * selector defers this to {@link #select()}, where all pending orders are split across its pool.
+     */
+    public void acceptOrder(int order) {
+        if (parallelism > 1) {
+            return;
+        }
+        if (metrics.isEnabled()) {
+            long started = System.nanoTime();
+            generateUpTo(order);
+            metrics.addPhaseTime(SelectionMetrics.Phase.GENERATE, System.nanoTime() - started);
+        } else {
+            generateUpTo(order);
+        }
+    }
+
+    /**
+     * Returns the per-order assignments of the last {@link #select()}. Orders sharing an id with an order that
+     * was already paid stay unsettled, as in the legacy engine.
+     */
+    public PaymentPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Returns how many candidates the legacy engine would have generated for the orders seen so far.
+     */
+    public long getGeneratedCandidateCount() {
+        return generatedCandidates + generator.getGeneratedCandidates();
+    }
+
+    /**
+     * Returns how many of the generated candidates were pruned or collapsed into a shared row.
+     */
+    public long getPrunedCandidateCount() {
+        return getGeneratedCandidateCount() - candidates.size() - (spill != null ? spill.rows() : 0);
+    }
+
+    /**
+     * Prints why the last {@link #select()} fell back to paying every order without a discount, if it did.
+     */
+    public void reportFallback(PrintStream out) {
+        if (fallbackReason != null) {
+            out.println("ERROR during optimized payment: " + fallbackReason);
+            out.println("Fallback to no-discount payment for ALL orders");
+        }
+    }
+
+    public void printResults(PrintStream out) {
+        for (int method = 0; method < input.methodCount(); method++) {
+            out.println(input.methodId(method) + " " + MoneyUnits.toCents(usedAmounts[method]));
+        }
+    }
+
+    private void payGreedily() {
+        if (rankedRows != null) {
+            payRanked(rankedRows);
+            return;
+        }
+        if (spill != null) {
+            paySpilled();
+            return;
+        }
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            long started = System.nanoTime();
+            if (pool != null) {
+                generateInParallel(pool);
+            } else {
+                generateUpTo(input.orderCount() - 1);
+            }
+            metrics.endPhase(SelectionMetrics.Phase.GENERATE, started, 0);
+            started = System.nanoTime();
+            if (lazySelection) {
+                CandidateHeap heap = new CandidateHeap(candidates);
+                metrics.endPhase(SelectionMetrics.Phase.SORT, started, 0);
+                payLazily(heap);
+            } else {
+                int[] rows = pool != null ? candidates.sortByPriority(pool) : candidates.sortByPriority();
+                metrics.endPhase(SelectionMetrics.Phase.SORT, started, 0);
+                payRanked(rows);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private void paySpilled() {
+        try (CandidateSpill runs = spill) {
+            long started = System.nanoTime();
+            generateUpTo(input.orderCount() - 1);
+            runs.spill(candidates);
+            candidates.clear();
+            metrics.endPhase(SelectionMetrics.Phase.GENERATE, started, 0);
+            metrics.candidates(getGeneratedCandidateCount(), runs.rows());
+            started = System.nanoTime();
+            runs.merge((order, method, points, cardAmount, discount) -> {
+                if (!paidOrders[input.orderKey(order)]) {
+                    commit(order, method, points, cardAmount, discount);
+                }
+            });
+            metrics.endPhase(SelectionMetrics.Phase.GREEDY, started, settledOrders);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete spilled candidates", e);
+        }
+    }
+
+    private void payLazily(CandidateHeap heap) {
+        metrics.candidates(getGeneratedCandidateCount(), candidates.size());
+        long started = System.nanoTime();
+        while (!heap.isEmpty()) {
+            int row = heap.peek();
+            if (paidOrders[input.orderKey(candidates.order(row))] || commit(row)) {
+                heap.removeTop();
+            } else {
+                heap.advance();
+            }
+        }
+        metrics.endPhase(SelectionMetrics.Phase.GREEDY, started, settledOrders);
+    }
+
+    private void payRanked(int[] rows) {
+        metrics.candidates(getGeneratedCandidateCount(), candidates.size());
+        long started = System.nanoTime();
+        for (int row : rows) {
+            if (!paidOrders[input.orderKey(candidates.order(row))]) {
+                commit(row);
+            }
+        }
+        metrics.endPhase(SelectionMetrics.Phase.GREEDY, started, settledOrders);
+    }
+
+    private boolean commit(int row) {
+        return commit(candidates.order(row), candidates.method(row), candidates.points(row),
+                candidates.cardAmount(row), candidates.discount(row));
+    }
+
+    /**
+     * Pays {@code order} as the candidate says when the limits allow it; returns whether it did.
+     */
+    private boolean commit(int order, int method, long points, long cardAmount, long discount) {
+        if (method == CandidateTable.ANY_CARD) {
+            metrics.cardLookup();
+            method = firstFitCards.findFirst(cardAmount);
+        }
+        if (method < 0 || !canAfford(method, points, cardAmount)) {
+            return false;
+        }
+        if (points > 0) {
+            pay(order, pointsMethod, points);
+        }
+        if (cardAmount > 0) {
+            pay(order, method, cardAmount);
+        }
+        settle(order, method == pointsMethod ? PaymentPlan.NO_CARD : method,
+                Math.max(points, 0), Math.max(cardAmount, 0), discount);
+        return true;
+    }
+
+    private boolean canAfford(int method, long points, long cardAmount) {
+        return points <= remainingLimit(pointsMethod) && cardAmount <= remainingLimit(method);
+    }
+
+    private void assignFullCardNoDiscount() {
+        for (int order : unpaidOrdersByAmountDescending()) {
+            long amountToPay = input.orderAmount(order);
+            int card = findMinFitCard(amountToPay);
+            if (card >= 0) {
+                pay(order, card, amountToPay);
+                settle(order, card, 0, amountToPay, 0);
+            }
+        }
+    }
+
+    private void payForUnpaidOrders() {
+        for (int order : unpaidOrdersByAmountDescending()) {
+            try {
+                payOrderFallbackPartial(order);
+            } catch (IllegalStateException e) {
+                recoverOrder(order);
+            }
+        }
+    }
+
+    /**
+     * Pays {@code failed} without a discount by undoing the most recently paid orders one at a time until it fits,
+     * and pays the undone orders again without discounts, oldest first. Only when undoing every order does not
+     * help is the failure passed on to the full no-discount restart.
+     */
+    private void recoverOrder(int failed) {
+        ArrayDeque<Integer> replan = new ArrayDeque<>();
+        replan.add(failed);
+        long replanAmount = input.orderAmount(failed);
+        long largestOrder = replanAmount;
+        while (true) {
+            if (mayFitNoDiscount(replanAmount, largestOrder)) {
+                int savepoint = journal.savepoint();
+                if (payNoDiscount(replan)) {
+                    metrics.rolledBack(replan.size() - 1);
+                    return;
+                }
+                journal.rollbackTo(savepoint, this::refund);
+            }
+            if (journal.isEmpty()) {
+                throw new IllegalStateException("Failed to pay for order " + input.orderId(failed)
+                        + " even after rolling back every order");
+            }
+            int undone = journal.rollbackLastOrder(this::refund);
+            paidOrders[input.orderKey(undone)] = false;
+            plan.unsettle(undone);
+            settledOrders--;
+            replan.addFirst(undone);
+            replanAmount += input.orderAmount(undone);
+            largestOrder = Math.max(largestOrder, input.orderAmount(undone));
+        }
+    }
+
+    /**
+     * Cheap necessary condition for {@link #payNoDiscount(ArrayDeque)}: the remaining limits cover the replanned
+     * orders in total, and the largest of them fits in the points plus the roomiest card. Skipping replays that
+     * cannot succeed keeps a long rollback, e.g. on an input that cannot be paid at all, linear.
+     */
+    private boolean mayFitNoDiscount(long total, long largestOrder) {
+        long available = 0;
+        long largestCard = 0;
+        for (int method = 0; method < usedAmounts.length; method++) {
+            available += remainingLimit(method);
+            if (method != pointsMethod) {
+                largestCard = Math.max(largestCard, remainingLimit(method));
+            }
+        }
+        return total <= available && largestOrder <= remainingLimit(pointsMethod) + largestCard;
+    }
+
+    /**
+     * Pays every order of {@code replan} points first, like {@link #payAllNoDiscount()}, and settles them only
+     * when all of them fit; on {@code false} the caller rolls the partial payments back.
+     */
+    private boolean payNoDiscount(ArrayDeque<Integer> replan) {
+        long[] points = new long[replan.size()];
+        int[] cards = new int[replan.size()];
+        int index = 0;
+        for (int order : replan) {
+            long amountToPay = input.orderAmount(order);
+            long usePoints = Math.min(remainingLimit(pointsMethod), amountToPay);
+            if (usePoints > 0) {
+                pay(order, pointsMethod, usePoints);
+                amountToPay -= usePoints;
+            }
+            int card = PaymentPlan.NO_CARD;
+            if (amountToPay > 0) {
+                card = findMinFitCard(amountToPay);
+                if (card < 0) {
+                    return false;
+                }
+                pay(order, card, amountToPay);
+            }
+            points[index] = Math.max(usePoints, 0);
+            cards[index++] = card;
+        }
+        index = 0;
+        for (int order : replan) {
+            settle(order, cards[index], points[index], input.orderAmount(order) - points[index], 0);
+            index++;
+        }
+        return true;
+    }
+
+    private void payOrderFallbackPartial(int order) {
+        metrics.partialFallback();
+        long amountToPay = input.orderAmount(order);
+        int card = findMaxLimitCardBelow(amountToPay);
+        if (card < 0) {
+            throw new IllegalStateException("No possible card found for " + input.orderId(order)
+                    + " with limit < " + MoneyUnits.toCents(amountToPay));
+        }
+        long cardRemainingLimit = remainingLimit(card);
+        long requiredPoints = amountToPay - cardRemainingLimit;
+
+        if (requiredPoints > remainingLimit(pointsMethod)) {
+            throw new IllegalStateException("Failed to pay for order" + input.orderId(order)
+                    + ": required points =" + MoneyUnits.toBigDecimal(requiredPoints)
+                    + ", available=" + MoneyUnits.toBigDecimal(remainingLimit(pointsMethod))
+            );
+        }
+
+        pay(order, card, cardRemainingLimit);
+        pay(order, pointsMethod, requiredPoints);
+        settle(order, card, requiredPoints, cardRemainingLimit, 0);
+    }
+
+    private void payAllNoDiscount() {
+        for (int order = 0; order < input.orderCount(); order++) {
+            long amountToPay = input.orderAmount(order);
+            long usePoints = Math.min(remainingLimit(pointsMethod), amountToPay);
+            if (usePoints > 0) {
+                pay(order, pointsMethod, usePoints);
+                amountToPay -= usePoints;
+            }
+
+            int card = PaymentPlan.NO_CARD;
+            if (amountToPay > 0) {
+                card = findMinFitCard(amountToPay);
+                if (card < 0) {
+                    throw new IllegalStateException("No card available to pay for " + input.orderId(order));
+                }
+                pay(order, card, amountToPay);
+            }
+            settle(order, card, Math.max(usePoints, 0), Math.max(amountToPay, 0), 0);
+        }
+    }
+
+    private void generateUpTo(int order) {
+        while (generatedOrders <= order) {
+            generator.generate(generatedOrders++, candidates);
+            if (spill != null && candidates.size() >= spill.runRows()) {
+                spill.spill(candidates);
+                candidates.clear();
+            }
+        }
+    }
+
+    private void settle(int order, int card, long points, long cardAmount, long discount) {
+        paidOrders[input.orderKey(order)] = true;
+        plan.settle(order, card, points, cardAmount, discount);
+        settledOrders++;
+    }
+
+    private void generateInParallel(ForkJoinPool pool) {
+        int from = generatedOrders;
+        int to = input.orderCount();
+        int partitions = Math.max(1, Math.min(to - from, parallelism * PARTITIONS_PER_THREAD));
+        List<GenerationTask> tasks = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            tasks.add(new GenerationTask(from + (int) ((long) (to - from) * partition / partitions),
+                    from + (int) ((long) (to - from) * (partition + 1) / partitions)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        List<CandidateTable> tables = new ArrayList<>(partitions + 1);
+        tables.add(candidates);
+        for (GenerationTask task : tasks) {
+            tables.add(task.candidates);
+            generatedCandidates += task.generator.getGeneratedCandidates();
+        }
+        candidates = CandidateTable.concat(tables);
+        generatedOrders = to;
+    }
+
+    private int findMinFitCard(long amountToPay) {
+        metrics.cardLookup();
+        return cardIndex.findMinFit(amountToPay);
+    }
+
+    private int findMaxLimitCardBelow(long amountToPay) {
+        metrics.cardLookup();
+        return cardIndex.findMaxBelow(amountToPay);
+    }
+
+    private int[] unpaidOrdersByAmountDescending() {
+        int[] unpaid = new int[input.orderCount()];
+        int count = 0;
+        for (int order = 0; order < input.orderCount(); order++) {
+            if (!paidOrders[input.orderKey(order)]) {
+                unpaid[count++] = order;
+            }
+        }
+        return Arrays.stream(unpaid, 0, count)
+                .boxed()
+                .sorted(Comparator.comparingLong(input::orderAmount).reversed())
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private long remainingLimit(int method) {
+        return input.methodLimit(method) - usedAmounts[method];
+    }
+
+    private void pay(int order, int method, long amount) {
+        payAmount(method, amount);
+        journal.record(order, method, amount);
+    }
+
+    private void payAmount(int method, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must be non-negative");
+        }
+        usedAmounts[method] += amount;
+        if (method != pointsMethod) {
+            updateCardIndexes(method);
+        }
+    }
+
+    private void refund(int method, long amount) {
+        usedAmounts[method] -= amount;
+        if (method != pointsMethod) {
+            updateCardIndexes(method);
+        }
+    }
+
+    private void clearUsage() {
+        Arrays.fill(paidOrders, false);
+        plan.clear();
+        settledOrders = 0;
+        Arrays.fill(usedAmounts, 0);
+        journal.clear();
+        resetCardIndex();
+    }
+
+    private void resetCardIndex() {
+        for (int method = 0; method < input.methodCount(); method++) {
+            if (method != pointsMethod) {
+                updateCardIndexes(method);
+            }
+        }
+    }
+
+    private void updateCardIndexes(int card) {
+        long remaining = remainingLimit(card);
+        cardIndex.update(card, remaining);
+        firstFitCards.set(card, remaining);
+    }
+
+    private class GenerationTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final CandidateGenerator generator = FixedPointSelector.this.generator.copy();
+        private final CandidateTable candidates = new CandidateTable();
+
+        GenerationTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            for (int order = from; order < to; order++) {
+                generator.generate(order, candidates);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.payment;
+
+/**
+ * Outcome of a {@link LocalSearchImprover} run. Amounts are {@link MoneyUnits}.
+ *
+ * @param plan            best plan found; the starting plan when nothing better was found
+ * @param initialDiscount total discount of the starting plan
+ * @param discount        total discount of {@code plan}
+ * @param elapsedNanos    wall-clock time spent improving
+ * @param moves           number of improving moves applied over all starts
+ */
+public record ImprovementResult(PaymentPlan plan, long initialDiscount, long discount, long elapsedNanos,
+                                long moves) {
+
+    public long gain() {
+        return discount - initialDiscount;
+    }
+
+    /**
+     * Returns the discount gained per second of improvement time, in units.
+     */
+    public double gainPerSecond() {
+        return elapsedNanos == 0 ? 0 : gain() * 1e9 / elapsedNanos;
+    }
+}
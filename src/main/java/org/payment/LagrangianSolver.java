@@ -0,0 +1,302 @@
+package org.payment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Near-optimal plans for large inputs through Lagrangian decomposition of the method limits.
+ * <p>
+ * Every limit, the shared {@code PUNKTY} one and the limit of each card, gets a price per unit. Once the limits
+ * are priced, orders no longer interact: each one independently takes the payment with the largest discount minus
+ * the priced amounts it uses, so the orders are split into chunks that are solved in parallel on a
+ * {@link ForkJoinPool}. The sum of those best values plus the priced limits is an upper bound on the total
+ * discount of any plan. The prices are fitted with a subgradient method, raising the price of every limit the
+ * orders overuse, until the bound stops improving or the time budget runs out.
+ * <p>
+ * The repair step turns the best prices into a plan: the greedy pipeline of {@link FixedPointSelector} runs on
+ * the candidates ranked by their priced value, and its fallbacks pay whatever the limits leave. The better of that
+ * plan and the incumbent is returned.
+ * <p>
+ * Like the greedy engines, only the first order with each id is paid.
+ */
+public class LagrangianSolver {
+    private static final int MAX_ITERATIONS = 300;
+    private static final int PATIENCE = 10;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final CompactInput input;
+    private final int pointsMethod;
+    private final int parallelism;
+    private final int[] orders;
+    private final long[] pointsDiscounts;
+    private final long[] tenPercents;
+
+    public LagrangianSolver(CompactInput input, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        if (input.pointsMethod() < 0) {
+            throw new IllegalArgumentException("Missing " + PaymentSelector.POINTS_ID + " payment method");
+        }
+        this.input = input;
+        this.pointsMethod = input.pointsMethod();
+        this.parallelism = parallelism;
+
+        boolean[] seenKeys = new boolean[input.orderKeyCount()];
+        int[] firstOrders = new int[input.orderCount()];
+        int count = 0;
+        for (int order = 0; order < input.orderCount(); order++) {
+            if (!seenKeys[input.orderKey(order)]) {
+                seenKeys[input.orderKey(order)] = true;
+                firstOrders[count++] = order;
+            }
+        }
+        this.orders = Arrays.copyOf(firstOrders, count);
+        this.pointsDiscounts = new long[count];
+        this.tenPercents = new long[count];
+        for (int i = 0; i < count; i++) {
+            long amount = input.orderAmount(orders[i]);
+            pointsDiscounts[i] = MoneyUnits.applyRatio(amount, input.methodRatio(pointsMethod));
+            tenPercents[i] = MoneyUnits.applyRatio(amount, CandidateGenerator.TEN_PERCENT);
+        }
+    }
+
+    /**
+     * Fits the prices within {@code timeBudgetMillis} and repairs the result into a plan.
+     *
+     * @param incumbent a complete feasible plan to start from, typically the greedy one, or {@code null}
+     */
+    public SolverResult solve(PaymentPlan incumbent, long timeBudgetMillis) {
+        long deadline = System.nanoTime() + Math.max(0, timeBudgetMillis) * 1_000_000;
+        long target = incumbent != null ? incumbent.totalDiscount() : 0;
+        int methods = input.methodCount();
+        double[] prices = new double[methods];
+        double[] bestPrices = prices.clone();
+        double bestBound = Double.POSITIVE_INFINITY;
+        double stepScale = 2;
+        int stalled = 0;
+        int iterations = 0;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (; iterations < MAX_ITERATIONS && System.nanoTime() < deadline; iterations++) {
+                Relaxation relaxation = relax(pool, prices);
+                if (relaxation.bound < bestBound) {
+                    bestBound = relaxation.bound;
+                    bestPrices = prices.clone();
+                    stalled = 0;
+                } else if (++stalled >= PATIENCE) {
+                    stepScale /= 2;
+                    stalled = 0;
+                }
+
+                double norm = 0;
+                for (int method = 0; method < methods; method++) {
+                    double subgradient = input.methodLimit(method) - relaxation.loads[method];
+                    norm += subgradient * subgradient;
+                }
+                double step = stepScale * (relaxation.bound - target) / norm;
+                if (norm == 0 || !(step > 0)) {
+                    break;
+                }
+                for (int method = 0; method < methods; method++) {
+                    double subgradient = input.methodLimit(method) - relaxation.loads[method];
+                    prices[method] = Math.max(0, prices[method] - step * subgradient);
+                }
+            }
+            if (bestBound == Double.POSITIVE_INFINITY) {
+                bestBound = relax(pool, bestPrices).bound;
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        PaymentPlan best = incumbent;
+        try {
+            PaymentPlan repaired = repair(bestPrices);
+            if (repaired.isComplete() && (best == null || repaired.totalDiscount() > best.totalDiscount())) {
+                best = repaired;
+            }
+        } catch (IllegalStateException e) {
+            if (best == null) {
+                return new SolverResult(null, 0, (long) Math.ceil(bestBound), false, iterations);
+            }
+        }
+        long discount = best == null ? 0 : best.totalDiscount();
+        long upperBound = Math.max(discount, (long) Math.ceil(bestBound));
+        return new SolverResult(best, discount, upperBound, upperBound == discount, iterations);
+    }
+
+    /**
+     * Solves every order for the given prices; returns the bound and the amounts the chosen payments use.
+     */
+    private Relaxation relax(ForkJoinPool pool, double[] prices) {
+        int cheapestCard = cheapestCard(prices);
+        int chunks = Math.max(1, Math.min(orders.length, parallelism * CHUNKS_PER_THREAD));
+        List<ChunkTask> tasks = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            tasks.add(new ChunkTask(prices, cheapestCard, (int) ((long) orders.length * chunk / chunks),
+                    (int) ((long) orders.length * (chunk + 1) / chunks)));
+        }
+        if (parallelism == 1) {
+            tasks.forEach(ChunkTask::compute);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+
+        Relaxation relaxation = new Relaxation(new double[prices.length]);
+        for (int method = 0; method < prices.length; method++) {
+            relaxation.bound += prices[method] * input.methodLimit(method);
+        }
+        for (ChunkTask task : tasks) {
+            relaxation.bound += task.value;
+            for (int method = 0; method < prices.length; method++) {
+                relaxation.loads[method] += task.loads[method];
+            }
+        }
+        return relaxation;
+    }
+
+    /**
+     * Adds the best priced payment of the {@code i}-th paid order to {@code loads} and returns its value. The
+     * payments are relaxed so the value never underestimates the real one: the 10%-points payment may use the
+     * cheapest card, and a payment without discount may be split between points and that card at will.
+     */
+    private double bestPayment(int i, double[] prices, int cheapestCard, double[] loads) {
+        int order = orders[i];
+        long amount = input.orderAmount(order);
+        double pointsPrice = prices[pointsMethod];
+        double cardPrice = cheapestCard < 0 ? Double.POSITIVE_INFINITY : prices[cheapestCard];
+
+        // no discount, on whichever of points and the cheapest card is priced lower
+        int method = cardPrice < pointsPrice ? cheapestCard : pointsMethod;
+        double best = -Math.min(pointsPrice, cardPrice) * amount;
+        long load = amount;
+        long pointsLoad = 0;
+
+        for (int p = input.promotionStart(order); p < input.promotionEnd(order); p++) {
+            int card = input.promotionMethod(p);
+            long discount = MoneyUnits.applyRatio(amount, input.methodRatio(card));
+            double value = discount - prices[card] * (amount - discount);
+            if (amount - discount <= input.methodLimit(card) && value > best) {
+                best = value;
+                method = card;
+                load = amount - discount;
+                pointsLoad = 0;
+            }
+        }
+
+        long limit = input.methodLimit(pointsMethod);
+        long pointsDiscount = pointsDiscounts[i];
+        double value = pointsDiscount - pointsPrice * (amount - pointsDiscount);
+        if (amount - pointsDiscount <= limit && value > best) {
+            best = value;
+            method = pointsMethod;
+            load = 0;
+            pointsLoad = amount - pointsDiscount;
+        }
+
+        long tenPercent = tenPercents[i];
+        if (tenPercent <= limit && cheapestCard >= 0) {
+            value = tenPercent - pointsPrice * tenPercent - cardPrice * (amount - 2 * tenPercent);
+            if (value > best) {
+                best = value;
+                method = cheapestCard;
+                load = amount - 2 * tenPercent;
+                pointsLoad = tenPercent;
+            }
+        }
+        if (amount - tenPercent <= limit) {
+            value = tenPercent - pointsPrice * (amount - tenPercent);
+            if (value > best) {
+                best = value;
+                method = pointsMethod;
+                load = 0;
+                pointsLoad = amount - tenPercent;
+            }
+        }
+
+        if (method != PaymentPlan.NO_CARD) {
+            loads[method] += load;
+        }
+        loads[pointsMethod] += pointsLoad;
+        return best;
+    }
+
+    /**
+     * Runs the greedy pipeline on the candidates ranked by their value under {@code prices}.
+     */
+    private PaymentPlan repair(double[] prices) {
+        CandidateTable candidates = new CandidateTable();
+        CandidateGenerator generator = new CandidateGenerator(input);
+        for (int order = 0; order < input.orderCount(); order++) {
+            generator.generate(order, candidates);
+        }
+        int[] ranking = candidates.sortByPriority();
+        int cheapestCard = cheapestCard(prices);
+        double[] values = new double[candidates.size()];
+        for (int row = 0; row < values.length; row++) {
+            int method = candidates.method(row);
+            double cardPrice = method == CandidateTable.ANY_CARD ? prices[cheapestCard] : prices[method];
+            values[row] = candidates.discount(row) - prices[pointsMethod] * Math.max(candidates.points(row), 0)
+                    - (method == pointsMethod ? 0 : cardPrice * candidates.cardAmount(row));
+        }
+        // a stable sort of the priority order, so rows of equal value keep the greedy tie-breaking
+        int[] rows = Arrays.stream(ranking)
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer row) -> values[row]).reversed())
+                .mapToInt(Integer::intValue)
+                .toArray();
+        FixedPointSelector selector = new FixedPointSelector(input, candidates, rows);
+        selector.select();
+        return selector.getPlan();
+    }
+
+    private int cheapestCard(double[] prices) {
+        int cheapest = -1;
+        for (int method = 0; method < prices.length; method++) {
+            if (method != pointsMethod && (cheapest < 0 || prices[method] < prices[cheapest])) {
+                cheapest = method;
+            }
+        }
+        return cheapest;
+    }
+
+    private static final class Relaxation {
+        private final double[] loads;
+        private double bound;
+
+        Relaxation(double[] loads) {
+            this.loads = loads;
+        }
+    }
+
+    private class ChunkTask extends RecursiveAction {
+        private final double[] prices;
+        private final int cheapestCard;
+        private final int from;
+        private final int to;
+        private final double[] loads;
+        private double value;
+
+        ChunkTask(double[] prices, int cheapestCard, int from, int to) {
+            this.prices = prices;
+            this.cheapestCard = cheapestCard;
+            this.from = from;
+            this.to = to;
+            this.loads = new double[prices.length];
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = from; i < to; i++) {
+                value += bestPayment(i, prices, cheapestCard, loads);
+            }
+        }
+    }
+}
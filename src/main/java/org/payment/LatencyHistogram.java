@@ -0,0 +1,77 @@
+package org.payment;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets: bucket {@code i} counts latencies below
+ * {@code 2^i} microseconds. Percentiles are reported as the upper bound of their bucket, so they are exact to a
+ * factor of two, which is enough to tell a warm service from a stalled one.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long micros = Math.max(nanos / 1_000, 0);
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    public double meanMicros() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : (double) totalMicros.sum() / samples;
+    }
+
+    /**
+     * Returns the bucket upper bound below which at least {@code quantile} of the samples fall, or {@code 0}
+     * without samples.
+     */
+    public long percentileMicros(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long samples = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            snapshot[bucket] = buckets.get(bucket);
+            samples += snapshot[bucket];
+        }
+        long rank = (long) Math.ceil(quantile * samples);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank && seen > 0) {
+                return 1L << bucket;
+            }
+        }
+        return 0;
+    }
+
+    void writeJson(JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("count", count());
+        json.writeNumberField("meanMicros", Math.round(meanMicros()));
+        json.writeNumberField("p50Micros", percentileMicros(0.50));
+        json.writeNumberField("p90Micros", percentileMicros(0.90));
+        json.writeNumberField("p99Micros", percentileMicros(0.99));
+        json.writeNumberField("maxMicros", maxMicros());
+        json.writeEndObject();
+    }
+}
@@ -0,0 +1,190 @@
+package org.payment;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free ledger of the remaining limits of payment methods, in {@link MoneyUnits}, for selections where several
+ * workers commit payments against the same limits.
+ * <p>
+ * Reserving an amount is one compare-and-set on the remaining limit, so a check and the debit it allows can never be
+ * separated by another worker's payment and a limit is never overdrawn. A hot method such as {@code PUNKTY} can be
+ * split into stripes, each holding a share of the limit, so workers mostly update different slots. A striped
+ * reservation takes from the worker's own stripe first and from the others when that is not enough; if all stripes
+ * together cannot cover the amount, whatever was taken is given back. Under contention, a reservation may then fail
+ * while another reservation is holding part of the limit for a moment. Slots are spread over separate cache lines.
+ */
+public final class LimitLedger {
+    private static final int SLOT_STRIDE = 8;
+
+    private final long[] limits;
+    private final int[] firstStripes;
+    private final int[] stripeCounts;
+    private final AtomicLongArray remaining;
+
+    /**
+     * @param limits       limit of every method
+     * @param stripeCounts number of stripes of every method, at least {@code 1}
+     */
+    public LimitLedger(long[] limits, int[] stripeCounts) {
+        if (limits.length != stripeCounts.length) {
+            throw new IllegalArgumentException("Expected one stripe count per method");
+        }
+        this.limits = limits.clone();
+        this.stripeCounts = stripeCounts.clone();
+        this.firstStripes = new int[limits.length];
+        int slots = 0;
+        for (int method = 0; method < limits.length; method++) {
+            if (stripeCounts[method] < 1) {
+                throw new IllegalArgumentException("Stripe count must be positive");
+            }
+            if (limits[method] < 0) {
+                throw new IllegalArgumentException("Limit must not be negative");
+            }
+            firstStripes[method] = slots;
+            slots += stripeCounts[method];
+        }
+        this.remaining = new AtomicLongArray(slots * SLOT_STRIDE);
+        for (int method = 0; method < limits.length; method++) {
+            int stripes = stripeCounts[method];
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                long share = limits[method] / stripes + (stripe == 0 ? limits[method] % stripes : 0);
+                remaining.set(slot(method, stripe), share);
+            }
+        }
+    }
+
+    /**
+     * Creates a ledger over the limits of {@code input}, with the points limit split into {@code pointsStripes}
+     * stripes and one stripe for every card.
+     */
+    public static LimitLedger of(CompactInput input, int pointsStripes) {
+        long[] limits = new long[input.methodCount()];
+        int[] stripes = new int[input.methodCount()];
+        for (int method = 0; method < limits.length; method++) {
+            limits[method] = input.methodLimit(method);
+            stripes[method] = method == input.pointsMethod() ? pointsStripes : 1;
+        }
+        return new LimitLedger(limits, stripes);
+    }
+
+    /**
+     * Debits {@code amount} from {@code method} if its remaining limit covers it; returns whether it did.
+     */
+    public boolean tryReserve(int method, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must be non-negative");
+        }
+        if (amount == 0) {
+            return true;
+        }
+        int stripes = stripeCounts[method];
+        int home = homeStripe(stripes);
+        if (takeAll(slot(method, home), amount)) {
+            return true;
+        }
+        if (stripes == 1) {
+            return false;
+        }
+
+        // gather the amount from all stripes, or give back what was gathered
+        long[] taken = new long[stripes];
+        long missing = amount;
+        for (int i = 0; i < stripes && missing > 0; i++) {
+            int stripe = (home + i) % stripes;
+            taken[stripe] = take(slot(method, stripe), missing);
+            missing -= taken[stripe];
+        }
+        if (missing == 0) {
+            return true;
+        }
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            if (taken[stripe] > 0) {
+                remaining.addAndGet(slot(method, stripe), taken[stripe]);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Debits both amounts or neither, e.g. the points and the card part of one payment.
+     */
+    public boolean tryReserve(int first, long firstAmount, int second, long secondAmount) {
+        if (!tryReserve(first, firstAmount)) {
+            return false;
+        }
+        if (!tryReserve(second, secondAmount)) {
+            release(first, firstAmount);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back an amount reserved earlier.
+     */
+    public void release(int method, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must be non-negative");
+        }
+        remaining.addAndGet(slot(method, homeStripe(stripeCounts[method])), amount);
+    }
+
+    /**
+     * Returns the remaining limit of {@code method}; exact only while no reservation is in progress.
+     */
+    public long remaining(int method) {
+        long total = 0;
+        for (int stripe = 0; stripe < stripeCounts[method]; stripe++) {
+            total += remaining.get(slot(method, stripe));
+        }
+        return total;
+    }
+
+    public long used(int method) {
+        return limits[method] - remaining(method);
+    }
+
+    public int methodCount() {
+        return limits.length;
+    }
+
+    /**
+     * Takes {@code amount} from one slot if it holds that much.
+     */
+    private boolean takeAll(int slot, long amount) {
+        while (true) {
+            long available = remaining.get(slot);
+            if (available < amount) {
+                return false;
+            }
+            if (remaining.compareAndSet(slot, available, available - amount)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes up to {@code amount} from one slot and returns how much it took; a slot holding less than the amount is
+     * emptied.
+     */
+    private long take(int slot, long amount) {
+        while (true) {
+            long available = remaining.get(slot);
+            if (available <= 0) {
+                return 0;
+            }
+            long taken = Math.min(available, amount);
+            if (remaining.compareAndSet(slot, available, available - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    private int slot(int method, int stripe) {
+        return (firstStripes[method] + stripe) * SLOT_STRIDE;
+    }
+
+    private static int homeStripe(int stripes) {
+        return stripes == 1 ? 0 : (int) (Thread.currentThread().threadId() % stripes);
+    }
+}
@@ -0,0 +1,366 @@
+package org.payment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Anytime improvement of a finished plan, typically the one left by the greedy phases of
+ * {@link FixedPointSelector}.
+ * <p>
+ * Every start repeatedly applies improving moves until none is left, then perturbs its best plan and climbs
+ * again, until the deadline:
+ * <ul>
+ *     <li>reassign one order to its best payment under the remaining limits, e.g. from a promoted card to full
+ *     points, or to a card with more remaining limit;</li>
+ *     <li>reassign two orders together, so one can give up limit the other needs;</li>
+ *     <li>move the points part of partially paid orders onto their cards, freeing points for other orders.</li>
+ * </ul>
+ * Remaining limits are updated incrementally with every move. Starts run in parallel, each with its own random
+ * visiting order, and the best plan of all starts wins. Orders the starting plan leaves unsettled, such as
+ * repeated order ids, are left alone.
+ */
+public class LocalSearchImprover {
+    private static final int MAX_PERTURBED_ORDERS = 4;
+
+    private final CompactInput input;
+    private final int pointsMethod;
+    private final int starts;
+    private final boolean virtualThreads;
+
+    public LocalSearchImprover(CompactInput input) {
+        this(input, 1, false);
+    }
+
+    /**
+     * Creates an improver running {@code starts} independent starts, each on its own virtual or platform thread.
+     */
+    public LocalSearchImprover(CompactInput input, int starts, boolean virtualThreads) {
+        if (starts < 1) {
+            throw new IllegalArgumentException("Number of starts must be positive");
+        }
+        if (input.pointsMethod() < 0) {
+            throw new IllegalArgumentException("Missing " + PaymentSelector.POINTS_ID + " payment method");
+        }
+        this.input = input;
+        this.pointsMethod = input.pointsMethod();
+        this.starts = starts;
+        this.virtualThreads = virtualThreads;
+    }
+
+    public ImprovementResult improve(PaymentPlan plan, long timeBudgetMillis) {
+        long started = System.nanoTime();
+        long deadline = started + Math.max(0, timeBudgetMillis) * 1_000_000;
+        List<Search> searches = new ArrayList<>();
+        for (int start = 0; start < starts; start++) {
+            searches.add(new Search(plan, start, deadline));
+        }
+
+        PaymentPlan best = plan;
+        long moves = 0;
+        try (ExecutorService executor = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(starts)) {
+            for (Future<PaymentPlan> future : executor.invokeAll(searches)) {
+                PaymentPlan found = future.get();
+                if (found.totalDiscount() > best.totalDiscount()) {
+                    best = found;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Local search was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Local search failed", e.getCause());
+        }
+        for (Search search : searches) {
+            moves += search.moves;
+        }
+        return new ImprovementResult(best, plan.totalDiscount(), best.totalDiscount(), System.nanoTime() - started,
+                moves);
+    }
+
+    private record Payment(int card, long points, long cardAmount, long discount) {
+    }
+
+    private class Search implements Callable<PaymentPlan> {
+        private final PaymentPlan plan;
+        private final long[] remaining;
+        private final int[] visit;
+        private final Random random;
+        private final long deadline;
+        private long discount;
+        private long moves;
+
+        Search(PaymentPlan start, long seed, long deadline) {
+            this.plan = start.copy();
+            this.random = new Random(seed);
+            this.deadline = deadline;
+            this.remaining = new long[input.methodCount()];
+            long[] used = start.usedAmounts();
+            for (int method = 0; method < remaining.length; method++) {
+                remaining[method] = input.methodLimit(method) - used[method];
+            }
+            int settled = 0;
+            for (int order = 0; order < plan.orderCount(); order++) {
+                if (plan.isSettled(order)) {
+                    settled++;
+                }
+            }
+            this.visit = new int[settled];
+            for (int order = 0, next = 0; order < plan.orderCount(); order++) {
+                if (plan.isSettled(order)) {
+                    visit[next++] = order;
+                }
+            }
+            this.discount = start.totalDiscount();
+        }
+
+        @Override
+        public PaymentPlan call() {
+            PaymentPlan best = plan.copy();
+            long bestDiscount = discount;
+            while (!expired()) {
+                climb();
+                if (discount > bestDiscount) {
+                    best = plan.copy();
+                    bestDiscount = discount;
+                } else if (discount < bestDiscount) {
+                    restore(best);
+                }
+                if (visit.length == 0) {
+                    break;
+                }
+                perturb();
+            }
+            return best;
+        }
+
+        private void climb() {
+            boolean improved = true;
+            while (improved && !expired()) {
+                improved = false;
+                movePointsToCards();
+                shuffleVisit();
+                for (int order : visit) {
+                    improved |= reassign(order);
+                }
+                for (int i = 0; !improved && i < visit.length && !expired(); i++) {
+                    for (int j = 0; !improved && j < visit.length; j++) {
+                        improved = i != j && reassign(visit[i], visit[j]);
+                    }
+                }
+            }
+        }
+
+        private boolean reassign(int order) {
+            Payment current = current(order);
+            release(order);
+            Payment best = bestPayment(order);
+            if (best != null && best.discount() > current.discount()) {
+                apply(order, best);
+                moves++;
+                return true;
+            }
+            apply(order, current);
+            return false;
+        }
+
+        /**
+         * Releases both orders and pays them again, {@code first} first, keeping the result if it gains.
+         */
+        private boolean reassign(int first, int second) {
+            Payment currentFirst = current(first);
+            Payment currentSecond = current(second);
+            release(first);
+            release(second);
+            Payment bestFirst = bestPayment(first);
+            if (bestFirst != null && bestFirst.discount() > currentFirst.discount()) {
+                apply(first, bestFirst);
+                Payment bestSecond = bestPayment(second);
+                if (bestSecond != null
+                        && bestFirst.discount() + bestSecond.discount()
+                        > currentFirst.discount() + currentSecond.discount()) {
+                    apply(second, bestSecond);
+                    moves++;
+                    return true;
+                }
+                release(first);
+            }
+            apply(first, currentFirst);
+            apply(second, currentSecond);
+            return false;
+        }
+
+        /**
+         * Moves as much of every points part onto its card as the card allows, keeping the 10% needed for the
+         * discount of partially paid orders. An undiscounted order that ends up fully on a card promoting it gets
+         * that promotion instead.
+         */
+        private void movePointsToCards() {
+            for (int order : visit) {
+                int card = plan.card(order);
+                long points = plan.points(order);
+                if (card == PaymentPlan.NO_CARD || points == 0) {
+                    continue;
+                }
+                long minimum = plan.discount(order) > 0 ? tenPercent(order) : 0;
+                long moved = Math.min(points - minimum, remaining[card]);
+                if (moved <= 0) {
+                    continue;
+                }
+                long promoted = moved == points ? promotedDiscount(order, card) : -1;
+                release(order);
+                if (promoted >= 0) {
+                    apply(order, new Payment(card, 0, input.orderAmount(order) - promoted, promoted));
+                } else {
+                    apply(order, new Payment(card, points - moved, plan.cardAmount(order) + moved,
+                            plan.discount(order)));
+                }
+            }
+        }
+
+        /**
+         * Releases a few random orders and pays them again in random order with any payment that fits.
+         */
+        private void perturb() {
+            PaymentPlan before = plan.copy();
+            int count = 1 + random.nextInt(Math.min(MAX_PERTURBED_ORDERS, visit.length));
+            int[] chosen = new int[count];
+            for (int i = 0; i < count; i++) {
+                chosen[i] = visit[random.nextInt(visit.length)];
+                if (plan.isSettled(chosen[i])) {
+                    release(chosen[i]);
+                    plan.unsettle(chosen[i]);
+                }
+            }
+            for (int order : chosen) {
+                if (plan.isSettled(order)) {
+                    continue;
+                }
+                List<Payment> payments = payments(order);
+                if (payments.isEmpty()) {
+                    restore(before);
+                    return;
+                }
+                apply(order, payments.get(random.nextInt(payments.size())));
+            }
+        }
+
+        private Payment bestPayment(int order) {
+            Payment best = null;
+            for (Payment payment : payments(order)) {
+                if (best == null || payment.discount() > best.discount()
+                        || payment.discount() == best.discount() && payment.points() < best.points()) {
+                    best = payment;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Returns every way of paying {@code order} that fits the remaining limits, with the smallest points
+         * part each way allows.
+         */
+        private List<Payment> payments(int order) {
+            List<Payment> payments = new ArrayList<>();
+            long amount = input.orderAmount(order);
+            long pointsDiscount = MoneyUnits.applyRatio(amount, input.methodRatio(pointsMethod));
+            if (amount - pointsDiscount <= remaining[pointsMethod]) {
+                payments.add(new Payment(PaymentPlan.NO_CARD, amount - pointsDiscount, 0, pointsDiscount));
+            }
+
+            long tenPercent = tenPercent(order);
+            for (int card = 0; card < input.methodCount(); card++) {
+                if (card == pointsMethod) {
+                    continue;
+                }
+                long promoted = promotedDiscount(order, card);
+                if (promoted >= 0 && amount - promoted <= remaining[card]) {
+                    payments.add(new Payment(card, 0, amount - promoted, promoted));
+                }
+
+                long partialTotal = amount - tenPercent;
+                long partialPoints = Math.max(tenPercent, partialTotal - remaining[card]);
+                if (partialPoints <= remaining[pointsMethod]
+                        && partialTotal - partialPoints >= MoneyUnits.UNITS_PER_CENT) {
+                    payments.add(new Payment(card, partialPoints, partialTotal - partialPoints, tenPercent));
+                }
+
+                long plainPoints = Math.max(0, amount - remaining[card]);
+                if (plainPoints < Math.max(tenPercent, 1) && plainPoints <= remaining[pointsMethod]
+                        && (plainPoints > 0 || promoted < 0)) {
+                    payments.add(new Payment(card, plainPoints, amount - plainPoints, 0));
+                }
+            }
+            return payments;
+        }
+
+        private long promotedDiscount(int order, int card) {
+            for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++) {
+                if (input.promotionMethod(i) == card) {
+                    return MoneyUnits.applyRatio(input.orderAmount(order), input.methodRatio(card));
+                }
+            }
+            return -1;
+        }
+
+        private long tenPercent(int order) {
+            return MoneyUnits.applyRatio(input.orderAmount(order), CandidateGenerator.TEN_PERCENT);
+        }
+
+        private Payment current(int order) {
+            return new Payment(plan.card(order), plan.points(order), plan.cardAmount(order), plan.discount(order));
+        }
+
+        private void release(int order) {
+            remaining[pointsMethod] += plan.points(order);
+            if (plan.card(order) != PaymentPlan.NO_CARD) {
+                remaining[plan.card(order)] += plan.cardAmount(order);
+            }
+            discount -= plan.discount(order);
+            plan.settle(order, PaymentPlan.NO_CARD, 0, 0, 0);
+        }
+
+        private void apply(int order, Payment payment) {
+            remaining[pointsMethod] -= payment.points();
+            if (payment.card() != PaymentPlan.NO_CARD && payment.cardAmount() > 0) {
+                remaining[payment.card()] -= payment.cardAmount();
+            }
+            discount += payment.discount();
+            plan.settle(order, payment.card(), payment.points(), payment.cardAmount(), payment.discount());
+        }
+
+        private void restore(PaymentPlan snapshot) {
+            for (int order : visit) {
+                if (plan.isSettled(order)) {
+                    release(order);
+                }
+                apply(order, current(snapshot, order));
+            }
+        }
+
+        private Payment current(PaymentPlan snapshot, int order) {
+            return new Payment(snapshot.card(order), snapshot.points(order), snapshot.cardAmount(order),
+                    snapshot.discount(order));
+        }
+
+        private void shuffleVisit() {
+            for (int i = visit.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int order = visit[i];
+                visit[i] = visit[j];
+                visit[j] = order;
+            }
+        }
+
+        private boolean expired() {
+            return System.nanoTime() >= deadline;
+        }
+    }
+}
@@ -3,35 +3,342 @@ package org.payment;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 public class Main {
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long DEFAULT_TIME_BUDGET_MS = 10_000;
+    private static final int DEFAULT_PORT = 8080;
+    private static final long DEFAULT_CACHE_MB = 64;
 
     public static void main(String[] args) {
-        if (args.length != 2) {
+        CliOptions options = new CliOptions(args);
+        if (options.has("serve")) {
+            serve(options);
+            return;
+        }
+        if (options.has("batch")) {
+            runBatch(options);
+            return;
+        }
+        if (options.has("snapshot")) {
+            runSnapshot(options);
+            return;
+        }
+        if (options.positional().size() != 2) {
             printUsageAndExit();
         }
+        if (options.has("write-snapshot")) {
+            writeSnapshot(options);
+            return;
+        }
+        if (options.has("scenarios")) {
+            runScenarios(options);
+            return;
+        }
+        if (options.get("engine", "fixed").equals("legacy") && options.has("assignments")) {
+            printUsageAndExit("--assignments is not supported by --engine=legacy");
+        }
+        if (options.has("cache-dir") && (!options.get("engine", "fixed").equals("fixed") || options.has("spill-mb"))) {
+            printUsageAndExit("--cache-dir is only supported by --engine=fixed without --spill-mb");
+        }
 
         try {
-            List<Order> orders = readJsonFile(args[0], new TypeReference<>() {});
-            List<PaymentMethod> methods = readJsonFile(args[1], new TypeReference<>() {});
+            String ordersPath = options.positional().get(0);
+            List<PaymentMethod> methods = readJsonFile(options.positional().get(1), new TypeReference<>() {});
 
-            new PaymentSelector(orders, methods).runSelector();
+            String engine = options.get("engine", "fixed");
+            SelectionMetrics metrics = options.has("metrics")
+                    ? new SelectionMetrics(engine) : SelectionMetrics.disabled(engine);
+            switch (engine) {
+                case "fixed", "lazy" -> runFixedPoint(ordersPath, methods, options, metrics);
+                case "legacy" -> new PaymentSelector(readJsonFile(ordersPath, new TypeReference<>() {}), methods,
+                        metrics).runSelector();
+                default -> printUsageAndExit();
+            }
+            if (metrics.isEnabled()) {
+                metrics.writeJson(Path.of(options.get("metrics", "")));
+            }
         } catch (IOException e) {
             System.err.println("Failed to load input files: " + e.getMessage());
             System.exit(2);
         }
     }
 
+    private static void runFixedPoint(String ordersPath, List<PaymentMethod> methods, CliOptions options,
+                                      SelectionMetrics metrics) throws IOException {
+        // only the plain greedy totals are cached, the exact solver and local search depend on time budgets
+        if (options.has("cache-dir") && options.get("solver", "greedy").equals("greedy")
+                && !options.has("improve-ms") && !options.has("assignments")) {
+            runCached(ordersPath, methods, options, metrics);
+            return;
+        }
+        boolean lazy = options.get("engine", "fixed").equals("lazy");
+        int parallelism = options.getInt("parallelism", 1);
+        if (options.has("spill-mb") && (lazy || parallelism > 1 || options.getLong("spill-mb", 0) < 1)) {
+            printUsageAndExit("--spill-mb=N needs a positive N, --engine=fixed and --parallelism=1");
+        }
+        CompactInput input = new CompactInput(methods);
+        FixedPointSelector selector = new FixedPointSelector(input, parallelism, metrics, lazy);
+        if (options.has("spill-mb")) {
+            selector.spillCandidates(Path.of(options.get("spill-dir", System.getProperty("java.io.tmpdir"))),
+                    options.getLong("spill-mb", 0) << 20);
+        }
+        try {
+            StreamingOrderReader.read(Path.of(ordersPath), input, selector::acceptOrder);
+        } catch (IOException | RuntimeException e) {
+            // candidates spilled while the orders were read would otherwise be left behind
+            selector.discardSpilledCandidates();
+            throw e;
+        }
+        runSolver(input, selector, options);
+    }
+
+    private static void runSolver(CompactInput input, FixedPointSelector selector, CliOptions options)
+            throws IOException {
+        PaymentPlan plan = switch (options.get("solver", "greedy")) {
+            case "greedy" -> {
+                if (options.has("improve-ms")) {
+                    yield runImproved(input, selector, options);
+                }
+                selector.runSelector();
+                yield selector.getPlan();
+            }
+            case "exact" -> runExact(input, selector, options.getLong("time-budget-ms", DEFAULT_TIME_BUDGET_MS));
+            case "points-dp" -> runPointsAllocation(input, selector);
+            case "lagrangian" -> runLagrangian(input, selector, options);
+            default -> {
+                printUsageAndExit();
+                yield null;
+            }
+        };
+        if (options.has("assignments")) {
+            Path path = Path.of(options.get("assignments", ""));
+            try (AssignmentWriter writer = AssignmentWriter.open(path, AssignmentWriter.Format.forPath(path))) {
+                writer.write(plan);
+                System.err.printf("Wrote %d assignments to %s%n", writer.getRecords(), path);
+            }
+        }
+    }
+
+    private static void runCached(String ordersPath, List<PaymentMethod> methods, CliOptions options,
+                                  SelectionMetrics metrics) throws IOException {
+        CompactInput input = new CompactInput(methods);
+        StreamingOrderReader.read(Path.of(ordersPath), input, order -> {
+        });
+        SelectionCache cache = new SelectionCache(0, Path.of(options.get("cache-dir", "")));
+        SelectionResult result = cache.select(input, cached -> {
+            FixedPointSelector selector = new FixedPointSelector(cached, options.getInt("parallelism", 1), metrics);
+            selectGreedily(selector);
+            return SelectionResult.of(selector.getPlan());
+        });
+        // a hit prints the cached totals only; the no-discount fallback notice is printed by the run that stored them
+        result.printTotals(System.out);
+        System.err.println("Result cache " + (cache.getMisses() == 0 ? "hit" : "miss"));
+    }
+
+    private static void runScenarios(CliOptions options) {
+        try {
+            CompactInput input = new CompactInput(readJsonFile(options.positional().get(1), new TypeReference<>() {}));
+            StreamingOrderReader.read(Path.of(options.positional().get(0)), input, order -> {
+            });
+            List<Scenario> scenarios = readJsonFile(options.get("scenarios", ""), new TypeReference<>() {});
+            ScenarioEngine engine = new ScenarioEngine(input,
+                    options.getInt("parallelism", Runtime.getRuntime().availableProcessors()));
+            for (ScenarioResult result : engine.evaluate(scenarios)) {
+                System.out.println(result.scenario().name() + " "
+                        + (result.error() == null ? result.totalDiscount() : "ERROR " + result.error()));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load input files: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private static void writeSnapshot(CliOptions options) {
+        try {
+            CompactInput input = new CompactInput(readJsonFile(options.positional().get(1), new TypeReference<>() {}));
+            StreamingOrderReader.read(Path.of(options.positional().get(0)), input, order -> {
+            });
+            OrderSnapshot.write(input, Path.of(options.get("write-snapshot", "")));
+            System.err.printf("Wrote %d orders%n", input.orderCount());
+        } catch (IOException e) {
+            System.err.println("Failed to write snapshot: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private static void runSnapshot(CliOptions options) {
+        try {
+            CompactInput input = OrderSnapshot.load(Path.of(options.get("snapshot", "")));
+            SelectionMetrics metrics = options.has("metrics")
+                    ? new SelectionMetrics("fixed") : SelectionMetrics.disabled("fixed");
+            runSolver(input, new FixedPointSelector(input, options.getInt("parallelism", 1), metrics), options);
+            if (metrics.isEnabled()) {
+                metrics.writeJson(Path.of(options.get("metrics", "")));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load snapshot: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Runs the greedy selection and reports a no-discount fallback on stderr, which the library call keeps quiet.
+     */
+    private static void selectGreedily(FixedPointSelector selector) {
+        try {
+            selector.select();
+        } finally {
+            selector.reportFallback(System.err);
+        }
+    }
+
+    private static PaymentPlan runExact(CompactInput input, FixedPointSelector selector, long timeBudgetMillis) {
+        PaymentPlan greedy = null;
+        try {
+            selectGreedily(selector);
+            greedy = selector.getPlan().isComplete() ? selector.getPlan() : null;
+        } catch (IllegalStateException e) {
+            System.err.println("Greedy selection failed: " + e.getMessage());
+        }
+        SolverResult result = new ExactSolver(input).solve(greedy, timeBudgetMillis);
+        if (result.plan() == null) {
+            System.err.println("Exact solver found no feasible plan");
+            System.exit(3);
+        }
+        result.plan().printTotals(System.out);
+        System.err.printf("Exact solver: discount %s, upper bound %s, gap %s, %s after %d nodes%n",
+                MoneyUnits.toCents(result.discount()), MoneyUnits.toCents(result.upperBound()),
+                MoneyUnits.toCents(result.gap()), result.optimal() ? "optimal" : "stopped", result.nodes());
+        return result.plan();
+    }
+
+    private static PaymentPlan runLagrangian(CompactInput input, FixedPointSelector selector, CliOptions options) {
+        PaymentPlan greedy = null;
+        try {
+            selectGreedily(selector);
+            greedy = selector.getPlan().isComplete() ? selector.getPlan() : null;
+        } catch (IllegalStateException e) {
+            System.err.println("Greedy selection failed: " + e.getMessage());
+        }
+        SolverResult result = new LagrangianSolver(input,
+                options.getInt("parallelism", Runtime.getRuntime().availableProcessors()))
+                .solve(greedy, options.getLong("time-budget-ms", DEFAULT_TIME_BUDGET_MS));
+        if (result.plan() == null) {
+            System.err.println("Lagrangian solver found no feasible plan");
+            System.exit(3);
+        }
+        result.plan().printTotals(System.out);
+        System.err.printf("Lagrangian solver: discount %s, upper bound %s, gap %s after %d iterations%n",
+                MoneyUnits.toCents(result.discount()), MoneyUnits.toCents(result.upperBound()),
+                MoneyUnits.toCents(result.gap()), result.nodes());
+        return result.plan();
+    }
+
+    private static PaymentPlan runPointsAllocation(CompactInput input, FixedPointSelector selector) {
+        PaymentPlan greedy = null;
+        try {
+            selectGreedily(selector);
+            greedy = selector.getPlan().isComplete() ? selector.getPlan() : null;
+        } catch (IllegalStateException e) {
+            System.err.println("Greedy selection failed: " + e.getMessage());
+        }
+        PointsAllocation result = new PointsAllocator(input).solve(greedy);
+        result.plan().printTotals(System.out);
+        System.err.printf("Points allocation: discount %s (greedy %s), %d orders on points, step %s, %s plan%n",
+                MoneyUnits.toCents(result.discount()),
+                result.greedyDiscount() < 0 ? "failed" : MoneyUnits.toCents(result.greedyDiscount()),
+                result.pointsOrders(), MoneyUnits.toBigDecimal(result.step()),
+                result.allocated() ? "allocated" : "greedy");
+        return result.plan();
+    }
+
+    private static PaymentPlan runImproved(CompactInput input, FixedPointSelector selector, CliOptions options) {
+        selectGreedily(selector);
+        LocalSearchImprover improver = new LocalSearchImprover(input, options.getInt("improve-starts", 1),
+                options.has("virtual-threads"));
+        ImprovementResult result = improver.improve(selector.getPlan(), options.getLong("improve-ms", 0));
+        result.plan().printTotals(System.out);
+        System.err.printf("Local search: discount %s -> %s in %d ms (%s per second, %d moves)%n",
+                MoneyUnits.toCents(result.initialDiscount()), MoneyUnits.toCents(result.discount()),
+                result.elapsedNanos() / 1_000_000, MoneyUnits.toCents((long) result.gainPerSecond()), result.moves());
+        return result.plan();
+    }
+
+    private static void runBatch(CliOptions options) {
+        BatchSelector batch = new BatchSelector(
+                options.getInt("parallelism", Runtime.getRuntime().availableProcessors()), !options.has("unordered"));
+        String output = options.get("output", "-");
+        try (OutputStream out = output.equals("-")
+                ? new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16)
+                : new BufferedOutputStream(Files.newOutputStream(Path.of(output)), 1 << 16)) {
+            long started = System.nanoTime();
+            long customers = batch.run(BatchSelector.read(Path.of(options.get("batch", ""))), out);
+            System.err.printf("Solved %d customers in %d ms%n", customers, (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Batch failed: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private static void serve(CliOptions options) {
+        InetSocketAddress address = new InetSocketAddress(options.get("host", "127.0.0.1"),
+                options.getInt("port", DEFAULT_PORT));
+        try {
+            int maxInFlight = options.getInt("max-in-flight", SelectionServer.DEFAULT_MAX_IN_FLIGHT);
+            int maxRequestBytes = options.getInt("max-request-bytes", SelectionServer.DEFAULT_MAX_REQUEST_BYTES);
+            SelectionServer server = options.has("cache-mb") || options.has("cache-dir")
+                    ? new SelectionServer(address, maxInFlight, maxRequestBytes, new SelectionCache(
+                            options.getLong("cache-mb", DEFAULT_CACHE_MB) << 20,
+                            options.has("cache-dir") ? Path.of(options.get("cache-dir", "")) : null))
+                    : new SelectionServer(address, maxInFlight, maxRequestBytes);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+            System.err.println("Serving POST /select and GET /stats on " + address.getHostString() + ":"
+                    + server.port());
+        } catch (IOException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
     private static <T> T readJsonFile(String path, TypeReference<T> typeRef) throws IOException {
         return MAPPER.readValue(new File(path), typeRef);
     }
 
+    private static void printUsageAndExit(String problem) {
+        System.err.println(problem);
+        printUsageAndExit();
+    }
+
     private static void printUsageAndExit() {
-        System.err.println("Usage: java -jar app.jar <orders.json> <paymentmethods.json>");
+        System.err.println("Usage: java -jar app.jar [--engine=fixed|lazy|legacy] [--parallelism=N] "
+                + "[--solver=greedy|exact|points-dp|lagrangian] [--time-budget-ms=N] "
+                + "[--improve-ms=N] [--improve-starts=N] [--virtual-threads] [--metrics=<file.json>] "
+                + "[--assignments=<file.jsonl|file.csv>] [--cache-dir=<dir>] [--spill-mb=N] [--spill-dir=<dir>] "
+                + "<orders.json> <paymentmethods.json>");
+        System.err.println("       java -jar app.jar --write-snapshot=<file.snap> <orders.json> <paymentmethods.json>");
+        System.err.println("       java -jar app.jar --scenarios=<scenarios.json> [--parallelism=N] "
+                + "<orders.json> <paymentmethods.json>");
+        System.err.println("       java -jar app.jar --snapshot=<file.snap> [--parallelism=N] "
+                + "[--solver=greedy|exact|points-dp|lagrangian] [--time-budget-ms=N] [--improve-ms=N] "
+                + "[--improve-starts=N] [--virtual-threads] [--metrics=<file.json>] "
+                + "[--assignments=<file.jsonl|file.csv>]");
+        System.err.println("       java -jar app.jar --batch=<problems.jsonl|dir> [--output=<file>] [--unordered] "
+                + "[--parallelism=N]");
+        System.err.println("       java -jar app.jar --serve [--host=H] [--port=N] [--max-in-flight=N] "
+                + "[--max-request-bytes=N] [--cache-mb=N] [--cache-dir=<dir>]");
         System.exit(1);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package org.payment;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money representation used by the primitive selection engines.
+ * <p>
+ * Amounts and limits are rounded HALF_UP to whole cents when they are loaded and are then kept as
+ * {@code long} units of 1/10000. Discount ratios are kept as basis points. Because
+ * {@link PaymentMethod#calculateRatioDiscountPercent()} always yields whole percents, the product of a cent
+ * amount and a ratio is exact in these units, so every comparison matches the {@link BigDecimal} engine.
+ */
+public final class MoneyUnits {
+    public static final int SCALE = 4;
+    public static final int CENTS_SCALE = 2;
+    public static final int BASIS_POINTS = 10_000;
+    static final long UNITS_PER_CENT = 100;
+
+    private MoneyUnits() {
+    }
+
+    public static long toUnits(BigDecimal amount) {
+        return amount.setScale(CENTS_SCALE, RoundingMode.HALF_UP).movePointRight(SCALE).longValueExact();
+    }
+
+    /**
+     * Parses a plain decimal such as {@code 123.45} straight into units without creating a {@link BigDecimal},
+     * rounding HALF_UP to cents like {@link #toUnits(BigDecimal)}. Exponents and very long numbers take the
+     * {@link BigDecimal} route. Amounts beyond the {@code long} range of units throw {@link ArithmeticException},
+     * as {@link #toUnits(BigDecimal)} does.
+     */
+    public static long parseUnits(char[] text, int offset, int length) {
+        int end = offset + length;
+        int position = offset;
+        boolean negative = position < end && text[position] == '-';
+        if (negative || position < end && text[position] == '+') {
+            position++;
+        }
+
+        long cents = 0;
+        int integerDigits = 0;
+        while (position < end && isDigit(text[position])) {
+            cents = cents * 10 + (text[position++] - '0');
+            integerDigits++;
+        }
+        int fractionDigits = 0;
+        if (position < end && text[position] == '.') {
+            position++;
+            while (position < end && isDigit(text[position])) {
+                int digit = text[position++] - '0';
+                if (fractionDigits < CENTS_SCALE) {
+                    cents = cents * 10 + digit;
+                } else if (fractionDigits == CENTS_SCALE && digit >= 5) {
+                    cents++;
+                }
+                fractionDigits++;
+            }
+        }
+
+        if (position != end || integerDigits + fractionDigits == 0 || integerDigits > 15) {
+            return toUnits(new BigDecimal(text, offset, length));
+        }
+        for (int i = fractionDigits; i < CENTS_SCALE; i++) {
+            cents *= 10;
+        }
+        long units = Math.multiplyExact(cents, UNITS_PER_CENT);
+        return negative ? -units : units;
+    }
+
+    public static BigDecimal toBigDecimal(long units) {
+        return BigDecimal.valueOf(units, SCALE);
+    }
+
+    public static BigDecimal toCents(long units) {
+        return toBigDecimal(units).setScale(CENTS_SCALE, RoundingMode.HALF_UP);
+    }
+
+    public static int toBasisPoints(BigDecimal ratio) {
+        return ratio.movePointRight(SCALE).setScale(0, RoundingMode.HALF_UP).intValueExact();
+    }
+
+    public static long applyRatio(long units, int basisPoints) {
+        long product = Math.multiplyExact(units, basisPoints);
+        long quotient = product / BASIS_POINTS;
+        long remainder = product % BASIS_POINTS;
+        if (Math.abs(remainder) * 2 >= BASIS_POINTS) {
+            quotient += Long.signum(product);
+        }
+        return quotient;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
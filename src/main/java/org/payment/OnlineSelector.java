@@ -0,0 +1,288 @@
+package org.payment;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides orders one at a time against a persistent ledger of remaining limits, for checkouts where orders arrive
+ * as a stream.
+ * <p>
+ * Every offered order gets its candidates generated once. With a look-ahead of {@code 0} it is decided right away:
+ * the first candidate, in the priority order of {@link FixedPointSelector}, that fits the remaining limits wins,
+ * and the usual no-discount fallbacks apply when none does. With a look-ahead of {@code k}, up to {@code k} orders
+ * wait uncommitted; each new order re-plans the whole window greedily and commits only the oldest one, so later
+ * orders can still steer its choice. Decisions only touch the window, which keeps them in the microseconds however
+ * long the stream runs.
+ * <p>
+ * The {@link PaymentMethod} instances are only read; the ledger lives in the selector.
+ */
+public class OnlineSelector {
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    private final CompactInput input;
+    private final int pointsMethod;
+    private final int lookAhead;
+    private final long[] remaining;
+    private final long[] planned;
+    private final ArrayDeque<Order> pending = new ArrayDeque<>();
+    private final CandidateTable candidates = new CandidateTable();
+    private final CandidateGenerator generator;
+    private int firstPending;
+    private int[] rowStarts = new int[64];
+    private int[] rows = new int[64];
+    private boolean[] plannedOrders = new boolean[16];
+
+    public OnlineSelector(List<PaymentMethod> methods) {
+        this(methods, 0);
+    }
+
+    public OnlineSelector(List<PaymentMethod> methods, int lookAhead) {
+        if (lookAhead < 0) {
+            throw new IllegalArgumentException("Look-ahead must not be negative");
+        }
+        this.input = new CompactInput(methods);
+        if (input.pointsMethod() < 0) {
+            throw new IllegalArgumentException("Missing " + PaymentSelector.POINTS_ID + " payment method");
+        }
+        this.pointsMethod = input.pointsMethod();
+        this.lookAhead = lookAhead;
+        this.remaining = new long[input.methodCount()];
+        this.planned = new long[input.methodCount()];
+        for (int method = 0; method < remaining.length; method++) {
+            remaining[method] = input.methodLimit(method);
+        }
+        this.generator = new CandidateGenerator(input);
+    }
+
+    /**
+     * Adds an order to the window and returns the orders committed because of it: none while the window is
+     * filling up, otherwise the oldest pending order.
+     *
+     * @throws IllegalStateException when the oldest order cannot be paid from the remaining limits; it is dropped
+     *                               and the ledger is left untouched
+     */
+    public List<OrderAssignment> offer(Order order) {
+        if (firstPending >= COMPACTION_THRESHOLD) {
+            compact();
+        }
+        pending.addLast(order);
+        add(order);
+        if (pending.size() <= lookAhead) {
+            return List.of();
+        }
+        return List.of(commitOldest());
+    }
+
+    /**
+     * Commits every pending order, oldest first.
+     *
+     * @throws IllegalStateException when an order cannot be paid; it is dropped, the orders after it stay pending
+     *                               and the ones before it are committed, use {@link #commitNext()} to see them
+     */
+    public List<OrderAssignment> flush() {
+        List<OrderAssignment> committed = new ArrayList<>(pending.size());
+        while (!pending.isEmpty()) {
+            committed.add(commitNext());
+        }
+        return committed;
+    }
+
+    /**
+     * Commits the oldest pending order without waiting for the window to fill up.
+     *
+     * @throws IllegalStateException when the order cannot be paid, or nothing is pending; an unpaid order is
+     *                               dropped and the ledger is left untouched
+     */
+    public OrderAssignment commitNext() {
+        if (pending.isEmpty()) {
+            throw new IllegalStateException("No pending orders");
+        }
+        return commitOldest();
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the limit still available on the given method, or {@code null} for an unknown id.
+     */
+    public BigDecimal remainingLimit(String methodId) {
+        int method = input.methodIndex(methodId);
+        return method < 0 ? null : MoneyUnits.toCents(remaining[method]);
+    }
+
+    private void add(Order order) {
+        int index = input.addOrder(order);
+        if (index + 2 > rowStarts.length) {
+            rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+        }
+        rowStarts[index] = candidates.size();
+        generator.generate(index, candidates);
+        rowStarts[index + 1] = candidates.size();
+    }
+
+    private OrderAssignment commitOldest() {
+        int order = firstPending++;
+        pending.removeFirst();
+        try {
+            int row = planOldest(order);
+            return row >= 0 ? commitCandidate(order, row) : commitFallback(order);
+        } finally {
+            if (pending.isEmpty()) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Runs the greedy pass over the candidates of the whole window on a copy of the ledger and returns the row
+     * it picks for {@code oldest}, or {@code -1} when the oldest order gets no discounted candidate.
+     */
+    private int planOldest(int oldest) {
+        int from = rowStarts[oldest];
+        int count = candidates.size() - from;
+        if (rows.length < count) {
+            rows = new int[Math.max(count, rows.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            int row = from + i;
+            int position = i;
+            while (position > 0 && candidates.compare(row, rows[position - 1], null) < 0) {
+                rows[position] = rows[position - 1];
+                position--;
+            }
+            rows[position] = row;
+        }
+
+        int windowSize = input.orderCount() - oldest;
+        if (plannedOrders.length < windowSize) {
+            plannedOrders = new boolean[Math.max(windowSize, plannedOrders.length * 2)];
+        }
+        Arrays.fill(plannedOrders, 0, windowSize, false);
+        System.arraycopy(remaining, 0, planned, 0, remaining.length);
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            int order = candidates.order(row);
+            if (plannedOrders[order - oldest]) {
+                continue;
+            }
+            int method = resolveCard(row, planned);
+            long points = candidates.points(row);
+            long cardAmount = candidates.cardAmount(row);
+            if (method >= 0 && points <= planned[pointsMethod] && cardAmount <= planned[method]) {
+                if (order == oldest) {
+                    return row;
+                }
+                planned[pointsMethod] -= Math.max(points, 0);
+                planned[method] -= Math.max(cardAmount, 0);
+                plannedOrders[order - oldest] = true;
+            }
+        }
+        return -1;
+    }
+
+    private OrderAssignment commitCandidate(int order, int row) {
+        int method = resolveCard(row, remaining);
+        long points = Math.max(candidates.points(row), 0);
+        long cardAmount = Math.max(candidates.cardAmount(row), 0);
+        remaining[pointsMethod] -= points;
+        remaining[method] -= cardAmount;
+        return assignment(order, method == pointsMethod ? PaymentPlan.NO_CARD : method, points, cardAmount,
+                candidates.discount(row));
+    }
+
+    private OrderAssignment commitFallback(int order) {
+        long amountToPay = input.orderAmount(order);
+        int card = findMinFitCard(amountToPay);
+        if (card >= 0) {
+            remaining[card] -= amountToPay;
+            return assignment(order, card, 0, amountToPay, 0);
+        }
+
+        card = findMaxLimitCardBelow(amountToPay);
+        if (card >= 0 && amountToPay - remaining[card] <= remaining[pointsMethod]) {
+            long cardAmount = remaining[card];
+            long points = amountToPay - cardAmount;
+            remaining[card] = 0;
+            remaining[pointsMethod] -= points;
+            return assignment(order, card, points, cardAmount, 0);
+        }
+
+        long points = Math.min(remaining[pointsMethod], amountToPay);
+        if (points == amountToPay) {
+            remaining[pointsMethod] -= points;
+            return assignment(order, PaymentPlan.NO_CARD, points, 0, 0);
+        }
+        throw new IllegalStateException("No card available to pay for " + input.orderId(order));
+    }
+
+    private OrderAssignment assignment(int order, int card, long points, long cardAmount, long discount) {
+        return new OrderAssignment(input.orderId(order),
+                card == PaymentPlan.NO_CARD || cardAmount == 0 ? null : input.methodId(card),
+                MoneyUnits.toCents(points), MoneyUnits.toCents(cardAmount), MoneyUnits.toCents(discount));
+    }
+
+    /**
+     * Returns the method that pays the card part of {@code row}: its own method, or for an any-card row the first
+     * card, in input order, that covers the card part on the given ledger.
+     */
+    private int resolveCard(int row, long[] ledger) {
+        int method = candidates.method(row);
+        if (method != CandidateTable.ANY_CARD) {
+            return method;
+        }
+        long cardAmount = candidates.cardAmount(row);
+        for (int card = 0; card < ledger.length; card++) {
+            if (card != pointsMethod && ledger[card] >= cardAmount) {
+                return card;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the card with the smallest remaining limit covering {@code amount}, ties broken by method index, or
+     * {@code -1}; same contract as {@link CardLimitIndex#findMinFit(long)}.
+     */
+    private int findMinFitCard(long amount) {
+        int best = -1;
+        for (int card = 0; card < remaining.length; card++) {
+            if (card != pointsMethod && remaining[card] >= amount && (best < 0 || remaining[card] < remaining[best])) {
+                best = card;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the card with the largest remaining limit strictly below {@code amount}, ties broken by method index,
+     * or {@code -1}; same contract as {@link CardLimitIndex#findMaxBelow(long)}.
+     */
+    private int findMaxLimitCardBelow(long amount) {
+        int best = -1;
+        for (int card = 0; card < remaining.length; card++) {
+            if (card != pointsMethod && remaining[card] < amount && (best < 0 || remaining[card] > remaining[best])) {
+                best = card;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Drops settled orders from the input and candidate table; candidates of the still pending orders are built
+     * again, since their indices change.
+     */
+    private void compact() {
+        input.clearOrders();
+        candidates.clear();
+        generator.reset();
+        firstPending = 0;
+        for (Order order : pending) {
+            add(order);
+        }
+    }
+}
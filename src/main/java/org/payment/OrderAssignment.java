@@ -0,0 +1,11 @@
+package org.payment;
+
+import java.math.BigDecimal;
+
+/**
+ * How one order is paid. {@code cardId} is {@code null} when the order is paid with points only; amounts are in
+ * whole cents.
+ */
+public record OrderAssignment(String orderId, String cardId, BigDecimal points, BigDecimal cardAmount,
+                              BigDecimal discount) {
+}
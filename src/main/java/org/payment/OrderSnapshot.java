@@ -0,0 +1,239 @@
+package org.payment;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary columnar snapshot of a selector input, for inputs that are selected on again and again.
+ * <p>
+ * The file holds, little-endian: a header, the payment methods (id, limit in {@link MoneyUnits}, ratio in basis
+ * points) and then one fixed-width column per order field, each starting on an 8-byte boundary: amounts as
+ * {@code long} units, dense order keys, promotion end offsets, the interned promotion method indices, order id
+ * offsets and the UTF-8 order ids. {@link #load(Path)} memory-maps the file and bulk-copies the fixed-width
+ * columns straight into a {@link CompactInput}; order ids stay in the mapping and are decoded only when a result
+ * is printed.
+ */
+public final class OrderSnapshot {
+    private static final int MAGIC = 0x50534E50;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private OrderSnapshot() {
+    }
+
+    /**
+     * Writes the methods and orders of {@code input} to {@code path}, replacing any existing file.
+     */
+    public static void write(CompactInput input, Path path) throws IOException {
+        int orders = input.orderCount();
+        byte[][] ids = new byte[orders][];
+        long idBytes = 0;
+        for (int order = 0; order < orders; order++) {
+            ids[order] = input.orderId(order).getBytes(StandardCharsets.UTF_8);
+            idBytes += ids[order].length;
+        }
+        if (idBytes > Integer.MAX_VALUE) {
+            throw new IOException("Order ids take more than 2 GB");
+        }
+        int promotions = orders == 0 ? 0 : input.promotionEnd(orders - 1);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = new Writer(channel)) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(input.methodCount());
+            out.putInt(orders);
+            out.putInt(input.orderKeyCount());
+            out.putInt(promotions);
+            out.putLong(idBytes);
+            for (int method = 0; method < input.methodCount(); method++) {
+                byte[] id = input.methodId(method).getBytes(StandardCharsets.UTF_8);
+                out.putInt(id.length);
+                out.put(id);
+                out.putLong(input.methodLimit(method));
+                out.putInt(input.methodRatio(method));
+            }
+
+            out.align();
+            for (int order = 0; order < orders; order++) {
+                out.putLong(input.orderAmount(order));
+            }
+            out.align();
+            for (int order = 0; order < orders; order++) {
+                out.putInt(input.orderKey(order));
+            }
+            out.align();
+            for (int order = 0; order < orders; order++) {
+                out.putInt(input.promotionEnd(order));
+            }
+            out.align();
+            for (int position = 0; position < promotions; position++) {
+                out.putInt(input.promotionMethod(position));
+            }
+            out.align();
+            int offset = 0;
+            out.putInt(offset);
+            for (byte[] id : ids) {
+                offset += id.length;
+                out.putInt(offset);
+            }
+            out.align();
+            for (byte[] id : ids) {
+                out.put(id);
+            }
+        }
+    }
+
+    /**
+     * Maps a snapshot written by {@link #write(CompactInput, Path)} and returns it as a read-only input.
+     *
+     * @throws IOException when the file is not a snapshot of this version or is truncated
+     */
+    public static CompactInput load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not an order snapshot: " + path);
+            }
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not an order snapshot of version " + VERSION + ": " + path);
+            }
+            int methodCount = header.getInt();
+            int orders = header.getInt();
+            int orderKeys = header.getInt();
+            int promotions = header.getInt();
+            long idBytes = header.getLong();
+            if (methodCount < 0 || orders < 0 || orderKeys < 0 || promotions < 0 || idBytes < 0) {
+                throw new IOException("Corrupt order snapshot header: " + path);
+            }
+
+            ByteBuffer methodSection = map(channel, HEADER_BYTES,
+                    Math.min(channel.size() - HEADER_BYTES, Integer.MAX_VALUE));
+            List<PaymentMethod> methods = new ArrayList<>(methodCount);
+            try {
+                for (int method = 0; method < methodCount; method++) {
+                    byte[] id = new byte[methodSection.getInt()];
+                    methodSection.get(id);
+                    long limit = methodSection.getLong();
+                    int ratio = methodSection.getInt();
+                    methods.add(new PaymentMethod(new String(id, StandardCharsets.UTF_8),
+                            BigDecimal.valueOf(ratio, 2), MoneyUnits.toCents(limit)));
+                }
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                throw new IOException("Truncated payment methods in order snapshot: " + path, e);
+            }
+            CompactInput input = new CompactInput(methods);
+
+            long position = align(HEADER_BYTES + methodSection.position());
+            long[] amounts = new long[orders];
+            map(channel, position, (long) orders * Long.BYTES).asLongBuffer().get(amounts);
+            position = align(position + (long) orders * Long.BYTES);
+            int[] keys = readInts(channel, position, orders);
+            position = align(position + (long) orders * Integer.BYTES);
+            int[] promotionEnds = readInts(channel, position, orders);
+            position = align(position + (long) orders * Integer.BYTES);
+            int[] promotionMethods = readInts(channel, position, promotions);
+            position = align(position + (long) promotions * Integer.BYTES);
+            int[] idOffsets = readInts(channel, position, orders + 1);
+            position = align(position + (long) (orders + 1) * Integer.BYTES);
+            ByteBuffer ids = map(channel, position, idBytes);
+
+            input.loadSnapshot(amounts, keys, orderKeys, promotionEnds, promotionMethods, order -> {
+                byte[] id = new byte[idOffsets[order + 1] - idOffsets[order]];
+                ids.get(idOffsets[order], id);
+                return new String(id, StandardCharsets.UTF_8);
+            });
+            return input;
+        }
+    }
+
+    private static int[] readInts(FileChannel channel, long position, int count) throws IOException {
+        int[] values = new int[count];
+        map(channel, position, (long) count * Integer.BYTES).asIntBuffer().get(values);
+        return values;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE || position + size > channel.size()) {
+            throw new IOException("Truncated or oversized order snapshot section at " + position);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long align(long position) {
+        return (position + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    /**
+     * Buffers little-endian writes to a channel and keeps track of the file position for {@link #align()}.
+     */
+    private static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long written;
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void align() throws IOException {
+            long position = written + buffer.position();
+            for (long padding = OrderSnapshot.align(position) - position; padding > 0; padding--) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.payment;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Undo log of the payments made by {@link PaymentSelector}.
+ * <p>
+ * Every debit goes through {@link #pay(int, PaymentMethod, BigDecimal)}, which also keeps the selector's
+ * {@link RemainingLimitIndex} current on payments and refunds. The payments of one order are
+ * journaled back to back, so rolling back to a savepoint or undoing the latest order only pops the tail and costs
+ * as much as the work it undoes.
+ */
+class PaymentJournal {
+    private final List<Entry> entries = new ArrayList<>();
+    private final RemainingLimitIndex cardIndex;
+
+    PaymentJournal(RemainingLimitIndex cardIndex) {
+        this.cardIndex = cardIndex;
+    }
+
+    /**
+     * Debits {@code amount} from {@code method} on behalf of the order with the given index.
+     */
+    void pay(int order, PaymentMethod method, BigDecimal amount) {
+        method.payAmount(amount);
+        cardIndex.update(method);
+        entries.add(new Entry(order, method, amount));
+    }
+
+    /**
+     * Returns a savepoint that {@link #rollbackTo(int)} can return to.
+     */
+    int savepoint() {
+        return entries.size();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Refunds every payment made after {@code savepoint}, latest first.
+     */
+    void rollbackTo(int savepoint) {
+        while (entries.size() > savepoint) {
+            refund(entries.removeLast());
+        }
+    }
+
+    /**
+     * Refunds all payments of the most recently paid order and returns its index.
+     */
+    int rollbackLastOrder() {
+        int order = entries.getLast().order();
+        while (!entries.isEmpty() && entries.getLast().order() == order) {
+            refund(entries.removeLast());
+        }
+        return order;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private void refund(Entry entry) {
+        entry.method().setUsedAmount(entry.method().getUsedAmount().subtract(entry.amount()));
+        cardIndex.update(entry.method());
+    }
+
+    private record Entry(int order, PaymentMethod method, BigDecimal amount) {
+    }
+}
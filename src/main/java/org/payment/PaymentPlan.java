@@ -0,0 +1,138 @@
+package org.payment;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Per-order payment assignments in {@link MoneyUnits}: which card (if any) pays the card part, how many points
+ * are used and which discount was granted. Orders are addressed by their index in the {@link CompactInput}.
+ */
+public class PaymentPlan {
+    public static final int NO_CARD = -1;
+
+    private final CompactInput input;
+    private final int[] cards;
+    private final long[] points;
+    private final long[] cardAmounts;
+    private final long[] discounts;
+    private final boolean[] settled;
+
+    public PaymentPlan(CompactInput input) {
+        this.input = input;
+        int orders = input.orderCount();
+        this.cards = new int[orders];
+        this.points = new long[orders];
+        this.cardAmounts = new long[orders];
+        this.discounts = new long[orders];
+        this.settled = new boolean[orders];
+        Arrays.fill(cards, NO_CARD);
+    }
+
+    private PaymentPlan(PaymentPlan other) {
+        this.input = other.input;
+        this.cards = other.cards.clone();
+        this.points = other.points.clone();
+        this.cardAmounts = other.cardAmounts.clone();
+        this.discounts = other.discounts.clone();
+        this.settled = other.settled.clone();
+    }
+
+    public PaymentPlan copy() {
+        return new PaymentPlan(this);
+    }
+
+    public void settle(int order, int card, long pointsAmount, long cardAmount, long discount) {
+        cards[order] = cardAmount > 0 ? card : NO_CARD;
+        points[order] = pointsAmount;
+        cardAmounts[order] = cardAmount;
+        discounts[order] = discount;
+        settled[order] = true;
+    }
+
+    public void unsettle(int order) {
+        cards[order] = NO_CARD;
+        points[order] = 0;
+        cardAmounts[order] = 0;
+        discounts[order] = 0;
+        settled[order] = false;
+    }
+
+    public void clear() {
+        Arrays.fill(cards, NO_CARD);
+        Arrays.fill(points, 0);
+        Arrays.fill(cardAmounts, 0);
+        Arrays.fill(discounts, 0);
+        Arrays.fill(settled, false);
+    }
+
+    public CompactInput input() {
+        return input;
+    }
+
+    public int orderCount() {
+        return settled.length;
+    }
+
+    public boolean isSettled(int order) {
+        return settled[order];
+    }
+
+    /**
+     * Returns {@code true} when every order of the input has an assignment.
+     */
+    public boolean isComplete() {
+        for (boolean orderSettled : settled) {
+            if (!orderSettled) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int card(int order) {
+        return cards[order];
+    }
+
+    public long points(int order) {
+        return points[order];
+    }
+
+    public long cardAmount(int order) {
+        return cardAmounts[order];
+    }
+
+    public long discount(int order) {
+        return discounts[order];
+    }
+
+    public long totalDiscount() {
+        long total = 0;
+        for (long discount : discounts) {
+            total += discount;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the amount charged to every payment method, indexed like the methods of the input.
+     */
+    public long[] usedAmounts() {
+        long[] used = new long[input.methodCount()];
+        for (int order = 0; order < settled.length; order++) {
+            if (points[order] > 0) {
+                used[input.pointsMethod()] += points[order];
+            }
+            if (cards[order] != NO_CARD) {
+                used[cards[order]] += cardAmounts[order];
+            }
+        }
+        return used;
+    }
+
+    public void printTotals(PrintStream out) {
+        long[] used = usedAmounts();
+        for (int method = 0; method < used.length; method++) {
+            out.println(input.methodId(method) + " " + MoneyUnits.toCents(used[method]));
+        }
+    }
+}
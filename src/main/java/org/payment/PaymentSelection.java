@@ -0,0 +1,29 @@
+package org.payment;
+
+import java.util.List;
+
+/**
+ * Library entry point: runs the fixed-point engine on its own copy of the input and returns the result instead
+ * of printing it.
+ * <p>
+ * The given orders and payment methods are only read, never charged, so the same instances can be shared by any
+ * number of concurrent selections.
+ */
+public final class PaymentSelection {
+    private PaymentSelection() {
+    }
+
+    public static SelectionResult select(List<Order> orders, List<PaymentMethod> methods) {
+        return select(orders, methods, SelectionMetrics.disabled("fixed"));
+    }
+
+    /**
+     * @throws IllegalStateException when the limits cannot cover the orders, even without discounts
+     */
+    public static SelectionResult select(List<Order> orders, List<PaymentMethod> methods,
+                                         SelectionMetrics metrics) {
+        FixedPointSelector selector = new FixedPointSelector(CompactInput.of(orders, methods), 1, metrics);
+        selector.select();
+        return SelectionResult.of(selector.getPlan());
+    }
+}
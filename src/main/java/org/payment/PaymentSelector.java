@@ -3,121 +3,275 @@ package org.payment;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+/**
+ * The original {@code BigDecimal} engine.
+ * <p>
+ * Payment method ids and order ids are interned once into dense indices: methods are addressed by their input
+ * position, each order keeps the indices of its valid card promotions and paid orders are tracked in a bit set of
+ * order keys. Amounts stay {@code BigDecimal} throughout, so this engine shares no conversion with the fixed-point
+ * ones it is compared against. String ids only come back in messages and when the totals are printed.
+ */
 public class PaymentSelector {
     private static final BigDecimal TEN_PERCENT = BigDecimal.valueOf(0.1);
     private static final BigDecimal NINETY_PERCENT = BigDecimal.valueOf(0.9);
-    private static final String POINTS_ID = "PUNKTY";
+    static final String POINTS_ID = "PUNKTY";
 
     private final List<Order> orders;
     private final List<PaymentMethod> paymentMethods;
-    private final Map<String, PaymentMethod> methodMap;
-    private final Set<String> paidOrders;
+    private final PaymentMethod[] methodsById;
+    private final int pointsMethod;
+    private final int[] orderKeys;
+    private final int[][] promotedMethods;
+    private final int[] cardMethods;
+    private final BitSet paidOrders;
+    private final RemainingLimitIndex cardIndex;
+    private final SelectionMetrics metrics;
+    private final PaymentJournal journal;
+    private final BigDecimal[] grantedDiscounts;
 
     public PaymentSelector(List<Order> orders, List<PaymentMethod> methods) {
+        this(orders, methods, SelectionMetrics.disabled("legacy"));
+    }
+
+    public PaymentSelector(List<Order> orders, List<PaymentMethod> methods, SelectionMetrics metrics) {
         this.orders = orders;
         this.paymentMethods = methods;
-        this.methodMap = methods.stream().collect(Collectors.toMap(PaymentMethod::getId, pm -> pm));
-        this.paidOrders = new HashSet<>();
+        this.methodsById = methods.toArray(PaymentMethod[]::new);
+        Map<String, Integer> methodIndex = new HashMap<>();
+        for (int method = 0; method < methodsById.length; method++) {
+            if (methodIndex.putIfAbsent(methodsById[method].getId(), method) != null) {
+                throw new IllegalStateException("Duplicate payment method " + methodsById[method].getId());
+            }
+        }
+        this.pointsMethod = methodIndex.getOrDefault(POINTS_ID, -1);
+        Map<String, Integer> orderKeyIndex = new HashMap<>();
+        this.orderKeys = new int[orders.size()];
+        this.promotedMethods = new int[orders.size()][];
+        for (int order = 0; order < orders.size(); order++) {
+            orderKeys[order] = orderKeyIndex.computeIfAbsent(orders.get(order).id(), id -> orderKeyIndex.size());
+            promotedMethods[order] = orders.get(order).promotions().stream()
+                    .map(methodIndex::get)
+                    .filter(method -> method != null && method != pointsMethod)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        this.cardMethods = IntStream.range(0, methodsById.length)
+                .filter(method -> !isInvalidCardMethod(methodsById[method]))
+                .toArray();
+        this.paidOrders = new BitSet(orderKeyIndex.size());
+        this.cardIndex = new RemainingLimitIndex(methods.stream()
+                .filter(m -> !m.getId().equals(POINTS_ID))
+                .toList());
+        this.journal = new PaymentJournal(cardIndex);
+        this.metrics = metrics;
+        this.grantedDiscounts = metrics.isEnabled() ? new BigDecimal[orders.size()] : null;
     }
 
     public void runSelector() {
-        PaymentMethod pointsPayment = methodMap.get(POINTS_ID);
+        PaymentMethod pointsPayment = pointsMethod < 0 ? null : methodsById[pointsMethod];
 
         try {
             payGreedily(pointsPayment);
+            int settledBefore = paidOrders.cardinality();
+            long started = System.nanoTime();
             assignFullCardNoDiscount();
+            metrics.endPhase(SelectionMetrics.Phase.FULL_CARD_FALLBACK, started,
+                    paidOrders.cardinality() - settledBefore);
+            settledBefore = paidOrders.cardinality();
+            started = System.nanoTime();
             payForUnpaidOrders(pointsPayment);
+            metrics.endPhase(SelectionMetrics.Phase.PARTIAL_FALLBACK, started,
+                    paidOrders.cardinality() - settledBefore);
         } catch (Exception ex) {
             System.err.println("ERROR during optimized payment: " + ex.getMessage());
             System.err.println("Fallback to no-discount payment for ALL orders");
+            metrics.noDiscountFallback();
             clearUsage();
+            long started = System.nanoTime();
             payAllNoDiscount(pointsPayment);
+            metrics.endPhase(SelectionMetrics.Phase.NO_DISCOUNT_FALLBACK, started, paidOrders.cardinality());
         }
+        metrics.finish();
 
         printResults();
     }
 
     private void payGreedily(PaymentMethod pointsPayment) {
+        long started = System.nanoTime();
         List<Candidate> candidates = generateAllPossibleCandidates(pointsPayment);
+        metrics.endPhase(SelectionMetrics.Phase.GENERATE, started, 0);
+        metrics.candidates(candidates.size(), candidates.size());
+
+        started = System.nanoTime();
         candidates.sort(Comparator
                 .comparing(Candidate::getRatioDiscountPercent)
                 .thenComparing(Candidate::getDiscountAmount).reversed());
+        metrics.endPhase(SelectionMetrics.Phase.SORT, started, 0);
 
+        started = System.nanoTime();
         for(Candidate candidate : candidates) {
-            String orderId = candidate.getOrder().id();
-            if (!paidOrders.contains(orderId) && candidate.canAfford(pointsPayment)) {
-                candidate.payForOrder(pointsPayment);
-                paidOrders.add(orderId);
+            int orderKey = orderKeys[candidate.getOrderIndex()];
+            if (!paidOrders.get(orderKey) && candidate.canAfford(pointsPayment)) {
+                candidate.payForOrder(pointsPayment, journal);
+                paidOrders.set(orderKey);
+                if (metrics.isEnabled()) {
+                    metrics.addDiscount(candidate.getDiscountAmount());
+                    grantedDiscounts[candidate.getOrderIndex()] = candidate.getDiscountAmount();
+                }
             }
         }
+        metrics.endPhase(SelectionMetrics.Phase.GREEDY, started, paidOrders.cardinality());
     }
 
     private void assignFullCardNoDiscount() {
-        orders.stream()
-                .filter(order -> !paidOrders.contains(order.id()))
-                .sorted(Comparator.comparing(Order::amountToPay).reversed())
-                .forEach(order -> {
-                    BigDecimal totalAmountToPay = order.amountToPay();
-                    findMinFitCard(totalAmountToPay).ifPresent(card -> {
-                        card.payAmount(totalAmountToPay);
-                        paidOrders.add(order.id());
-                    });
-                });
+        unpaidByAmountDescending().forEach(order -> {
+            BigDecimal totalAmountToPay = orders.get(order).amountToPay();
+            findMinFitCard(totalAmountToPay).ifPresent(card -> {
+                journal.pay(order, card, totalAmountToPay);
+                paidOrders.set(orderKeys[order]);
+            });
+        });
+    }
+
+    private List<Integer> unpaidByAmountDescending() {
+        return IntStream.range(0, orders.size())
+                .filter(order -> !paidOrders.get(orderKeys[order]))
+                .boxed()
+                .sorted(Comparator.comparing((Integer order) -> orders.get(order).amountToPay()).reversed())
+                .toList();
     }
 
     private void payForUnpaidOrders(PaymentMethod pointsMethod) {
-        orders.stream()
-                .filter(order -> !paidOrders.contains(order.id()))
-                .sorted(Comparator.comparing(Order::amountToPay).reversed())
-                .forEach(order -> payOrderFallbackPartial(order, pointsMethod));
+        for (int order : unpaidByAmountDescending()) {
+            try {
+                payOrderFallbackPartial(order, pointsMethod);
+            } catch (IllegalStateException e) {
+                recoverOrder(order, pointsMethod);
+            }
+        }
     }
 
-    private void payOrderFallbackPartial(Order order, PaymentMethod pointsPayment) {
-        BigDecimal amountToPay = order.amountToPay();
+    /**
+     * Pays {@code failed} without a discount by undoing the most recently paid orders one at a time until it fits,
+     * and pays the undone orders again without discounts, oldest first. Only when undoing every order does not
+     * help is the failure passed on to the full no-discount restart.
+     */
+    private void recoverOrder(int failed, PaymentMethod pointsMethod) {
+        Deque<Integer> replan = new ArrayDeque<>();
+        replan.add(failed);
+        BigDecimal replanAmount = orders.get(failed).amountToPay();
+        BigDecimal largestOrder = replanAmount;
+        while (true) {
+            if (mayFitNoDiscount(replanAmount, largestOrder, pointsMethod)) {
+                int savepoint = journal.savepoint();
+                if (payNoDiscount(replan, pointsMethod)) {
+                    replan.forEach(order -> paidOrders.set(orderKeys[order]));
+                    metrics.rolledBack(replan.size() - 1);
+                    return;
+                }
+                journal.rollbackTo(savepoint);
+            }
+            if (journal.isEmpty()) {
+                throw new IllegalStateException("Failed to pay for order " + orders.get(failed).id()
+                        + " even after rolling back every order");
+            }
+            int undone = journal.rollbackLastOrder();
+            paidOrders.clear(orderKeys[undone]);
+            if (grantedDiscounts != null && grantedDiscounts[undone] != null) {
+                metrics.addDiscount(grantedDiscounts[undone].negate());
+                grantedDiscounts[undone] = null;
+            }
+            replan.addFirst(undone);
+            replanAmount = replanAmount.add(orders.get(undone).amountToPay());
+            largestOrder = largestOrder.max(orders.get(undone).amountToPay());
+        }
+    }
+
+    /**
+     * Cheap necessary condition for {@link #payNoDiscount(Collection, PaymentMethod)}: the remaining limits cover
+     * the replanned orders in total, and the largest of them fits in the points plus the roomiest card.
+     */
+    private boolean mayFitNoDiscount(BigDecimal total, BigDecimal largestOrder, PaymentMethod pointsMethod) {
+        BigDecimal available = BigDecimal.ZERO;
+        BigDecimal largestCard = BigDecimal.ZERO;
+        for (PaymentMethod method : paymentMethods) {
+            available = available.add(method.getRemainingLimit());
+            if (method != pointsMethod) {
+                largestCard = largestCard.max(method.getRemainingLimit());
+            }
+        }
+        return total.compareTo(available) <= 0
+                && largestOrder.compareTo(pointsMethod.getRemainingLimit().add(largestCard)) <= 0;
+    }
+
+    private boolean payNoDiscount(Collection<Integer> replan, PaymentMethod pointsMethod) {
+        for (int order : replan) {
+            BigDecimal amountToPay = orders.get(order).amountToPay();
+            BigDecimal usePoints = pointsMethod.getRemainingLimit().min(amountToPay);
+            if (usePoints.signum() > 0) {
+                journal.pay(order, pointsMethod, usePoints);
+                amountToPay = amountToPay.subtract(usePoints);
+            }
+
+            if (amountToPay.signum() > 0) {
+                Optional<PaymentMethod> card = findMinFitCard(amountToPay);
+                if (card.isEmpty()) {
+                    return false;
+                }
+                journal.pay(order, card.get(), amountToPay);
+            }
+        }
+        return true;
+    }
+
+    private void payOrderFallbackPartial(int order, PaymentMethod pointsPayment) {
+        metrics.partialFallback();
+        BigDecimal amountToPay = orders.get(order).amountToPay();
         PaymentMethod cardPayment = findMaxLimitCardBelow(amountToPay)
-                .orElseThrow(() -> new IllegalStateException("No possible card found for " + order.id() + " with limit < " + amountToPay));;
+                .orElseThrow(() -> new IllegalStateException("No possible card found for " + orders.get(order).id() + " with limit < " + amountToPay));;
         BigDecimal cardRemainingLimit = cardPayment.getRemainingLimit();
         BigDecimal requiredPoints = amountToPay.subtract(cardRemainingLimit);
 
         if (requiredPoints.compareTo(pointsPayment.getRemainingLimit()) > 0) {
-            throw new IllegalStateException("Failed to pay for order" + order.id()
+            throw new IllegalStateException("Failed to pay for order" + orders.get(order).id()
                             + ": required points =" + requiredPoints
                             + ", available=" + pointsPayment.getRemainingLimit()
             );
         }
 
-        cardPayment.payAmount(cardRemainingLimit);
-        pointsPayment.payAmount(requiredPoints);
-        paidOrders.add(order.id());
+        journal.pay(order, cardPayment, cardRemainingLimit);
+        journal.pay(order, pointsPayment, requiredPoints);
+        paidOrders.set(orderKeys[order]);
     }
 
     private void payAllNoDiscount(PaymentMethod pointsMethod) {
-        for (Order order : orders) {
-            BigDecimal amountToPay = order.amountToPay();
+        for (int order = 0; order < orders.size(); order++) {
+            BigDecimal amountToPay = orders.get(order).amountToPay();
             BigDecimal usePoints = pointsMethod.getRemainingLimit().min(amountToPay);
             if (usePoints.signum() > 0) {
-                pointsMethod.payAmount(usePoints);
+                journal.pay(order, pointsMethod, usePoints);
                 amountToPay = amountToPay.subtract(usePoints);
             }
 
             if (amountToPay.signum() > 0) {
+                String orderId = orders.get(order).id();
                 PaymentMethod card = findMinFitCard(amountToPay)
-                        .orElseThrow(() -> new IllegalStateException("No card available to pay for " + order.id()));
-                card.payAmount(amountToPay);
+                        .orElseThrow(() -> new IllegalStateException("No card available to pay for " + orderId));
+                journal.pay(order, card, amountToPay);
             }
-            paidOrders.add(order.id());
+            paidOrders.set(orderKeys[order]);
         }
     }
 
     private List<Candidate> generateAllPossibleCandidates(PaymentMethod pointsPayment) {
         List<Candidate> candidates = new ArrayList<>();
-        for(Order order : orders) {
-            BigDecimal amountToPay = order.amountToPay();
-            for(String promotionId : order.promotions()) {
-                PaymentMethod paymentMethod = methodMap.get(promotionId);
-                if (isCardMeetsConditions(paymentMethod, amountToPay)) {
+        for(int order = 0; order < orders.size(); order++) {
+            BigDecimal amountToPay = orders.get(order).amountToPay();
+            for(int method : promotedMethods[order]) {
+                PaymentMethod paymentMethod = methodsById[method];
+                if (isPaymentMeetsLimitConditions(paymentMethod, amountToPay)) {
                     addCandidate(candidates, order, paymentMethod, BigDecimal.ZERO, amountToPay, paymentMethod.calculateRatioDiscountPercent());
                 }
             }
@@ -128,10 +282,10 @@ public class PaymentSelector {
 
             BigDecimal pointsAmount = amountToPay.multiply(TEN_PERCENT);
             BigDecimal cardAmount = amountToPay.multiply(NINETY_PERCENT);
-            for(PaymentMethod paymentMethod : paymentMethods) {
-                BigDecimal cardAmountAfterDiscount = cardAmount.subtract(pointsAmount);
-                if (!isInvalidCardMethod(paymentMethod)
-                        && pointsPayment.getLimit().compareTo(pointsAmount) >= 0
+            BigDecimal cardAmountAfterDiscount = cardAmount.subtract(pointsAmount);
+            for(int method : cardMethods) {
+                PaymentMethod paymentMethod = methodsById[method];
+                if (pointsPayment.getLimit().compareTo(pointsAmount) >= 0
                         && paymentMethod.getLimit().compareTo(cardAmountAfterDiscount) >= 0) {
                     addCandidate(candidates, order, paymentMethod, pointsAmount, cardAmount, TEN_PERCENT);
                 }
@@ -141,20 +295,13 @@ public class PaymentSelector {
         return candidates;
     }
 
-    private void addCandidate(List<Candidate> candidates, Order order, PaymentMethod paymentMethod,
+    private void addCandidate(List<Candidate> candidates, int order, PaymentMethod paymentMethod,
                               BigDecimal requiredPointsAmount, BigDecimal requiredCardAmount, BigDecimal ratioDiscountPercent) {
-        BigDecimal discountAmount = order.amountToPay().multiply(ratioDiscountPercent);
-        candidates.add(new Candidate(order, paymentMethod, requiredPointsAmount, requiredCardAmount,
+        BigDecimal discountAmount = orders.get(order).amountToPay().multiply(ratioDiscountPercent);
+        candidates.add(new Candidate(orders.get(order), order, paymentMethod, requiredPointsAmount, requiredCardAmount,
                 discountAmount, ratioDiscountPercent));
     }
 
-    private boolean isCardMeetsConditions(PaymentMethod paymentMethod, BigDecimal amountToPay) {
-        if (isInvalidCardMethod(paymentMethod)) {
-            return false;
-        }
-        return isPaymentMeetsLimitConditions(paymentMethod, amountToPay);
-    }
-
     private boolean isPaymentMeetsLimitConditions(PaymentMethod paymentMethod, BigDecimal amountToPay) {
         BigDecimal discountAmount = amountToPay.multiply(paymentMethod.calculateRatioDiscountPercent());
         BigDecimal amountToPayAfterDiscount = amountToPay.subtract(discountAmount);
@@ -166,22 +313,25 @@ public class PaymentSelector {
     }
 
     private Optional<PaymentMethod> findMinFitCard(BigDecimal amountToPay) {
-        return paymentMethods.stream()
-                .filter(m -> !m.getId().equals(POINTS_ID))
-                .filter(m -> m.getRemainingLimit().compareTo(amountToPay) >= 0)
-                .min(Comparator.comparing(m -> m.getRemainingLimit().subtract(amountToPay)));
+        metrics.cardLookup();
+        return cardIndex.findMinFit(amountToPay);
     }
 
     private Optional<PaymentMethod> findMaxLimitCardBelow(BigDecimal amountToPay) {
-        return paymentMethods.stream()
-                .filter(m -> !m.getId().equals(POINTS_ID))
-                .filter(m -> m.getRemainingLimit().compareTo(amountToPay) < 0)
-                .max(Comparator.comparing(PaymentMethod::getRemainingLimit));
+        metrics.cardLookup();
+        return cardIndex.findMaxBelow(amountToPay);
     }
 
     private void clearUsage() {
         paidOrders.clear();
-        paymentMethods.forEach(m -> m.setUsedAmount(BigDecimal.ZERO));
+        journal.clear();
+        if (grantedDiscounts != null) {
+            Arrays.fill(grantedDiscounts, null);
+        }
+        for (PaymentMethod method : paymentMethods) {
+            method.setUsedAmount(BigDecimal.ZERO);
+            cardIndex.update(method);
+        }
     }
 
     private void printResults() {
@@ -0,0 +1,16 @@
+package org.payment;
+
+/**
+ * Outcome of a {@link PointsAllocator} run. Amounts are {@link MoneyUnits}.
+ *
+ * @param plan           the better of the allocated and the greedy plan
+ * @param discount       total discount of {@code plan}
+ * @param greedyDiscount total discount of the greedy plan, or {@code -1} when it failed
+ * @param pointsGain     discount the chosen points payments add over the best promotions of their orders
+ * @param pointsOrders   number of orders the allocation pays with points
+ * @param step           units of points per step of the knapsack capacity
+ * @param allocated      {@code true} when {@code plan} follows the allocation rather than the greedy ranking
+ */
+public record PointsAllocation(PaymentPlan plan, long discount, long greedyDiscount, long pointsGain,
+                               int pointsOrders, long step, boolean allocated) {
+}
@@ -0,0 +1,235 @@
+package org.payment;
+
+import java.util.Arrays;
+
+/**
+ * Allocates the {@code PUNKTY} limit as a knapsack before the cards are assigned.
+ * <p>
+ * Every order takes its points in one of three ways: fully by points, 10% points with the rest on a card, or no
+ * points at all. The gain of a points option is its discount minus the discount the order would get on its best
+ * promoted card instead. A dynamic program over the points capacity picks the options with the largest total gain.
+ * When the capacity in {@link MoneyUnits} is too large, it is measured in coarser steps: weights are divided by
+ * their greatest common divisor first, then rounded up to a step that keeps the table within
+ * {@link #MAX_TABLE_BITS}, so every allocation found still fits the real limit.
+ * <p>
+ * The card assignment follows the usual greedy pipeline on a changed ranking: the chosen full-points payments
+ * first, then the promotions of the orders left to the cards, then the chosen 10%-points payments, then every
+ * other candidate. The better of that plan and the plain greedy one is returned.
+ */
+public class PointsAllocator {
+    /**
+     * Largest number of choice bits of the table, per kind of points payment.
+     */
+    static final long MAX_TABLE_BITS = 1L << 27;
+    static final int MAX_CAPACITY_STEPS = 1 << 22;
+
+    private static final byte NONE = 0;
+    private static final byte FULL = 1;
+    private static final byte PARTIAL = 2;
+
+    private final CompactInput input;
+    private final int pointsMethod;
+
+    public PointsAllocator(CompactInput input) {
+        if (input.pointsMethod() < 0) {
+            throw new IllegalArgumentException("Missing " + PaymentSelector.POINTS_ID + " payment method");
+        }
+        this.input = input;
+        this.pointsMethod = input.pointsMethod();
+    }
+
+    /**
+     * Allocates the points and assigns the cards.
+     *
+     * @param greedy the complete plan of the plain greedy selection, or {@code null} when it failed
+     * @throws IllegalStateException when neither the allocation nor {@code greedy} pays every order
+     */
+    public PointsAllocation solve(PaymentPlan greedy) {
+        int orders = input.orderCount();
+        long[] fullWeights = new long[orders];
+        long[] fullGains = new long[orders];
+        long[] partialWeights = new long[orders];
+        long[] partialGains = new long[orders];
+        int[] items = new int[orders];
+        int itemCount = 0;
+        long capacity = input.methodLimit(pointsMethod);
+        long step = 0;
+        boolean[] seenKeys = new boolean[input.orderKeyCount()];
+
+        for (int order = 0; order < orders; order++) {
+            // the greedy engines pay only one order per id
+            if (seenKeys[input.orderKey(order)]) {
+                continue;
+            }
+            seenKeys[input.orderKey(order)] = true;
+            long amount = input.orderAmount(order);
+            long promotion = bestPromotionDiscount(order);
+            long pointsDiscount = MoneyUnits.applyRatio(amount, input.methodRatio(pointsMethod));
+            long tenPercent = MoneyUnits.applyRatio(amount, CandidateGenerator.TEN_PERCENT);
+            if (amount - pointsDiscount <= capacity && pointsDiscount > promotion) {
+                fullWeights[order] = amount - pointsDiscount;
+                fullGains[order] = pointsDiscount - promotion;
+                step = gcd(step, fullWeights[order]);
+            }
+            if (tenPercent <= capacity && tenPercent > promotion) {
+                partialWeights[order] = tenPercent;
+                partialGains[order] = tenPercent - promotion;
+                step = gcd(step, partialWeights[order]);
+            }
+            if (fullGains[order] > 0 || partialGains[order] > 0) {
+                items[itemCount++] = order;
+            }
+        }
+
+        step = Math.max(step, 1);
+        long steps = Math.max(1, Math.min(MAX_CAPACITY_STEPS, MAX_TABLE_BITS / Math.max(itemCount, 1)) - 1);
+        if (capacity / step > steps) {
+            step = Math.ceilDiv(capacity, steps);
+        }
+        byte[] choices = allocate(Arrays.copyOf(items, itemCount), (int) (capacity / step), step,
+                fullWeights, fullGains, partialWeights, partialGains);
+
+        long gain = 0;
+        int pointsOrders = 0;
+        for (int order = 0; order < orders; order++) {
+            if (choices[order] == FULL) {
+                gain += fullGains[order];
+            } else if (choices[order] == PARTIAL) {
+                gain += partialGains[order];
+            }
+            pointsOrders += choices[order] == NONE ? 0 : 1;
+        }
+
+        PaymentPlan allocated = null;
+        try {
+            FixedPointSelector selector = assignCards(choices);
+            selector.select();
+            allocated = selector.getPlan();
+        } catch (IllegalStateException e) {
+            if (greedy == null) {
+                throw e;
+            }
+        }
+        boolean allocationWins = allocated != null
+                && (greedy == null || allocated.totalDiscount() > greedy.totalDiscount());
+        PaymentPlan plan = allocationWins ? allocated : greedy;
+        return new PointsAllocation(plan, plan.totalDiscount(), greedy == null ? -1 : greedy.totalDiscount(),
+                gain, pointsOrders, step, allocationWins);
+    }
+
+    /**
+     * Runs the knapsack over {@code items} with {@code capacity} steps of {@code step} units; returns the chosen
+     * way of paying every order. Weights are rounded up to whole steps.
+     */
+    private static byte[] allocate(int[] items, int capacity, long step, long[] fullWeights, long[] fullGains,
+                                   long[] partialWeights, long[] partialGains) {
+        int cells = capacity + 1;
+        long[] best = new long[cells];
+        long[] tookFull = new long[(int) ((long) items.length * cells + 63 >>> 6)];
+        long[] tookPartial = new long[tookFull.length];
+        for (int item = 0; item < items.length; item++) {
+            int order = items[item];
+            int full = fullGains[order] > 0 ? weight(fullWeights[order], step, cells) : cells;
+            int partial = partialGains[order] > 0 ? weight(partialWeights[order], step, cells) : cells;
+            long base = (long) item * cells;
+            for (int c = capacity; c >= Math.min(full, partial); c--) {
+                long value = best[c];
+                boolean takeFull = false;
+                boolean takePartial = false;
+                if (c >= full && best[c - full] + fullGains[order] > value) {
+                    value = best[c - full] + fullGains[order];
+                    takeFull = true;
+                }
+                if (c >= partial && best[c - partial] + partialGains[order] > value) {
+                    value = best[c - partial] + partialGains[order];
+                    takeFull = false;
+                    takePartial = true;
+                }
+                if (takeFull) {
+                    tookFull[(int) (base + c >>> 6)] |= 1L << (base + c);
+                } else if (takePartial) {
+                    tookPartial[(int) (base + c >>> 6)] |= 1L << (base + c);
+                }
+                best[c] = value;
+            }
+        }
+
+        byte[] choices = new byte[fullWeights.length];
+        int c = capacity;
+        for (int item = items.length - 1; item >= 0; item--) {
+            int order = items[item];
+            long bit = (long) item * cells + c;
+            if ((tookFull[(int) (bit >>> 6)] & 1L << bit) != 0) {
+                choices[order] = FULL;
+                c -= weight(fullWeights[order], step, cells);
+            } else if ((tookPartial[(int) (bit >>> 6)] & 1L << bit) != 0) {
+                choices[order] = PARTIAL;
+                c -= weight(partialWeights[order], step, cells);
+            }
+        }
+        return choices;
+    }
+
+    /**
+     * Ranks the greedy candidates so the chosen points payments and the promotions of the other orders come first.
+     */
+    private FixedPointSelector assignCards(byte[] choices) {
+        CandidateTable candidates = new CandidateTable();
+        CandidateGenerator generator = new CandidateGenerator(input);
+        for (int order = 0; order < input.orderCount(); order++) {
+            generator.generate(order, candidates);
+        }
+        int[] ranking = candidates.sortByPriority();
+        int[] tiers = new int[ranking.length];
+        int[] counts = new int[5];
+        for (int row = 0; row < tiers.length; row++) {
+            tiers[row] = tier(candidates, row, choices[candidates.order(row)]);
+            counts[tiers[row] + 1]++;
+        }
+        for (int tier = 1; tier < counts.length; tier++) {
+            counts[tier] += counts[tier - 1];
+        }
+        int[] rows = new int[ranking.length];
+        for (int row : ranking) {
+            rows[counts[tiers[row]]++] = row;
+        }
+        return new FixedPointSelector(input, candidates, rows);
+    }
+
+    private int tier(CandidateTable candidates, int row, byte choice) {
+        int method = candidates.method(row);
+        if (method == pointsMethod) {
+            return choice == FULL ? 0 : 3;
+        }
+        if (method == CandidateTable.ANY_CARD) {
+            return choice == PARTIAL ? 2 : 3;
+        }
+        return choice == NONE ? 1 : 3;
+    }
+
+    private long bestPromotionDiscount(int order) {
+        long best = 0;
+        long amount = input.orderAmount(order);
+        for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++) {
+            int card = input.promotionMethod(i);
+            long discount = MoneyUnits.applyRatio(amount, input.methodRatio(card));
+            if (amount - discount <= input.methodLimit(card)) {
+                best = Math.max(best, discount);
+            }
+        }
+        return best;
+    }
+
+    private static int weight(long units, long step, int cells) {
+        return (int) Math.min(Math.ceilDiv(units, step), cells);
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long next = a % b;
+            a = b;
+            b = next;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,73 @@
+package org.payment;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Card payment methods ordered by remaining limit, then by their position in the input list.
+ * <p>
+ * The owner of the index reports every change of a card's used amount through {@link #update(PaymentMethod)};
+ * the cards themselves know nothing about it, so several selectors can index the same cards. Ties resolve to the earliest card in the input, which is
+ * what the stream-based {@code min}/{@code max} lookups of {@link PaymentSelector} used to return.
+ */
+public class RemainingLimitIndex {
+    private static final Comparator<Entry> ENTRY_ORDER = Comparator
+            .comparing(Entry::remaining)
+            .thenComparingInt(Entry::position);
+
+    private final TreeSet<Entry> entries = new TreeSet<>(ENTRY_ORDER);
+    private final Map<PaymentMethod, Entry> currentEntries = new IdentityHashMap<>();
+
+    public RemainingLimitIndex(List<PaymentMethod> cards) {
+        for (int position = 0; position < cards.size(); position++) {
+            PaymentMethod card = cards.get(position);
+            Entry entry = new Entry(card.getRemainingLimit(), position, card);
+            entries.add(entry);
+            currentEntries.put(card, entry);
+        }
+    }
+
+    /**
+     * Returns the card with the smallest remaining limit that still covers {@code amount}.
+     */
+    public Optional<PaymentMethod> findMinFit(BigDecimal amount) {
+        return Optional.ofNullable(entries.ceiling(probe(amount))).map(Entry::method);
+    }
+
+    /**
+     * Returns the card with the largest remaining limit strictly below {@code amount}.
+     */
+    public Optional<PaymentMethod> findMaxBelow(BigDecimal amount) {
+        Entry below = entries.lower(probe(amount));
+        if (below == null) {
+            return Optional.empty();
+        }
+        return Optional.of(entries.ceiling(probe(below.remaining())).method());
+    }
+
+    /**
+     * Re-reads the remaining limit of {@code card}; cards that are not indexed, such as the points, are ignored.
+     */
+    public void update(PaymentMethod card) {
+        Entry previous = currentEntries.get(card);
+        if (previous == null) {
+            return;
+        }
+        entries.remove(previous);
+        Entry entry = new Entry(card.getRemainingLimit(), previous.position(), card);
+        entries.add(entry);
+        currentEntries.put(card, entry);
+    }
+
+    private static Entry probe(BigDecimal remaining) {
+        return new Entry(remaining, -1, null);
+    }
+
+    private record Entry(BigDecimal remaining, int position, PaymentMethod method) {
+    }
+}
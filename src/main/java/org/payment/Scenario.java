@@ -0,0 +1,42 @@
+package org.payment;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One what-if variant for {@link ScenarioEngine}: new limits and discount percents, keyed by payment method id.
+ * Methods that are not mentioned keep their values from the input.
+ */
+public record Scenario(String name, Map<String, BigDecimal> limits, Map<String, BigDecimal> discounts) {
+
+    @JsonCreator
+    public Scenario(
+            @JsonProperty("name") String name,
+            @JsonProperty("limits") Map<String, BigDecimal> limits,
+            @JsonProperty("discounts") Map<String, BigDecimal> discounts) {
+        this.name = name;
+        this.limits = limits == null ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(limits));
+        this.discounts = discounts == null ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(discounts));
+    }
+
+    public static Scenario of(String name) {
+        return new Scenario(name, Map.of(), Map.of());
+    }
+
+    public Scenario withLimit(String methodId, BigDecimal limit) {
+        Map<String, BigDecimal> changed = new LinkedHashMap<>(limits);
+        changed.put(methodId, limit);
+        return new Scenario(name, changed, discounts);
+    }
+
+    public Scenario withDiscount(String methodId, BigDecimal discount) {
+        Map<String, BigDecimal> changed = new LinkedHashMap<>(discounts);
+        changed.put(methodId, discount);
+        return new Scenario(name, limits, changed);
+    }
+}
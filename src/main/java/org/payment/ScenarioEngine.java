@@ -0,0 +1,251 @@
+package org.payment;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates many what-if variants of the payment methods against one set of orders.
+ * <p>
+ * The candidates of the base input are generated and ranked once, as if every limit were unbounded. A candidate
+ * that a real limit would not generate can never be afforded by the greedy pass either, so the extra rows are
+ * skipped there and limit changes need no new candidates at all. Only a changed discount changes rows: the
+ * promotion rows of that card, or the full-points rows for {@code PUNKTY}; the shared 10%-points rows have a fixed
+ * ratio. Those rows are rebuilt, sorted and merged into the base ranking, and the other rows keep their places.
+ * The greedy pass and the fallbacks then run as usual, so each result equals a fresh run on the changed methods.
+ * <p>
+ * Scenarios share nothing mutable and run in parallel on a fork-join pool.
+ */
+public final class ScenarioEngine {
+    private static final int POINTS_SLOT = 0;
+    private static final int PARTIAL_SLOT = 1;
+    private static final long UNBOUNDED_LIMIT = Long.MAX_VALUE / 2;
+
+    private final CompactInput base;
+    private final int pointsMethod;
+    private final int parallelism;
+    private final CandidateTable baseCandidates = new CandidateTable();
+    private final int[] baseRanking;
+    private final boolean[] firstPromotion;
+    /**
+     * Base row generated for each slot, or {@code -1}. The slots of an order are its promotions followed by the
+     * points and the 10%-points slot, so slot {@code promotionStart(order) + 2 * order + i} is unique and slots
+     * come in generation order.
+     */
+    private final int[] slotRows;
+
+    public ScenarioEngine(List<Order> orders, List<PaymentMethod> methods, int parallelism) {
+        this(CompactInput.of(orders, methods), parallelism);
+    }
+
+    /**
+     * @param input the base input; it must not take more orders while the engine is in use
+     */
+    public ScenarioEngine(CompactInput input, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        if (input.pointsMethod() < 0) {
+            throw new IllegalArgumentException("Missing " + PaymentSelector.POINTS_ID + " payment method");
+        }
+        this.base = input;
+        this.pointsMethod = input.pointsMethod();
+        this.parallelism = parallelism;
+
+        int orders = input.orderCount();
+        int promotions = orders == 0 ? 0 : input.promotionEnd(orders - 1);
+        this.firstPromotion = new boolean[promotions];
+        this.slotRows = new int[promotions + 2 * orders];
+        Arrays.fill(slotRows, -1);
+        CandidateGenerator generator = new CandidateGenerator(unbounded(input, ratios(input)));
+        for (int order = 0; order < orders; order++) {
+            int slot = slot(order);
+            for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++, slot++) {
+                firstPromotion[i] = isFirstPromotion(i, input.promotionStart(order));
+                int method = input.promotionMethod(i);
+                if (firstPromotion[i] && generator.isPromotionEligible(order, method)) {
+                    slotRows[slot] = baseCandidates.size();
+                    generator.addPromotionCandidate(order, method, baseCandidates);
+                }
+            }
+            int row = baseCandidates.size();
+            if (generator.addPointsCandidate(order, baseCandidates)) {
+                slotRows[slot + POINTS_SLOT] = row;
+            }
+            row = baseCandidates.size();
+            if (generator.addPartialPointsCandidate(order, baseCandidates) > 0) {
+                slotRows[slot + PARTIAL_SLOT] = row;
+            }
+        }
+        this.baseRanking = baseCandidates.sortByPriority();
+    }
+
+    /**
+     * Evaluates every scenario, in parallel, and returns the results in the same order.
+     */
+    public List<ScenarioResult> evaluate(List<Scenario> scenarios) {
+        if (parallelism == 1 || scenarios.size() < 2) {
+            return scenarios.stream().map(this::evaluate).toList();
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Callable<ScenarioResult>> tasks = new ArrayList<>(scenarios.size());
+            for (Scenario scenario : scenarios) {
+                tasks.add(() -> evaluate(scenario));
+            }
+            List<ScenarioResult> results = new ArrayList<>(scenarios.size());
+            for (Future<ScenarioResult> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating scenarios", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Evaluates one scenario.
+     *
+     * @throws IllegalArgumentException when the scenario names an unknown payment method
+     */
+    public ScenarioResult evaluate(Scenario scenario) {
+        long[] limits = new long[base.methodCount()];
+        for (int method = 0; method < limits.length; method++) {
+            limits[method] = base.methodLimit(method);
+        }
+        int[] ratios = ratios(base);
+        for (Map.Entry<String, BigDecimal> limit : scenario.limits().entrySet()) {
+            limits[method(limit.getKey())] = MoneyUnits.toUnits(limit.getValue());
+        }
+        for (Map.Entry<String, BigDecimal> discount : scenario.discounts().entrySet()) {
+            PaymentMethod changed = new PaymentMethod(discount.getKey(), discount.getValue(), BigDecimal.ZERO);
+            ratios[method(discount.getKey())] = MoneyUnits.toBasisPoints(changed.calculateRatioDiscountPercent());
+        }
+
+        CompactInput input = base.withMethodData(limits, ratios);
+        try {
+            FixedPointSelector selector = rebuild(input, ratios);
+            selector.select();
+            return new ScenarioResult(scenario, SelectionResult.of(selector.getPlan()), null);
+        } catch (IllegalStateException e) {
+            return new ScenarioResult(scenario, null, e.getMessage());
+        }
+    }
+
+    private FixedPointSelector rebuild(CompactInput input, int[] ratios) {
+        boolean[] changed = new boolean[ratios.length];
+        boolean anyChanged = false;
+        for (int method = 0; method < changed.length; method++) {
+            changed[method] = ratios[method] != base.methodRatio(method);
+            anyChanged |= changed[method];
+        }
+        if (!anyChanged) {
+            return new FixedPointSelector(input, baseCandidates, baseRanking);
+        }
+        boolean pointsChanged = changed[pointsMethod];
+
+        CandidateGenerator generator = new CandidateGenerator(unbounded(input, ratios));
+        CandidateTable candidates = new CandidateTable();
+        int[] keptRows = new int[baseCandidates.size()];
+        Arrays.fill(keptRows, -1);
+        int[] rebuiltRows = new int[16];
+        int rebuilt = 0;
+        for (int order = 0; order < input.orderCount(); order++) {
+            int slot = slot(order);
+            for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++, slot++) {
+                int method = input.promotionMethod(i);
+                if (!changed[method]) {
+                    keep(slot, candidates, keptRows);
+                } else if (firstPromotion[i] && generator.isPromotionEligible(order, method)) {
+                    rebuiltRows = append(rebuiltRows, rebuilt++, candidates.size());
+                    generator.addPromotionCandidate(order, method, candidates);
+                }
+            }
+            if (!pointsChanged) {
+                keep(slot + POINTS_SLOT, candidates, keptRows);
+            } else {
+                int row = candidates.size();
+                if (generator.addPointsCandidate(order, candidates)) {
+                    rebuiltRows = append(rebuiltRows, rebuilt++, row);
+                }
+            }
+            keep(slot + PARTIAL_SLOT, candidates, keptRows);
+        }
+
+        int[] ranking = new int[baseRanking.length];
+        int kept = 0;
+        for (int row : baseRanking) {
+            if (keptRows[row] >= 0) {
+                ranking[kept++] = keptRows[row];
+            }
+        }
+        ranking = candidates.mergeRanked(Arrays.copyOf(ranking, kept), Arrays.copyOf(rebuiltRows, rebuilt));
+        return new FixedPointSelector(input, candidates, ranking);
+    }
+
+    private static int[] ratios(CompactInput input) {
+        int[] ratios = new int[input.methodCount()];
+        for (int method = 0; method < ratios.length; method++) {
+            ratios[method] = input.methodRatio(method);
+        }
+        return ratios;
+    }
+
+    /**
+     * Returns {@code input} with the given ratios and limits high enough for every candidate to be generated.
+     */
+    private static CompactInput unbounded(CompactInput input, int[] ratios) {
+        long[] limits = new long[input.methodCount()];
+        Arrays.fill(limits, UNBOUNDED_LIMIT);
+        return input.withMethodData(limits, ratios);
+    }
+
+    private void keep(int slot, CandidateTable candidates, int[] keptRows) {
+        int row = slotRows[slot];
+        if (row >= 0) {
+            keptRows[row] = candidates.size();
+            candidates.add(baseCandidates.order(row), baseCandidates.method(row), baseCandidates.points(row),
+                    baseCandidates.cardAmount(row), baseCandidates.discount(row), baseCandidates.ratio(row));
+        }
+    }
+
+    private int slot(int order) {
+        return base.promotionStart(order) + 2 * order;
+    }
+
+    private boolean isFirstPromotion(int position, int start) {
+        for (int i = start; i < position; i++) {
+            if (base.promotionMethod(i) == base.promotionMethod(position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int method(String id) {
+        int method = base.methodIndex(id);
+        if (method < 0) {
+            throw new IllegalArgumentException("Unknown payment method " + id);
+        }
+        return method;
+    }
+
+    private static int[] append(int[] rows, int size, int row) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+        }
+        rows[size] = row;
+        return rows;
+    }
+}
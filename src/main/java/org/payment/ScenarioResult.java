@@ -0,0 +1,17 @@
+package org.payment;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of one {@link Scenario}: its selection, or the reason it has none when the changed limits cannot cover
+ * the orders.
+ */
+public record ScenarioResult(Scenario scenario, SelectionResult selection, String error) {
+
+    /**
+     * Returns the total discount of the scenario, or {@code null} when it failed.
+     */
+    public BigDecimal totalDiscount() {
+        return selection == null ? null : selection.totalDiscount();
+    }
+}
@@ -0,0 +1,290 @@
+package org.payment;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Content-addressed cache of selection results, for runs that see the same input again.
+ * <p>
+ * The key is a SHA-256 of the {@link CompactInput} columns: method ids, limits and ratios, order ids, amounts and
+ * interned promotions. Amounts are taken in {@link MoneyUnits}, so {@code 100}, {@code 100.0} and {@code 100.00}
+ * hash alike, and unknown or {@code PUNKTY} promotions, which the engines skip, are not part of the key. Orders
+ * and methods keep their input order: it decides ties and the order of the printed totals, so sorting them would
+ * let different results share a key.
+ * <p>
+ * Results live in an in-memory LRU tier bounded by an estimate of their size and, optionally, in a directory with
+ * one JSON file per key. Only successful selections are cached. The disk tier degrades instead of failing: an
+ * entry that cannot be read is deleted and treated as a miss, and an entry that cannot be stored is skipped; both
+ * are counted in the statistics.
+ */
+public final class SelectionCache {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int ASSIGNMENT_BYTES = 160;
+
+    static {
+        MAPPER.configOverride(BigDecimal.class).setFormat(JsonFormat.Value.forShape(JsonFormat.Shape.STRING));
+    }
+
+    private final long maxMemoryBytes;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder unreadableEntries = new LongAdder();
+    private final LongAdder failedStores = new LongAdder();
+
+    /**
+     * @param maxMemoryBytes estimated size the in-memory tier may hold; {@code 0} keeps results on disk only
+     * @param directory      directory of the on-disk tier, created when missing, or {@code null} for none
+     */
+    public SelectionCache(long maxMemoryBytes, Path directory) throws IOException {
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative");
+        }
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+    }
+
+    public SelectionResult select(List<Order> orders, List<PaymentMethod> methods) {
+        return select(CompactInput.of(orders, methods), input -> {
+            FixedPointSelector selector = new FixedPointSelector(input);
+            selector.select();
+            return SelectionResult.of(selector.getPlan());
+        });
+    }
+
+    /**
+     * Returns the cached result for {@code input}, or computes it with {@code solve} and caches it.
+     *
+     * @throws IllegalStateException from {@code solve}; failures are not cached
+     */
+    public SelectionResult select(CompactInput input, Function<CompactInput, SelectionResult> solve) {
+        String key = key(input);
+        SelectionResult cached = fromMemory(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        cached = fromDisk(key);
+        if (cached != null) {
+            diskHits.increment();
+            toMemory(key, cached);
+            return cached;
+        }
+
+        misses.increment();
+        SelectionResult result = solve.apply(input);
+        toMemory(key, result);
+        toDisk(key, result);
+        return result;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns how many disk entries could not be read and were dropped.
+     */
+    public long getUnreadableEntries() {
+        return unreadableEntries.sum();
+    }
+
+    /**
+     * Returns how many results could not be stored on disk.
+     */
+    public long getFailedStores() {
+        return failedStores.sum();
+    }
+
+    public synchronized int memoryEntries() {
+        return memory.size();
+    }
+
+    public synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    void writeJson(JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("hits", getHits());
+        json.writeNumberField("diskHits", getDiskHits());
+        json.writeNumberField("misses", getMisses());
+        json.writeNumberField("evictions", getEvictions());
+        json.writeNumberField("unreadableEntries", getUnreadableEntries());
+        json.writeNumberField("failedStores", getFailedStores());
+        json.writeNumberField("memoryEntries", memoryEntries());
+        json.writeNumberField("memoryBytes", memoryBytes());
+        json.writeEndObject();
+    }
+
+    /**
+     * Returns the hex SHA-256 of the normalized input.
+     */
+    static String key(CompactInput input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        buffer.putInt(input.methodCount());
+        for (int method = 0; method < input.methodCount(); method++) {
+            buffer = putString(digest, buffer, input.methodId(method));
+            buffer = ensure(digest, buffer, Long.BYTES + Integer.BYTES);
+            buffer.putLong(input.methodLimit(method)).putInt(input.methodRatio(method));
+        }
+        buffer = ensure(digest, buffer, Integer.BYTES);
+        buffer.putInt(input.orderCount());
+        for (int order = 0; order < input.orderCount(); order++) {
+            buffer = putString(digest, buffer, input.orderId(order));
+            buffer = ensure(digest, buffer, Long.BYTES + Integer.BYTES);
+            buffer.putLong(input.orderAmount(order))
+                    .putInt(input.promotionEnd(order) - input.promotionStart(order));
+            for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++) {
+                buffer = ensure(digest, buffer, Integer.BYTES);
+                buffer.putInt(input.promotionMethod(i));
+            }
+        }
+        buffer.flip();
+        digest.update(buffer);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static ByteBuffer putString(MessageDigest digest, ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer = ensure(digest, buffer, Integer.BYTES);
+        buffer.putInt(bytes.length);
+        buffer.flip();
+        digest.update(buffer);
+        digest.update(bytes);
+        return buffer.clear();
+    }
+
+    private static ByteBuffer ensure(MessageDigest digest, ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    private synchronized SelectionResult fromMemory(String key) {
+        Entry entry = memory.get(key);
+        return entry == null ? null : entry.result();
+    }
+
+    private synchronized void toMemory(String key, SelectionResult result) {
+        long bytes = estimateBytes(result);
+        if (bytes > maxMemoryBytes) {
+            return;
+        }
+        Entry previous = memory.put(key, new Entry(result, bytes));
+        memoryBytes += bytes - (previous == null ? 0 : previous.bytes());
+        Iterator<Map.Entry<String, Entry>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes) {
+            memoryBytes -= eldest.next().getValue().bytes();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private SelectionResult fromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path path = directory.resolve(key + ".json");
+        try {
+            return MAPPER.readValue(Files.readAllBytes(path), SelectionResult.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // corrupt or truncated: drop it, so the fresh result is stored in its place
+            unreadableEntries.increment();
+            deleteQuietly(path);
+            return null;
+        }
+    }
+
+    private void toDisk(String key, SelectionResult result) {
+        if (directory == null) {
+            return;
+        }
+        Path temporary = null;
+        try {
+            // written aside and moved into place, so a concurrent reader never sees half a file
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            MAPPER.writeValue(temporary.toFile(), result);
+            Files.move(temporary, directory.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // e.g. a full disk: the result was solved and stays usable, it is just not cached on disk
+            failedStores.increment();
+            if (temporary != null) {
+                deleteQuietly(temporary);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // the next read or store of the key deals with it again
+        }
+    }
+
+    private static long estimateBytes(SelectionResult result) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (OrderAssignment assignment : result.assignments()) {
+            bytes += ASSIGNMENT_BYTES + 2L * assignment.orderId().length();
+        }
+        for (String method : result.methodTotals().keySet()) {
+            bytes += ASSIGNMENT_BYTES + 2L * method.length();
+        }
+        return bytes;
+    }
+
+    private record Entry(SelectionResult result, long bytes) {
+    }
+}
@@ -0,0 +1,227 @@
+package org.payment;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Counters and phase timings of one selection run.
+ * <p>
+ * Phases are also emitted as {@link SelectionPhaseEvent} JFR events whenever a flight recording enables them. The
+ * totals are emitted as a {@link SelectionSummaryEvent} only by enabled metrics, as disabled ones never count
+ * them. The per-order counters are plain fields guarded by a final flag, so metrics created by
+ * {@link #disabled(String)} cost one predictable branch per call site.
+ */
+public final class SelectionMetrics {
+    public enum Phase {
+        GENERATE, SORT, GREEDY, FULL_CARD_FALLBACK, PARTIAL_FALLBACK, NO_DISCOUNT_FALLBACK
+    }
+
+    private final String engine;
+    private final boolean enabled;
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<Phase, Integer> settledOrders = new EnumMap<>(Phase.class);
+    private long generatedCandidates;
+    private long keptCandidates;
+    private long partialFallbackOrders;
+    private long noDiscountFallbacks;
+    private long rolledBackOrders;
+    private long cardLookups;
+    private BigDecimal totalDiscount = BigDecimal.ZERO;
+
+    public SelectionMetrics(String engine) {
+        this(engine, true);
+    }
+
+    private SelectionMetrics(String engine, boolean enabled) {
+        this.engine = engine;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns metrics that record nothing; phase events are still emitted while a flight recording enables
+     * them.
+     */
+    public static SelectionMetrics disabled(String engine) {
+        return new SelectionMetrics(engine, false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records a finished phase that started at {@code startNanos} and settled {@code orders} orders.
+     */
+    void endPhase(Phase phase, long startNanos, int orders) {
+        long elapsed = System.nanoTime() - startNanos;
+        if (enabled) {
+            phaseNanos.merge(phase, elapsed, Long::sum);
+            settledOrders.merge(phase, orders, Integer::sum);
+        }
+        SelectionPhaseEvent event = new SelectionPhaseEvent();
+        if (event.isEnabled()) {
+            event.engine = engine;
+            event.phase = phase.name();
+            event.elapsed = elapsed;
+            event.ordersSettled = orders;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds time spent in {@code phase} without settling orders, e.g. candidate generation while loading.
+     */
+    void addPhaseTime(Phase phase, long nanos) {
+        if (enabled) {
+            phaseNanos.merge(phase, nanos, Long::sum);
+        }
+    }
+
+    void candidates(long generated, long kept) {
+        if (enabled) {
+            generatedCandidates = generated;
+            keptCandidates = kept;
+        }
+    }
+
+    void partialFallback() {
+        if (enabled) {
+            partialFallbackOrders++;
+        }
+    }
+
+    void noDiscountFallback() {
+        if (enabled) {
+            noDiscountFallbacks++;
+            totalDiscount = BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * Records orders whose payment was rolled back and redone without a discount so a failing order fits.
+     */
+    void rolledBack(int orders) {
+        if (enabled) {
+            rolledBackOrders += orders;
+        }
+    }
+
+    void cardLookup() {
+        if (enabled) {
+            cardLookups++;
+        }
+    }
+
+    void addDiscount(BigDecimal discount) {
+        if (enabled) {
+            totalDiscount = totalDiscount.add(discount);
+        }
+    }
+
+    /**
+     * Emits the summary event when these metrics are enabled and a recording asks for it; call once when the run
+     * is over.
+     */
+    void finish() {
+        SelectionSummaryEvent event = new SelectionSummaryEvent();
+        if (enabled && event.isEnabled()) {
+            event.engine = engine;
+            event.generatedCandidates = generatedCandidates;
+            event.keptCandidates = keptCandidates;
+            event.partialFallbackOrders = partialFallbackOrders;
+            event.noDiscountFallbacks = noDiscountFallbacks;
+            event.rolledBackOrders = rolledBackOrders;
+            event.cardLookups = cardLookups;
+            event.totalDiscount = getTotalDiscount().doubleValue();
+            event.commit();
+        }
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos.getOrDefault(phase, 0L);
+    }
+
+    public int getSettledOrders(Phase phase) {
+        return settledOrders.getOrDefault(phase, 0);
+    }
+
+    public long getGeneratedCandidates() {
+        return generatedCandidates;
+    }
+
+    public long getKeptCandidates() {
+        return keptCandidates;
+    }
+
+    public long getPartialFallbackOrders() {
+        return partialFallbackOrders;
+    }
+
+    public long getNoDiscountFallbacks() {
+        return noDiscountFallbacks;
+    }
+
+    public long getRolledBackOrders() {
+        return rolledBackOrders;
+    }
+
+    public long getCardLookups() {
+        return cardLookups;
+    }
+
+    public BigDecimal getTotalDiscount() {
+        return totalDiscount.setScale(MoneyUnits.CENTS_SCALE, RoundingMode.HALF_UP);
+    }
+
+    public void writeJson(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            writeJson(out);
+        }
+    }
+
+    /**
+     * Writes the summary as a JSON object; phases are listed in execution order, times in nanoseconds. The
+     * stream is flushed but left open.
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        try (JsonGenerator json = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+            json.writeStringField("engine", engine);
+            json.writeArrayFieldStart("phases");
+            for (Phase phase : Phase.values()) {
+                if (phaseNanos.containsKey(phase) || settledOrders.containsKey(phase)) {
+                    json.writeStartObject();
+                    json.writeStringField("name", phase.name());
+                    json.writeNumberField("nanos", getPhaseNanos(phase));
+                    json.writeNumberField("ordersSettled", getSettledOrders(phase));
+                    json.writeEndObject();
+                }
+            }
+            json.writeEndArray();
+            json.writeNumberField("generatedCandidates", generatedCandidates);
+            json.writeNumberField("keptCandidates", keptCandidates);
+            json.writeNumberField("partialFallbackOrders", partialFallbackOrders);
+            json.writeNumberField("noDiscountFallbacks", noDiscountFallbacks);
+            json.writeNumberField("rolledBackOrders", rolledBackOrders);
+            json.writeNumberField("cardLookups", cardLookups);
+            json.writeStringField("totalDiscount", getTotalDiscount().toPlainString());
+            json.writeEndObject();
+        }
+    }
+}
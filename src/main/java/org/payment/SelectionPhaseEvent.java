@@ -0,0 +1,27 @@
+package org.payment;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("org.payment.SelectionPhase")
+@Label("Selection Phase")
+@Category("Payment Selection")
+@Description("One phase of a payment selection run")
+class SelectionPhaseEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Orders Settled")
+    int ordersSettled;
+}
@@ -0,0 +1,41 @@
+package org.payment;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Body of a {@code POST /select} request: the contents of {@code orders.json} and {@code paymentmethods.json}.
+ */
+public record SelectionRequest(List<Order> orders, List<PaymentMethod> paymentMethods) {
+
+    @JsonCreator
+    public SelectionRequest(
+            @JsonProperty("orders") List<Order> orders,
+            @JsonProperty("paymentMethods") List<PaymentMethod> paymentMethods) {
+        this.orders = orders == null ? List.of() : orders;
+        this.paymentMethods = paymentMethods == null ? List.of() : paymentMethods;
+    }
+
+    /**
+     * Checks that every order has an id and a value and every payment method an id, a discount and a limit.
+     *
+     * @throws IllegalArgumentException naming the first entry that is incomplete
+     */
+    public void validate() {
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            if (order == null || order.id() == null || order.amountToPay() == null) {
+                throw new IllegalArgumentException("orders[" + i + "] needs an id and a value");
+            }
+        }
+        for (int i = 0; i < paymentMethods.size(); i++) {
+            PaymentMethod method = paymentMethods.get(i);
+            if (method == null || method.getId() == null || method.getDiscountPercent() == null
+                    || method.getLimit() == null) {
+                throw new IllegalArgumentException("paymentMethods[" + i + "] needs an id, a discount and a limit");
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.payment;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable outcome of a selection: one {@link OrderAssignment} per settled order, in input order, and the amount
+ * charged to every payment method, in the order the methods were given.
+ */
+public record SelectionResult(List<OrderAssignment> assignments, Map<String, BigDecimal> methodTotals,
+                              BigDecimal totalDiscount) {
+
+    public SelectionResult {
+        assignments = List.copyOf(assignments);
+        methodTotals = Collections.unmodifiableMap(new LinkedHashMap<>(methodTotals));
+    }
+
+    public static SelectionResult of(PaymentPlan plan) {
+        CompactInput input = plan.input();
+        List<OrderAssignment> assignments = new ArrayList<>(plan.orderCount());
+        for (int order = 0; order < plan.orderCount(); order++) {
+            if (plan.isSettled(order)) {
+                int card = plan.card(order);
+                assignments.add(new OrderAssignment(input.orderId(order),
+                        card == PaymentPlan.NO_CARD ? null : input.methodId(card),
+                        MoneyUnits.toCents(plan.points(order)), MoneyUnits.toCents(plan.cardAmount(order)),
+                        MoneyUnits.toCents(plan.discount(order))));
+            }
+        }
+        long[] used = plan.usedAmounts();
+        Map<String, BigDecimal> totals = new LinkedHashMap<>();
+        for (int method = 0; method < used.length; method++) {
+            totals.put(input.methodId(method), MoneyUnits.toCents(used[method]));
+        }
+        return new SelectionResult(assignments, totals, MoneyUnits.toCents(plan.totalDiscount()));
+    }
+
+    public void printTotals(PrintStream out) {
+        methodTotals.forEach((id, total) -> out.println(id + " " + total));
+    }
+}
@@ -0,0 +1,212 @@
+package org.payment;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Local HTTP front end for {@link PaymentSelection}, so one warmed-up JVM serves many selections.
+ * <p>
+ * {@code POST /select} takes a {@link SelectionRequest} and answers with the {@link SelectionResult};
+ * {@code GET /stats} reports the in-flight and rejected request counts, the latency histogram and, when a
+ * {@link SelectionCache} is attached, its hit and miss counts. Every exchange runs on its own virtual thread
+ * against a freshly parsed input, so requests share no mutable state besides the cache. Requests over
+ * {@code maxInFlight} are rejected with {@code 503} instead of queueing, and bodies over
+ * {@code maxRequestBytes} with {@code 413}; infeasible inputs get {@code 422}.
+ */
+public final class SelectionServer implements AutoCloseable {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    public static final int DEFAULT_MAX_REQUEST_BYTES = 8 * 1024 * 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static {
+        // amounts go out as strings, like the "value" and "limit" fields of the input
+        MAPPER.configOverride(BigDecimal.class).setFormat(JsonFormat.Value.forShape(JsonFormat.Shape.STRING));
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final int maxRequestBytes;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+    private final Function<SelectionRequest, SelectionResult> selection;
+    private final SelectionCache cache;
+
+    public SelectionServer(InetSocketAddress address, int maxInFlight, int maxRequestBytes) throws IOException {
+        this(address, maxInFlight, maxRequestBytes,
+                request -> PaymentSelection.select(request.orders(), request.paymentMethods()), null);
+    }
+
+    /**
+     * Creates a server that answers repeated inputs from {@code cache}; its statistics show up in {@code /stats}.
+     */
+    public SelectionServer(InetSocketAddress address, int maxInFlight, int maxRequestBytes, SelectionCache cache)
+            throws IOException {
+        this(address, maxInFlight, maxRequestBytes,
+                request -> cache.select(request.orders(), request.paymentMethods()), cache);
+    }
+
+    SelectionServer(InetSocketAddress address, int maxInFlight, int maxRequestBytes,
+                    Function<SelectionRequest, SelectionResult> selection) throws IOException {
+        this(address, maxInFlight, maxRequestBytes, selection, null);
+    }
+
+    private SelectionServer(InetSocketAddress address, int maxInFlight, int maxRequestBytes,
+                            Function<SelectionRequest, SelectionResult> selection, SelectionCache cache)
+            throws IOException {
+        if (maxInFlight < 1 || maxRequestBytes < 1) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxRequestBytes = maxRequestBytes;
+        this.selection = selection;
+        this.cache = cache;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/select", this::handleSelect);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public LatencyHistogram latencies() {
+        return latencies;
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handleSelect(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Use POST");
+                return;
+            }
+            if (!inFlight.tryAcquire()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Too many requests in flight");
+                return;
+            }
+            long started = System.nanoTime();
+            try {
+                select(exchange);
+            } finally {
+                inFlight.release();
+                latencies.record(System.nanoTime() - started);
+            }
+        }
+    }
+
+    private void select(HttpExchange exchange) throws IOException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            long declaredBytes;
+            try {
+                declaredBytes = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                sendError(exchange, 400, "Invalid Content-Length: " + contentLength);
+                return;
+            }
+            if (declaredBytes > maxRequestBytes) {
+                sendError(exchange, 413, "Request body exceeds " + maxRequestBytes + " bytes");
+                return;
+            }
+        }
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(maxRequestBytes + 1);
+        }
+        if (body.length > maxRequestBytes) {
+            sendError(exchange, 413, "Request body exceeds " + maxRequestBytes + " bytes");
+            return;
+        }
+
+        SelectionResult result;
+        try {
+            SelectionRequest request = MAPPER.readValue(body, SelectionRequest.class);
+            request.validate();
+            result = selection.apply(request);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+            return;
+        } catch (IllegalStateException e) {
+            sendError(exchange, 422, e.getMessage());
+            return;
+        }
+        send(exchange, 200, MAPPER.writeValueAsBytes(result));
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonGenerator json = MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+                json.writeStartObject();
+                json.writeNumberField("inFlight", maxInFlight - inFlight.availablePermits());
+                json.writeNumberField("maxInFlight", maxInFlight);
+                json.writeNumberField("rejected", rejectedCount());
+                json.writeFieldName("latency");
+                latencies.writeJson(json);
+                if (cache != null) {
+                    json.writeFieldName("cache");
+                    cache.writeJson(json);
+                }
+                json.writeEndObject();
+            }
+            send(exchange, 200, out.toByteArray());
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("error", message);
+            json.writeEndObject();
+        }
+        send(exchange, status, out.toByteArray());
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.payment;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.payment.SelectionSummary")
+@Label("Selection Summary")
+@Category("Payment Selection")
+@Description("Totals of a payment selection run")
+class SelectionSummaryEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Generated Candidates")
+    long generatedCandidates;
+
+    @Label("Kept Candidates")
+    long keptCandidates;
+
+    @Label("Partial Fallback Orders")
+    long partialFallbackOrders;
+
+    @Label("No-Discount Fallbacks")
+    long noDiscountFallbacks;
+
+    @Label("Rolled Back Orders")
+    long rolledBackOrders;
+
+    @Label("Card Lookups")
+    long cardLookups;
+
+    @Label("Total Discount")
+    double totalDiscount;
+}
@@ -0,0 +1,20 @@
+package org.payment;
+
+/**
+ * Outcome of an {@link ExactSolver} run. Amounts are {@link MoneyUnits}.
+ *
+ * @param plan       best plan found, or {@code null} when no feasible plan is known
+ * @param discount   total discount of {@code plan}
+ * @param upperBound proven upper bound on the total discount of any feasible plan
+ * @param optimal    {@code true} when the search finished within its budget, so {@code plan} is optimal
+ * @param nodes      number of search nodes visited
+ */
+public record SolverResult(PaymentPlan plan, long discount, long upperBound, boolean optimal, long nodes) {
+
+    /**
+     * Returns how much discount the best plan may still be missing.
+     */
+    public long gap() {
+        return Math.max(0, upperBound - discount);
+    }
+}
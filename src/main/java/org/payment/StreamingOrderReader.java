@@ -0,0 +1,96 @@
+package org.payment;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Reads an {@code orders.json} array token by token straight into a {@link CompactInput}.
+ * <p>
+ * No {@link Order} objects or promotion lists are built: amounts are parsed into {@link MoneyUnits} from the
+ * parser's character buffer and promotions are interned to method indices on the fly. Every decoded order is
+ * handed to a listener right away, so candidate generation can run while the rest of the file is still being
+ * read.
+ */
+public final class StreamingOrderReader {
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private StreamingOrderReader() {
+    }
+
+    public static void read(Path ordersPath, CompactInput input, IntConsumer onOrder) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(ordersPath.toFile())) {
+            read(parser, input, onOrder);
+        }
+    }
+
+    public static void read(JsonParser parser, CompactInput input, IntConsumer onOrder) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of orders");
+        }
+
+        int[] promotions = new int[8];
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            String id = null;
+            long amount = 0;
+            boolean hasAmount = false;
+            int promotionCount = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id" -> id = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case "value" -> {
+                        amount = readAmount(parser, value);
+                        hasAmount = true;
+                    }
+                    case "promotions" -> {
+                        if (value == JsonToken.START_ARRAY) {
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                int method = input.cardMethodIndex(parser.getText());
+                                if (method >= 0) {
+                                    if (promotionCount == promotions.length) {
+                                        promotions = Arrays.copyOf(promotions, promotionCount * 2);
+                                    }
+                                    promotions[promotionCount++] = method;
+                                }
+                            }
+                        } else if (value != JsonToken.VALUE_NULL) {
+                            throw new JsonParseException(parser, "Expected an array of promotions");
+                        }
+                    }
+                    default -> throw new JsonParseException(parser, "Unrecognized field \"" + field + "\"");
+                }
+            }
+
+            if (!hasAmount) {
+                throw new JsonParseException(parser, "Missing value of order " + id);
+            }
+            onOrder.accept(input.addOrder(id, amount, promotions, promotionCount));
+        }
+
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected an order object");
+        }
+    }
+
+    private static long readAmount(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.VALUE_STRING && value != JsonToken.VALUE_NUMBER_INT
+                && value != JsonToken.VALUE_NUMBER_FLOAT) {
+            throw new JsonParseException(parser, "Expected a decimal order value");
+        }
+        try {
+            return MoneyUnits.parseUnits(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        } catch (NumberFormatException | ArithmeticException ex) {
+            throw new JsonParseException(parser, "Invalid order value " + parser.getText());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.payment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssignmentWriterTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static PaymentPlan examplePlan() {
+        CompactInput input = CompactInput.of(List.of(
+                new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+                new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+                new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+                new Order("ORDER4", new BigDecimal("50.00"), List.of())), List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00"))));
+        FixedPointSelector selector = new FixedPointSelector(input);
+        selector.select();
+        return selector.getPlan();
+    }
+
+    @Test
+    void jsonLinesMatchTheSelectionResult(@TempDir Path directory) throws Exception {
+        PaymentPlan plan = examplePlan();
+        Path path = directory.resolve("assignments.jsonl");
+
+        try (AssignmentWriter writer = AssignmentWriter.open(path, AssignmentWriter.Format.forPath(path))) {
+            writer.write(plan);
+            assertEquals(4, writer.getRecords());
+        }
+
+        List<OrderAssignment> written = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            written.add(MAPPER.readValue(line, OrderAssignment.class));
+        }
+        assertEquals(SelectionResult.of(plan).assignments(), written);
+    }
+
+    @Test
+    void csvHasAHeaderAndOneRowPerOrder(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("assignments.csv");
+
+        try (AssignmentWriter writer = AssignmentWriter.open(path, AssignmentWriter.Format.forPath(path))) {
+            writer.write(examplePlan());
+            writer.write("A,\"B\"", null, 10_000, 0, 1_500);
+        }
+
+        List<String> lines = Files.readAllLines(path);
+        assertEquals("orderId,cardId,points,cardAmount,discount", lines.get(0));
+        assertEquals(6, lines.size());
+        for (String line : lines.subList(1, 5)) {
+            assertTrue(line.matches("ORDER\\d,(mZysk|BosBankrut)?,\\d+\\.\\d{2},\\d+\\.\\d{2},\\d+\\.\\d{2}"), line);
+        }
+        assertEquals("\"A,\"\"B\"\"\",,1.00,0.00,0.15", lines.get(5));
+    }
+
+    @Test
+    void escapesJsonStrings(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("assignments.json");
+
+        try (AssignmentWriter writer = AssignmentWriter.open(path, AssignmentWriter.Format.JSON_LINES)) {
+            writer.write("a\"b\\c\n\u0001", "card", 0, 12_345, 0);
+        }
+
+        OrderAssignment read = MAPPER.readValue(Files.readString(path), OrderAssignment.class);
+        assertEquals("a\"b\\c\n\u0001", read.orderId());
+        assertEquals(new BigDecimal("1.23"), read.cardAmount());
+    }
+
+    @Test
+    void outputLargerThanTheBufferIsComplete(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("assignments.csv");
+        int records = 3 * AssignmentWriter.BUFFER_BYTES / 30;
+
+        try (AssignmentWriter writer = AssignmentWriter.open(path, AssignmentWriter.Format.CSV)) {
+            for (int i = 0; i < records; i++) {
+                writer.write("ORDER" + i, "CARD", i, 2L * i, 0);
+            }
+        }
+
+        List<String> lines = Files.readAllLines(path);
+        assertEquals(records + 1, lines.size());
+        assertEquals("ORDER" + (records - 1) + ",CARD," + MoneyUnits.toCents(records - 1) + ","
+                + MoneyUnits.toCents(2L * (records - 1)) + ",0.00", lines.get(records));
+    }
+}
@@ -0,0 +1,161 @@
+package org.payment;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchSelectorTest {
+    private static final int CUSTOMERS = 300;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static List<BatchProblem> problems() {
+        List<BatchProblem> problems = new ArrayList<>();
+        for (int customer = 0; customer < CUSTOMERS; customer++) {
+            RandomInputs random = new RandomInputs(customer, 15, 4);
+            List<PaymentMethod> methods = random.methods();
+            problems.add(new BatchProblem("C" + customer, random.orders(methods), methods));
+        }
+        return problems;
+    }
+
+    private List<JsonNode> run(BatchSelector batch, List<BatchProblem> problems) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(problems.size(), batch.run(problems.iterator(), out));
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(mapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private static void assertMatchesSingleSelection(BatchProblem problem, JsonNode line) {
+        assertEquals(problem.customer(), line.get("customer").asText());
+        SelectionResult expected;
+        try {
+            expected = PaymentSelection.select(problem.orders(), problem.paymentMethods());
+        } catch (IllegalStateException e) {
+            assertTrue(line.has("error"), problem.customer());
+            return;
+        }
+        for (Map.Entry<String, BigDecimal> total : expected.methodTotals().entrySet()) {
+            assertEquals(total.getValue().toPlainString(), line.get("methodTotals").get(total.getKey()).asText(),
+                    problem.customer());
+        }
+        assertEquals(expected.totalDiscount().toPlainString(), line.get("totalDiscount").asText());
+        assertEquals(expected.assignments().size(), line.get("assignments").size());
+    }
+
+    @Test
+    void orderedRunKeepsInputOrder() throws Exception {
+        List<BatchProblem> problems = problems();
+        List<JsonNode> lines = run(new BatchSelector(4, true), problems);
+
+        assertEquals(CUSTOMERS, lines.size());
+        for (int i = 0; i < CUSTOMERS; i++) {
+            assertMatchesSingleSelection(problems.get(i), lines.get(i));
+        }
+    }
+
+    @Test
+    void unorderedRunTagsEveryCustomer() throws Exception {
+        List<BatchProblem> problems = problems();
+        Map<String, JsonNode> byCustomer = new HashMap<>();
+        for (JsonNode line : run(new BatchSelector(4, false), problems)) {
+            assertNull(byCustomer.put(line.get("customer").asText(), line));
+        }
+
+        assertEquals(CUSTOMERS, byCustomer.size());
+        for (BatchProblem problem : problems) {
+            assertMatchesSingleSelection(problem, byCustomer.get(problem.customer()));
+        }
+    }
+
+    @Test
+    void readsJsonLinesAndDirectories(@TempDir Path directory) throws Exception {
+        Path jsonl = directory.resolve("customers.jsonl");
+        Files.writeString(jsonl, """
+                {"customer":"A","orders":[{"id":"O1","value":"100.00","promotions":["mZysk"]}],"paymentMethods":[{"id":"PUNKTY","discount":"15","limit":"100.00"},{"id":"mZysk","discount":"10","limit":"180.00"}]}
+
+                {"customer":"B","orders":[{"id":"O1","value":"100.00"}],"paymentMethods":[{"id":"PUNKTY","discount":"15","limit":"10.00"}]}
+                """);
+        Path customers = Files.createDirectories(directory.resolve("customers"));
+        Path customer = Files.createDirectories(customers.resolve("A"));
+        Files.writeString(customer.resolve("orders.json"),
+                "[{\"id\":\"O1\",\"value\":\"100.00\",\"promotions\":[\"mZysk\"]}]");
+        Files.writeString(customer.resolve("paymentmethods.json"),
+                "[{\"id\":\"PUNKTY\",\"discount\":\"15\",\"limit\":\"100.00\"},"
+                        + "{\"id\":\"mZysk\",\"discount\":\"10\",\"limit\":\"180.00\"}]");
+
+        ByteArrayOutputStream fromLines = new ByteArrayOutputStream();
+        assertEquals(2, new BatchSelector(2, true).run(BatchSelector.read(jsonl), fromLines));
+        String[] lines = fromLines.toString(StandardCharsets.UTF_8).split("\n");
+        JsonNode first = mapper.readTree(lines[0]);
+        assertEquals("85.00", first.get("methodTotals").get("PUNKTY").asText());
+        assertEquals("15.00", first.get("totalDiscount").asText());
+        assertTrue(mapper.readTree(lines[1]).has("error"));
+
+        ByteArrayOutputStream fromDirectory = new ByteArrayOutputStream();
+        assertEquals(1, new BatchSelector(2, true).run(BatchSelector.read(customers), fromDirectory));
+        assertEquals(lines[0], fromDirectory.toString(StandardCharsets.UTF_8).strip());
+    }
+
+    @Test
+    void malformedLinesGetErrorLines(@TempDir Path directory) throws Exception {
+        Path jsonl = directory.resolve("customers.jsonl");
+        Files.writeString(jsonl, """
+                {"customer":"A","orders":[{"id":"O1","value":"100.00"}],"paymentMethods":[{"id":"PUNKTY","discount":"15","limit":"100.00"}]}
+                {"customer":"B","orders":{"id":"O1"},"paymentMethods":[]}
+                {"customer":"C","orders":[
+                {"customer":"D","orders":[{"value":"100.00"}],"paymentMethods":[{"id":"PUNKTY","discount":"15","limit":"100.00"}]}
+                """);
+
+        for (boolean ordered : new boolean[]{true, false}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(4, new BatchSelector(2, ordered).run(BatchSelector.read(jsonl), out));
+            Map<String, JsonNode> byCustomer = new HashMap<>();
+            for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+                JsonNode node = mapper.readTree(line);
+                byCustomer.put(node.get("customer").asText(), node);
+            }
+            assertEquals("85.00", byCustomer.get("A").get("methodTotals").get("PUNKTY").asText());
+            assertTrue(byCustomer.get("B").has("error"));
+            assertTrue(byCustomer.get("line 3").has("error"));
+            assertTrue(byCustomer.get("D").get("error").asText().contains("orders[0]"));
+        }
+    }
+
+    @Test
+    void unorderedRunReportsWriteFailures() {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+
+        IOException failure = assertThrows(IOException.class,
+                () -> new BatchSelector(4, false).run(problems().iterator(), failing));
+        assertEquals("disk full", failure.getMessage());
+    }
+}
@@ -0,0 +1,54 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandidateHeapTest {
+
+    private static int[] drain(CandidateHeap heap, int rows) {
+        int[] drained = new int[rows];
+        int count = 0;
+        while (!heap.isEmpty()) {
+            drained[count++] = heap.peek();
+            heap.advance();
+        }
+        assertEquals(rows, count);
+        return drained;
+    }
+
+    @Test
+    void advancingThroughEveryRowMatchesTheSort() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            CandidateTable table = new CandidateTable();
+            int orders = random.nextInt(300);
+            boolean negative = round % 5 == 0;
+            for (int order = 0; order < orders; order++) {
+                for (int i = random.nextInt(5); i >= 0; i--) {
+                    long discount = random.nextInt(20) * 1_000L - (negative ? 5_000 : 0);
+                    table.add(order, 0, 0, 0, discount, random.nextInt(4) * 500);
+                }
+            }
+
+            assertArrayEquals(table.sortByPriority(), drain(new CandidateHeap(table), table.size()));
+        }
+    }
+
+    @Test
+    void removingTheTopSkipsTheRestOfItsOrder() {
+        CandidateTable table = new CandidateTable();
+        table.add(0, 0, 0, 0, 500, 1_500);
+        table.add(0, 0, 0, 0, 900, 1_000);
+        table.add(1, 0, 0, 0, 700, 1_000);
+        CandidateHeap heap = new CandidateHeap(table);
+
+        assertEquals(0, heap.peek());
+        heap.removeTop();
+        assertEquals(2, heap.peek());
+        heap.advance();
+        assertTrue(heap.isEmpty());
+    }
+}
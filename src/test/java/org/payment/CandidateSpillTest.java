@@ -0,0 +1,92 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandidateSpillTest {
+
+    @Test
+    void mergedRunsListRowsLikeOneInMemorySort(@TempDir Path directory) throws Exception {
+        SplittableRandom random = new SplittableRandom(7);
+        CandidateTable all = new CandidateTable();
+        CandidateSpill spill = new CandidateSpill(directory, 16 << 10);
+        CandidateTable run = new CandidateTable();
+        for (int row = 0; row < 20_000; row++) {
+            // few distinct keys, so most ties are broken by generation order
+            int ratio = random.nextInt(4) * 500;
+            long discount = random.nextInt(3) * 10_000L;
+            all.add(row, row % 5, row, 2L * row, discount, ratio);
+            run.add(row, row % 5, row, 2L * row, discount, ratio);
+            if (run.size() >= spill.runRows()) {
+                spill.spill(run);
+                run.clear();
+            }
+        }
+        spill.spill(run);
+        assertTrue(spill.runCount() > 4);
+
+        List<Integer> merged = new ArrayList<>();
+        spill.merge((order, method, points, cardAmount, discount) -> {
+            assertEquals(order % 5, method);
+            assertEquals(2L * points, cardAmount);
+            merged.add(order);
+        });
+
+        int[] expected = all.sortByPriority();
+        assertEquals(expected.length, merged.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], merged.get(i), "position " + i);
+        }
+        assertTrue(spill.mergePasses() > 0);
+        try (Stream<Path> runs = Files.list(directory)) {
+            assertEquals(0, runs.count());
+        }
+    }
+
+    @Test
+    void closeDeletesUnmergedRuns(@TempDir Path directory) throws Exception {
+        CandidateTable table = new CandidateTable();
+        table.add(0, 1, 0, 100, 10, 1_000);
+        try (CandidateSpill spill = new CandidateSpill(directory, 1 << 20)) {
+            spill.spill(table);
+            assertEquals(1, spill.runCount());
+            assertEquals(CandidateSpill.RECORD_BYTES, Files.size(Files.list(directory).findFirst().orElseThrow()));
+        }
+        try (Stream<Path> runs = Files.list(directory)) {
+            assertEquals(0, runs.count());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new CandidateSpill(directory, 0));
+    }
+
+    @Test
+    void failingSinkLeavesNoRunsBehind(@TempDir Path directory) throws Exception {
+        try (CandidateSpill spill = new CandidateSpill(directory, 16 << 10)) {
+            CandidateTable run = new CandidateTable();
+            for (int row = 0; row < 20_000; row++) {
+                run.add(row, 1, row, row, 0, 0);
+                if (run.size() >= spill.runRows()) {
+                    spill.spill(run);
+                    run.clear();
+                }
+            }
+            spill.spill(run);
+
+            assertThrows(IllegalStateException.class,
+                    () -> spill.merge((order, method, points, cardAmount, discount) -> {
+                        throw new IllegalStateException("sink failed");
+                    }));
+        }
+        try (Stream<Path> runs = Files.list(directory)) {
+            assertEquals(0, runs.count());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CandidateTableTest {
+
+    @Test
+    void storesColumns() {
+        CandidateTable table = new CandidateTable();
+        table.add(3, 1, 10, 20, 30, 1_500);
+
+        assertEquals(1, table.size());
+        assertEquals(3, table.order(0));
+        assertEquals(1, table.method(0));
+        assertEquals(10, table.points(0));
+        assertEquals(20, table.cardAmount(0));
+        assertEquals(30, table.discount(0));
+        assertEquals(1_500, table.ratio(0));
+    }
+
+    @Test
+    void sortMatchesStableComparatorSort() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            CandidateTable table = new CandidateTable();
+            int rows = random.nextInt(500);
+            boolean negative = round % 5 == 0;
+            for (int row = 0; row < rows; row++) {
+                long discount = random.nextInt(20) * 1_000L - (negative ? 5_000 : 0);
+                table.add(row, 0, 0, 0, discount, random.nextInt(4) * 500);
+            }
+
+            List<Integer> expected = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                expected.add(row);
+            }
+            expected.sort(Comparator.<Integer>comparingInt(table::ratio)
+                    .thenComparingLong(table::discount).reversed());
+
+            int[] sorted = table.sortByPriority();
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), sorted);
+        }
+    }
+
+    @Test
+    void parallelSortMatchesSequentialSort() {
+        Random random = new Random(11);
+        CandidateTable table = new CandidateTable();
+        for (int row = 0; row < 100_000; row++) {
+            table.add(row, 0, 0, 0, random.nextInt(1_000) * 100L, random.nextInt(5) * 500);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(table.sortByPriority(), table.sortByPriority(pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void concatKeepsTableOrder() {
+        CandidateTable first = new CandidateTable();
+        first.add(0, 0, 1, 1, 1, 100);
+        CandidateTable second = new CandidateTable();
+        second.add(1, 1, 2, 2, 2, 200);
+        second.add(2, 1, 3, 3, 3, 300);
+
+        CandidateTable joined = CandidateTable.concat(List.of(first, second));
+
+        assertEquals(3, joined.size());
+        assertEquals(0, joined.order(0));
+        assertEquals(2, joined.order(2));
+        assertEquals(3, joined.points(2));
+        assertEquals(300, joined.ratio(2));
+    }
+}
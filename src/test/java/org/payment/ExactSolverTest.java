@@ -0,0 +1,192 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExactSolverTest {
+
+    @Test
+    void improvesOnGreedyForExampleFromPrompt() {
+        List<Order> orders = List.of(
+                new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+                new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+                new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+                new Order("ORDER4", new BigDecimal("50.00"), null));
+        List<PaymentMethod> methods = List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00")));
+        CompactInput input = CompactInput.of(orders, methods);
+        FixedPointSelector selector = new FixedPointSelector(input);
+        selector.select();
+
+        SolverResult result = new ExactSolver(input).solve(selector.getPlan(), 5_000);
+
+        assertTrue(result.optimal());
+        assertEquals(0, result.gap());
+        assertTrue(result.discount() >= selector.getPlan().totalDiscount());
+        assertCompleteAndValid(input, result.plan());
+    }
+
+    @Test
+    void matchesBruteForceOnSmallInputs() {
+        for (long seed = 0; seed < 40; seed++) {
+            CompactInput input = smallInput(new Random(seed));
+
+            SolverResult result = new ExactSolver(input).solve(null, 5_000);
+
+            long expected = bruteForce(input);
+            assertTrue(result.optimal(), "seed " + seed);
+            if (expected < 0) {
+                assertNull(result.plan(), "seed " + seed);
+                continue;
+            }
+            assertCompleteAndValid(input, result.plan());
+            assertTrue(result.discount() >= expected, "seed " + seed);
+            assertEquals(result.discount(), result.upperBound(), "seed " + seed);
+        }
+    }
+
+    @Test
+    void neverWorseThanGreedyOnRandomInputs() {
+        for (long seed = 0; seed < 100; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, 8, 4);
+            List<PaymentMethod> methods = inputs.methods();
+            CompactInput input = CompactInput.of(inputs.orders(methods), methods);
+            PaymentPlan greedy = PlanAssertions.greedyPlan(input);
+
+            SolverResult result = new ExactSolver(input).solve(greedy, 1_000);
+
+            if (greedy != null) {
+                assertTrue(result.discount() >= greedy.totalDiscount(), "seed " + seed);
+            }
+            if (result.plan() != null && result.plan() != greedy) {
+                assertCompleteAndValid(input, result.plan());
+            }
+            assertTrue(result.upperBound() >= result.discount(), "seed " + seed);
+        }
+    }
+
+    @Test
+    void stopsWithinTimeBudget() {
+        RandomInputs inputs = new RandomInputs(7, 400, 12);
+        List<PaymentMethod> methods = inputs.methods();
+        List<Order> orders = new ArrayList<>(inputs.orders(methods));
+        CompactInput input = CompactInput.of(orders, methods);
+
+        long started = System.nanoTime();
+        SolverResult result = new ExactSolver(input).solve(null, 100);
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertTrue(elapsedMillis < 2_000, "took " + elapsedMillis + " ms");
+        assertTrue(result.upperBound() >= result.discount());
+        if (result.plan() != null) {
+            assertCompleteAndValid(input, result.plan());
+        }
+    }
+
+    @Test
+    void missingPointsMethodIsRejected() {
+        CompactInput input = new CompactInput(List.of(new PaymentMethod("CARD", BigDecimal.ONE, BigDecimal.TEN)));
+        assertThrows(IllegalArgumentException.class, () -> new ExactSolver(input));
+    }
+
+    private static void assertCompleteAndValid(CompactInput input, PaymentPlan plan) {
+        assertTrue(plan.isComplete());
+        PlanAssertions.assertValid(input, plan);
+    }
+
+    /**
+     * Orders of up to 1.00 in steps of 0.10, so every 10% share is a whole cent and points can be enumerated
+     * cent by cent.
+     */
+    private static CompactInput smallInput(Random random) {
+        List<PaymentMethod> methods = new ArrayList<>();
+        methods.add(new PaymentMethod(PaymentSelector.POINTS_ID, BigDecimal.valueOf(random.nextInt(26)),
+                BigDecimal.valueOf(random.nextInt(150), 2)));
+        int cards = 1 + random.nextInt(2);
+        for (int card = 0; card < cards; card++) {
+            methods.add(new PaymentMethod("CARD" + card, BigDecimal.valueOf(random.nextInt(26)),
+                    BigDecimal.valueOf(random.nextInt(200), 2)));
+        }
+        List<Order> orders = new ArrayList<>();
+        int count = 1 + random.nextInt(3);
+        for (int order = 0; order < count; order++) {
+            List<String> promotions = new ArrayList<>();
+            for (int card = 0; card < cards; card++) {
+                if (random.nextBoolean()) {
+                    promotions.add("CARD" + card);
+                }
+            }
+            orders.add(new Order("ORDER" + order, BigDecimal.valueOf(10 * (1 + random.nextInt(10)), 2), promotions));
+        }
+        return CompactInput.of(orders, methods);
+    }
+
+    /**
+     * Returns the best total discount over every card and every whole-cent points part of every order, or
+     * {@code -1} when nothing fits.
+     */
+    private static long bruteForce(CompactInput input) {
+        long[] remaining = new long[input.methodCount()];
+        for (int method = 0; method < remaining.length; method++) {
+            remaining[method] = input.methodLimit(method);
+        }
+        return bruteForce(input, 0, remaining);
+    }
+
+    private static long bruteForce(CompactInput input, int order, long[] remaining) {
+        if (order == input.orderCount()) {
+            return 0;
+        }
+        int points = input.pointsMethod();
+        long amount = input.orderAmount(order);
+        long best = -1;
+
+        long pointsDiscount = MoneyUnits.applyRatio(amount, input.methodRatio(points));
+        best = Math.max(best, tryPayment(input, order, remaining, -1, amount - pointsDiscount, 0, pointsDiscount));
+
+        long tenPercent = MoneyUnits.applyRatio(amount, CandidateGenerator.TEN_PERCENT);
+        for (int card = 0; card < input.methodCount(); card++) {
+            if (card == points) {
+                continue;
+            }
+            long promoted = PlanAssertions.isPromoted(input, order, card)
+                    ? MoneyUnits.applyRatio(amount, input.methodRatio(card))
+                    : 0;
+            best = Math.max(best, tryPayment(input, order, remaining, card, 0, amount - promoted, promoted));
+            for (long pointsPart = 100; pointsPart < amount; pointsPart += 100) {
+                long discount = pointsPart >= tenPercent ? tenPercent : 0;
+                long cardPart = amount - discount - pointsPart;
+                if (cardPart > 0) {
+                    best = Math.max(best, tryPayment(input, order, remaining, card, pointsPart, cardPart, discount));
+                }
+            }
+        }
+        return best;
+    }
+
+    private static long tryPayment(CompactInput input, int order, long[] remaining, int card,
+                                   long pointsPart, long cardPart, long discount) {
+        int points = input.pointsMethod();
+        if (pointsPart > remaining[points] || card >= 0 && cardPart > remaining[card]) {
+            return -1;
+        }
+        remaining[points] -= pointsPart;
+        if (card >= 0) {
+            remaining[card] -= cardPart;
+        }
+        long rest = bruteForce(input, order + 1, remaining);
+        remaining[points] += pointsPart;
+        if (card >= 0) {
+            remaining[card] += cardPart;
+        }
+        return rest < 0 ? -1 : rest + discount;
+    }
+}
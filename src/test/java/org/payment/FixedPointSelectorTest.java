@@ -0,0 +1,234 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FixedPointSelectorTest {
+
+    @Test
+    void exampleFromPrompt() {
+        List<Order> orders = List.of(
+                new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+                new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+                new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+                new Order("ORDER4", new BigDecimal("50.00"), null));
+        List<PaymentMethod> methods = List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00")));
+
+        long[] used = new FixedPointSelector(orders, methods).select();
+
+        assertEquals(new BigDecimal("90.00"), MoneyUnits.toCents(used[0]));
+        assertEquals(new BigDecimal("175.00"), MoneyUnits.toCents(used[1]));
+        assertEquals(new BigDecimal("190.00"), MoneyUnits.toCents(used[2]));
+        assertEquals(BigDecimal.ZERO, methods.get(0).getUsedAmount());
+    }
+
+    @Test
+    void partialFallbackUsesRemainingCardLimit() {
+        List<Order> orders = List.of(
+                new Order("A", new BigDecimal("100.00"), List.of()),
+                new Order("B", new BigDecimal("100.00"), List.of()));
+        List<PaymentMethod> methods = List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("0"), new BigDecimal("100.00")),
+                new PaymentMethod("CARD", new BigDecimal("0"), new BigDecimal("100.00")));
+
+        long[] used = new FixedPointSelector(orders, methods).select();
+
+        // A: partial (10 pts + 80 card), B: card remainder 20 + 80 pts
+        assertEquals(new BigDecimal("90.00"), MoneyUnits.toCents(used[0]));
+        assertEquals(new BigDecimal("100.00"), MoneyUnits.toCents(used[1]));
+    }
+
+    @Test
+    void partialPointsFamilyAndRepeatedPromotionsArePruned() {
+        List<Order> orders = List.of(
+                new Order("O1", new BigDecimal("100"), List.of("C1", "C1")),
+                new Order("O2", new BigDecimal("50"), List.of()));
+        List<PaymentMethod> methods = List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("10"), new BigDecimal("80")),
+                new PaymentMethod("C1", new BigDecimal("20"), new BigDecimal("120")),
+                new PaymentMethod("C2", new BigDecimal("5"), new BigDecimal("40")));
+
+        FixedPointSelector selector = new FixedPointSelector(orders, methods);
+        selector.select();
+
+        // O1: C1 twice + partial C1; O2: full points + partial C1, C2
+        assertEquals(6, selector.getGeneratedCandidateCount());
+        assertEquals(2, selector.getPrunedCandidateCount());
+    }
+
+    @Test
+    void missingPointsMethodIsRejected() {
+        List<PaymentMethod> methods = List.of(new PaymentMethod("CARD", BigDecimal.ONE, BigDecimal.TEN));
+        assertThrows(IllegalArgumentException.class, () -> new FixedPointSelector(List.of(), methods));
+    }
+
+    @Test
+    void matchesLegacyEngineOnRandomInputs() {
+        for (long seed = 0; seed < 1_000; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, 12, seed % 2 == 0 ? 5 : 12);
+            List<PaymentMethod> methods = inputs.methods();
+            List<Order> orders = inputs.orders(methods);
+            assertSameAsLegacy(seed, orders, methods);
+        }
+    }
+
+    @Test
+    void parallelGenerationMatchesSequential() {
+        for (long seed = 0; seed < 20; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, 5_000, 30);
+            List<PaymentMethod> methods = inputs.methods();
+            List<Order> orders = inputs.orders(methods);
+
+            FixedPointSelector sequential = new FixedPointSelector(CompactInput.of(orders, methods));
+            FixedPointSelector parallel = new FixedPointSelector(CompactInput.of(orders, methods), 4);
+
+            long[] expected;
+            try {
+                expected = sequential.select();
+            } catch (IllegalStateException ex) {
+                assertThrows(IllegalStateException.class, parallel::select, "seed " + seed);
+                continue;
+            }
+            assertArrayEquals(expected, parallel.select(), "seed " + seed);
+            assertEquals(sequential.getGeneratedCandidateCount(), parallel.getGeneratedCandidateCount());
+            assertEquals(sequential.getPrunedCandidateCount(), parallel.getPrunedCandidateCount());
+        }
+    }
+
+    @Test
+    void lazySelectionMatchesTheSortedPass() {
+        for (long seed = 0; seed < 300; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, seed % 3 == 0 ? 2_000 : 20, 8);
+            List<PaymentMethod> methods = inputs.methods();
+            CompactInput input = CompactInput.of(inputs.orders(methods), methods);
+            int parallelism = 1 + (int) (seed % 2);
+
+            FixedPointSelector sorted = new FixedPointSelector(input, parallelism);
+            FixedPointSelector lazy = new FixedPointSelector(input, parallelism, SelectionMetrics.disabled("lazy"), true);
+
+            long[] expected;
+            try {
+                expected = sorted.select();
+            } catch (IllegalStateException ex) {
+                assertThrows(IllegalStateException.class, lazy::select, "seed " + seed);
+                continue;
+            }
+            assertArrayEquals(expected, lazy.select(), "seed " + seed);
+            for (int order = 0; order < input.orderCount(); order++) {
+                assertEquals(sorted.getPlan().card(order), lazy.getPlan().card(order), "seed " + seed);
+                assertEquals(sorted.getPlan().discount(order), lazy.getPlan().discount(order), "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void spilledSelectionMatchesTheInMemoryRun(@TempDir Path directory) throws Exception {
+        for (long seed = 0; seed < 100; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, seed % 3 == 0 ? 2_000 : 20, 8);
+            List<PaymentMethod> methods = inputs.methods();
+            CompactInput input = CompactInput.of(inputs.orders(methods), methods);
+
+            FixedPointSelector inMemory = new FixedPointSelector(input);
+            FixedPointSelector spilled = new FixedPointSelector(input);
+            spilled.spillCandidates(directory, 16 << 10);
+
+            long[] expected;
+            try {
+                expected = inMemory.select();
+            } catch (IllegalStateException ex) {
+                assertThrows(IllegalStateException.class, spilled::select, "seed " + seed);
+                continue;
+            }
+            assertArrayEquals(expected, spilled.select(), "seed " + seed);
+            for (int order = 0; order < input.orderCount(); order++) {
+                assertEquals(inMemory.getPlan().card(order), spilled.getPlan().card(order), "seed " + seed);
+                assertEquals(inMemory.getPlan().discount(order), spilled.getPlan().discount(order), "seed " + seed);
+            }
+            assertEquals(inMemory.getPrunedCandidateCount(), spilled.getPrunedCandidateCount(), "seed " + seed);
+            try (Stream<Path> runs = Files.list(directory)) {
+                assertEquals(0, runs.count(), "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void fallbackIsReportedOnlyOnRequest() {
+        // a seed whose orders only fit when every order is paid without a discount
+        RandomInputs inputs = new RandomInputs(5_217, 2, 3);
+        List<PaymentMethod> methods = inputs.methods();
+        SelectionMetrics metrics = new SelectionMetrics("fixed");
+        FixedPointSelector selector = new FixedPointSelector(CompactInput.of(inputs.orders(methods), methods), 1,
+                metrics);
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        try {
+            System.setErr(new PrintStream(captured, true));
+            selector.select();
+        } finally {
+            System.setErr(stderr);
+        }
+
+        assertEquals(1, metrics.getNoDiscountFallbacks());
+        assertEquals(0, captured.size());
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        selector.reportFallback(new PrintStream(report, true));
+        assertTrue(report.toString().contains("Fallback to no-discount payment for ALL orders"));
+    }
+
+    @Test
+    void discardingDeletesCandidatesSpilledWhileReading(@TempDir Path directory) throws Exception {
+        RandomInputs inputs = new RandomInputs(3, 2_000, 8);
+        List<PaymentMethod> methods = inputs.methods();
+        CompactInput input = CompactInput.of(inputs.orders(methods), methods);
+        FixedPointSelector selector = new FixedPointSelector(input);
+        selector.spillCandidates(directory, 16 << 10);
+
+        for (int order = 0; order < input.orderCount(); order++) {
+            selector.acceptOrder(order);
+        }
+        try (Stream<Path> runs = Files.list(directory)) {
+            assertTrue(runs.count() > 0);
+        }
+        selector.discardSpilledCandidates();
+        try (Stream<Path> runs = Files.list(directory)) {
+            assertEquals(0, runs.count());
+        }
+    }
+
+    static void assertSameAsLegacy(long seed, List<Order> orders, List<PaymentMethod> methods) {
+        List<PaymentMethod> legacyMethods = RandomInputs.copy(methods);
+        Exception legacyFailure = null;
+        try {
+            new PaymentSelector(orders, legacyMethods).runSelector();
+        } catch (IllegalStateException ex) {
+            legacyFailure = ex;
+        }
+
+        if (legacyFailure != null) {
+            assertThrows(IllegalStateException.class, () -> new FixedPointSelector(orders, methods).select(),
+                    "seed " + seed);
+            return;
+        }
+        long[] used = new FixedPointSelector(orders, methods).select();
+        for (int i = 0; i < legacyMethods.size(); i++) {
+            BigDecimal expected = legacyMethods.get(i).getUsedAmount();
+            assertEquals(0, expected.compareTo(MoneyUnits.toBigDecimal(used[i])),
+                    "seed " + seed + " method " + legacyMethods.get(i).getId());
+            assertEquals(expected.setScale(2, RoundingMode.HALF_UP), MoneyUnits.toCents(used[i]));
+        }
+    }
+}
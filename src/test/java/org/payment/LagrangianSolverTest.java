@@ -0,0 +1,66 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LagrangianSolverTest {
+
+    @Test
+    void boundsTheExampleFromPrompt() {
+        CompactInput input = CompactInput.of(List.of(
+                new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+                new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+                new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+                new Order("ORDER4", new BigDecimal("50.00"), List.of())), List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00"))));
+        PaymentPlan greedy = PlanAssertions.greedyPlan(input);
+
+        SolverResult result = new LagrangianSolver(input, 2).solve(greedy, 5_000);
+        SolverResult exact = new ExactSolver(input).solve(greedy, 5_000);
+
+        assertTrue(result.discount() >= MoneyUnits.toUnits(new BigDecimal("45.00")));
+        assertTrue(exact.optimal());
+        assertTrue(result.upperBound() >= exact.discount());
+        assertTrue(result.plan().isComplete());
+        PlanAssertions.assertValid(input, result.plan());
+    }
+
+    @Test
+    void boundsTheOptimumAndNeverLosesToGreedy() {
+        for (long seed = 0; seed < 100; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, 8, 4);
+            List<PaymentMethod> methods = inputs.methods();
+            CompactInput input = CompactInput.of(inputs.orders(methods), methods);
+            PaymentPlan greedy = PlanAssertions.greedyPlan(input);
+
+            SolverResult result = new LagrangianSolver(input, 1 + (int) (seed % 3)).solve(greedy, 1_000);
+            SolverResult exact = new ExactSolver(input).solve(greedy, 1_000);
+
+            // the exact solver also pays repeated order ids, which the bound leaves out
+            if (exact.optimal() && exact.plan() != null && input.orderKeyCount() == input.orderCount()) {
+                assertTrue(result.upperBound() >= exact.discount(), "seed " + seed);
+            }
+            if (greedy != null) {
+                assertTrue(result.discount() >= greedy.totalDiscount(), "seed " + seed);
+            }
+            if (result.plan() != null) {
+                assertTrue(result.plan().isComplete(), "seed " + seed);
+                PlanAssertions.assertValid(input, result.plan());
+                assertTrue(result.upperBound() >= result.discount(), "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidParallelism() {
+        CompactInput input = CompactInput.of(List.of(),
+                List.of(new PaymentMethod("PUNKTY", BigDecimal.ONE, BigDecimal.TEN)));
+        assertThrows(IllegalArgumentException.class, () -> new LagrangianSolver(input, 0));
+    }
+}
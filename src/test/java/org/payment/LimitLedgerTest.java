@@ -0,0 +1,116 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitLedgerTest {
+
+    @Test
+    void reservesOnlyWhatTheLimitCovers() {
+        LimitLedger ledger = new LimitLedger(new long[]{100, 50}, new int[]{4, 1});
+
+        assertTrue(ledger.tryReserve(0, 70));
+        assertFalse(ledger.tryReserve(0, 31));
+        assertEquals(30, ledger.remaining(0));
+        assertTrue(ledger.tryReserve(0, 30));
+        assertEquals(100, ledger.used(0));
+
+        assertFalse(ledger.tryReserve(1, 51));
+        assertEquals(50, ledger.remaining(1));
+        ledger.release(0, 20);
+        assertEquals(20, ledger.remaining(0));
+    }
+
+    @Test
+    void pairedReservationDebitsBothOrNeither() {
+        LimitLedger ledger = new LimitLedger(new long[]{100, 50}, new int[]{2, 1});
+
+        assertFalse(ledger.tryReserve(0, 40, 1, 60));
+        assertEquals(100, ledger.remaining(0));
+        assertEquals(50, ledger.remaining(1));
+
+        assertTrue(ledger.tryReserve(0, 40, 1, 50));
+        assertEquals(60, ledger.remaining(0));
+        assertEquals(0, ledger.remaining(1));
+    }
+
+    @Test
+    void usesTheLimitsOfTheInput() {
+        CompactInput input = CompactInput.of(List.of(), List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00"))));
+        LimitLedger ledger = LimitLedger.of(input, 8);
+
+        assertEquals(2, ledger.methodCount());
+        for (int method = 0; method < input.methodCount(); method++) {
+            assertEquals(input.methodLimit(method), ledger.remaining(method));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new LimitLedger(new long[]{1}, new int[]{0}));
+        assertThrows(IllegalArgumentException.class, () -> ledger.tryReserve(0, -1));
+    }
+
+    @Test
+    void neverOverdrawsUnderContention() throws Exception {
+        long[] limits = {1_000_000, 250_000, 400_000};
+        int[] stripes = {8, 1, 2};
+        int threads = 8;
+        LimitLedger ledger = new LimitLedger(limits, stripes);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                futures.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    long[] held = new long[limits.length];
+                    start.await();
+                    for (int i = 0; i < 50_000; i++) {
+                        int points = 0;
+                        int card = 1 + random.nextInt(limits.length - 1);
+                        long pointsAmount = random.nextInt(200);
+                        long cardAmount = random.nextInt(100);
+                        if (ledger.tryReserve(points, pointsAmount, card, cardAmount)) {
+                            held[points] += pointsAmount;
+                            held[card] += cardAmount;
+                        }
+                        // give part of it back now and then, so the limits keep being contended
+                        if (random.nextInt(8) == 0 && held[card] >= cardAmount) {
+                            ledger.release(card, cardAmount);
+                            held[card] -= cardAmount;
+                        }
+                    }
+                    return held;
+                }));
+            }
+            start.countDown();
+
+            long[] held = new long[limits.length];
+            for (Future<long[]> future : futures) {
+                long[] part = future.get();
+                for (int method = 0; method < limits.length; method++) {
+                    held[method] += part[method];
+                }
+            }
+            for (int method = 0; method < limits.length; method++) {
+                assertTrue(held[method] <= limits[method], "method " + method);
+                assertEquals(limits[method] - held[method], ledger.remaining(method), "method " + method);
+                assertEquals(held[method], ledger.used(method), "method " + method);
+            }
+            // the workload asks for far more than the limits, so they end up (nearly) exhausted
+            assertTrue(ledger.remaining(0) < 200 * stripes[0]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
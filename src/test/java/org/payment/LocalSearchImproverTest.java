@@ -0,0 +1,94 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalSearchImproverTest {
+
+    @Test
+    void improvesExampleFromPrompt() {
+        List<Order> orders = List.of(
+                new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+                new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+                new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+                new Order("ORDER4", new BigDecimal("50.00"), null));
+        List<PaymentMethod> methods = List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00")));
+        CompactInput input = CompactInput.of(orders, methods);
+        FixedPointSelector selector = new FixedPointSelector(input);
+        selector.select();
+
+        ImprovementResult result = new LocalSearchImprover(input).improve(selector.getPlan(), 200);
+
+        assertEquals(new BigDecimal("45.00"), MoneyUnits.toCents(result.initialDiscount()));
+        assertEquals(new BigDecimal("52.50"), MoneyUnits.toCents(result.discount()));
+        assertTrue(result.moves() > 0);
+        assertTrue(result.gainPerSecond() > 0);
+        PlanAssertions.assertValid(input, result.plan());
+    }
+
+    @Test
+    void neverWorseThanGreedyOnRandomInputs() {
+        for (long seed = 0; seed < 40; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, 12, 5);
+            List<PaymentMethod> methods = inputs.methods();
+            CompactInput input = CompactInput.of(inputs.orders(methods), methods);
+            FixedPointSelector selector = new FixedPointSelector(input);
+            try {
+                selector.select();
+            } catch (IllegalStateException e) {
+                continue;
+            }
+            PaymentPlan greedy = selector.getPlan();
+
+            ImprovementResult result = new LocalSearchImprover(input, 2, seed % 2 == 0).improve(greedy, 20);
+
+            assertTrue(result.discount() >= greedy.totalDiscount(), "seed " + seed);
+            assertEquals(result.discount(), result.plan().totalDiscount(), "seed " + seed);
+            for (int order = 0; order < input.orderCount(); order++) {
+                assertEquals(greedy.isSettled(order), result.plan().isSettled(order), "seed " + seed);
+            }
+            if (result.gain() > 0) {
+                PlanAssertions.assertValid(input, result.plan());
+            }
+        }
+    }
+
+    @Test
+    void zeroBudgetKeepsStartingPlan() {
+        RandomInputs inputs = new RandomInputs(0, 12, 5);
+        List<PaymentMethod> methods = inputs.methods();
+        CompactInput input = CompactInput.of(inputs.orders(methods), methods);
+        FixedPointSelector selector = new FixedPointSelector(input);
+        selector.select();
+
+        ImprovementResult result = new LocalSearchImprover(input).improve(selector.getPlan(), 0);
+
+        assertSame(selector.getPlan(), result.plan());
+        assertEquals(0, result.gain());
+    }
+
+    @Test
+    void undiscountedSplitMovedOntoItsPromotedCardGetsThePromotion() {
+        List<PaymentMethod> methods = List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("50.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("100.00")));
+        CompactInput input = CompactInput.of(
+                List.of(new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk"))), methods);
+        PaymentPlan start = new PaymentPlan(input);
+        start.settle(0, input.methodIndex("mZysk"), MoneyUnits.toUnits(new BigDecimal("50.00")),
+                MoneyUnits.toUnits(new BigDecimal("50.00")), 0);
+
+        ImprovementResult result = new LocalSearchImprover(input, 1, false).improve(start, 200);
+
+        PlanAssertions.assertValid(input, result.plan());
+        assertEquals(0, result.plan().points(0));
+        assertEquals(new BigDecimal("10.00"), MoneyUnits.toCents(result.discount()));
+    }
+}
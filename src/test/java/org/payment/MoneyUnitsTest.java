@@ -0,0 +1,69 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyUnitsTest {
+
+    @Test
+    void toUnitsRoundsToWholeCents() {
+        assertEquals(1_234_500, MoneyUnits.toUnits(new BigDecimal("123.45")));
+        assertEquals(1_234_600, MoneyUnits.toUnits(new BigDecimal("123.455")));
+        assertEquals(1_000_000, MoneyUnits.toUnits(new BigDecimal("100")));
+    }
+
+    @Test
+    void basisPointsFromRatio() {
+        assertEquals(1_500, MoneyUnits.toBasisPoints(new BigDecimal("0.15")));
+        assertEquals(1_000, MoneyUnits.toBasisPoints(BigDecimal.valueOf(0.1)));
+    }
+
+    @Test
+    void applyRatioIsExactForWholePercents() {
+        long amount = MoneyUnits.toUnits(new BigDecimal("100.05"));
+        assertEquals(new BigDecimal("15.0075"), MoneyUnits.toBigDecimal(MoneyUnits.applyRatio(amount, 1_500)));
+    }
+
+    @Test
+    void applyRatioRoundsHalfUp() {
+        assertEquals(1, MoneyUnits.applyRatio(1, 5_000));
+        assertEquals(-1, MoneyUnits.applyRatio(-1, 5_000));
+        assertEquals(0, MoneyUnits.applyRatio(1, 4_999));
+    }
+
+    @Test
+    void toCentsRoundsHalfUp() {
+        assertEquals(new BigDecimal("0.01"), MoneyUnits.toCents(50));
+        assertEquals(new BigDecimal("0.00"), MoneyUnits.toCents(49));
+    }
+
+    @Test
+    void parseUnitsMatchesBigDecimalConversion() {
+        for (String text : new String[]{"0", "12", "12.3", "12.34", "12.345", "12.344", "-0.005", "+7.5", ".5", "1e2",
+                "123456789012345.67"}) {
+            char[] chars = ("  " + text + " ").toCharArray();
+            assertEquals(MoneyUnits.toUnits(new BigDecimal(text)), MoneyUnits.parseUnits(chars, 2, text.length()), text);
+        }
+    }
+
+    @Test
+    void parseUnitsRejectsAmountsBeyondTheUnitRange() {
+        for (String text : new String[]{"922337203685477.58", "-922337203685477.58"}) {
+            char[] chars = text.toCharArray();
+            assertEquals(MoneyUnits.toUnits(new BigDecimal(text)), MoneyUnits.parseUnits(chars, 0, chars.length), text);
+        }
+        for (String text : new String[]{"922337203685477.59", "999999999999999", "-999999999999999.99"}) {
+            char[] chars = text.toCharArray();
+            assertThrows(ArithmeticException.class, () -> MoneyUnits.parseUnits(chars, 0, chars.length), text);
+        }
+    }
+
+    @Test
+    void parseUnitsRejectsGarbage() {
+        char[] chars = "12.3x".toCharArray();
+        assertThrows(NumberFormatException.class, () -> MoneyUnits.parseUnits(chars, 0, chars.length));
+    }
+}
@@ -0,0 +1,146 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OnlineSelectorTest {
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+            new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+            new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+            new Order("ORDER4", new BigDecimal("50.00"), List.of()));
+
+    private static List<PaymentMethod> methods() {
+        return List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00")));
+    }
+
+    private static Map<String, BigDecimal> totals(List<OrderAssignment> assignments) {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        for (OrderAssignment assignment : assignments) {
+            totals.merge(PaymentSelector.POINTS_ID, assignment.points(), BigDecimal::add);
+            if (assignment.cardId() != null) {
+                totals.merge(assignment.cardId(), assignment.cardAmount(), BigDecimal::add);
+            }
+        }
+        return totals;
+    }
+
+    private static void assertPaid(Order order, OrderAssignment assignment) {
+        assertEquals(order.id(), assignment.orderId());
+        // parts are rounded to cents one by one, so they may miss the order value by a cent
+        BigDecimal paid = assignment.points().add(assignment.cardAmount()).add(assignment.discount());
+        assertTrue(order.amountToPay().subtract(paid).abs().compareTo(new BigDecimal("0.01")) <= 0, order.id());
+        assertTrue(assignment.points().signum() >= 0 && assignment.cardAmount().signum() >= 0);
+    }
+
+    @Test
+    void decidesEachOrderOnArrival() {
+        OnlineSelector selector = new OnlineSelector(methods());
+        List<OrderAssignment> assignments = new ArrayList<>();
+        for (Order order : ORDERS) {
+            List<OrderAssignment> committed = selector.offer(order);
+            assertEquals(1, committed.size());
+            assertPaid(order, committed.get(0));
+            assignments.addAll(committed);
+        }
+
+        Map<String, BigDecimal> totals = totals(assignments);
+        assertEquals(new BigDecimal("90.00"), totals.get("PUNKTY"));
+        assertEquals(new BigDecimal("175.00"), totals.get("mZysk"));
+        assertEquals(new BigDecimal("190.00"), totals.get("BosBankrut"));
+        assertEquals(new BigDecimal("10.00"), selector.remainingLimit("PUNKTY"));
+        assertEquals(new BigDecimal("5.00"), selector.remainingLimit("mZysk"));
+        assertEquals(0, selector.pendingCount());
+    }
+
+    @Test
+    void lookAheadHoldsOrdersUntilTheWindowIsFull() {
+        OnlineSelector selector = new OnlineSelector(methods(), 2);
+
+        assertTrue(selector.offer(ORDERS.get(0)).isEmpty());
+        assertTrue(selector.offer(ORDERS.get(1)).isEmpty());
+        List<OrderAssignment> committed = new ArrayList<>(selector.offer(ORDERS.get(2)));
+        assertEquals(1, committed.size());
+        assertEquals("ORDER1", committed.get(0).orderId());
+        committed.addAll(selector.offer(ORDERS.get(3)));
+        assertEquals(2, selector.pendingCount());
+        committed.addAll(selector.flush());
+
+        assertEquals(4, committed.size());
+        for (int i = 0; i < ORDERS.size(); i++) {
+            assertPaid(ORDERS.get(i), committed.get(i));
+        }
+        assertEquals(0, selector.pendingCount());
+    }
+
+    @Test
+    void infeasibleOrderIsDroppedWithoutTouchingTheLedger() {
+        OnlineSelector selector = new OnlineSelector(List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("0"), new BigDecimal("10.00")),
+                new PaymentMethod("CARD", new BigDecimal("0"), new BigDecimal("50.00"))));
+
+        assertThrows(IllegalStateException.class,
+                () -> selector.offer(new Order("BIG", new BigDecimal("100.00"), List.of())));
+        assertEquals(new BigDecimal("10.00"), selector.remainingLimit("PUNKTY"));
+        assertEquals(new BigDecimal("50.00"), selector.remainingLimit("CARD"));
+
+        OrderAssignment small = selector.offer(new Order("SMALL", new BigDecimal("40.00"), List.of())).get(0);
+        assertPaid(new Order("SMALL", new BigDecimal("40.00"), List.of()), small);
+    }
+
+    @Test
+    void longStreamsStayWithinLimits() {
+        for (int lookAhead : new int[]{0, 1, 8}) {
+            RandomInputs random = new RandomInputs(lookAhead, 40, 5);
+            List<PaymentMethod> methods = random.methods();
+            List<Order> orders = new ArrayList<>();
+            while (orders.size() < 3000) {
+                orders.addAll(random.orders(methods));
+            }
+            OnlineSelector selector = new OnlineSelector(methods, lookAhead);
+            List<OrderAssignment> assignments = new ArrayList<>();
+            List<Order> accepted = new ArrayList<>();
+            for (Order order : orders) {
+                try {
+                    assignments.addAll(selector.offer(order));
+                } catch (IllegalStateException e) {
+                    assignments.add(null);
+                }
+                accepted.add(order);
+            }
+            while (selector.pendingCount() > 0) {
+                try {
+                    assignments.add(selector.commitNext());
+                } catch (IllegalStateException e) {
+                    assignments.add(null);
+                }
+            }
+
+            assertEquals(orders.size(), assignments.size());
+            for (int i = 0; i < orders.size(); i++) {
+                if (assignments.get(i) != null) {
+                    assertPaid(accepted.get(i), assignments.get(i));
+                }
+            }
+            Map<String, BigDecimal> totals = totals(assignments.stream().filter(a -> a != null).toList());
+            for (PaymentMethod method : methods) {
+                BigDecimal used = totals.getOrDefault(method.getId(), BigDecimal.ZERO);
+                // each part is rounded to cents on its own, so the sum may exceed the limit by half a cent each
+                BigDecimal slack = new BigDecimal("0.005").multiply(BigDecimal.valueOf(orders.size()));
+                assertTrue(used.compareTo(method.getLimit().add(slack)) <= 0, method.getId());
+                assertTrue(selector.remainingLimit(method.getId()).signum() >= 0, method.getId());
+                assertEquals(BigDecimal.ZERO, method.getUsedAmount());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripKeepsEveryColumn() throws IOException {
+        for (int seed = 0; seed < 50; seed++) {
+            RandomInputs random = new RandomInputs(seed, 30, 5);
+            List<PaymentMethod> methods = random.methods();
+            List<Order> orders = new ArrayList<>(random.orders(methods));
+            orders.add(new Order("zażółć-" + seed, new BigDecimal("12.34"), List.of("unknown", "PUNKTY")));
+            orders.add(orders.get(0));
+            CompactInput written = CompactInput.of(orders, methods);
+            Path snapshot = directory.resolve(seed + ".snap");
+            OrderSnapshot.write(written, snapshot);
+
+            CompactInput loaded = OrderSnapshot.load(snapshot);
+
+            assertEquals(written.methodCount(), loaded.methodCount());
+            for (int method = 0; method < written.methodCount(); method++) {
+                assertEquals(written.methodId(method), loaded.methodId(method));
+                assertEquals(written.methodLimit(method), loaded.methodLimit(method));
+                assertEquals(written.methodRatio(method), loaded.methodRatio(method));
+            }
+            assertEquals(written.pointsMethod(), loaded.pointsMethod());
+            assertEquals(written.orderCount(), loaded.orderCount());
+            assertEquals(written.orderKeyCount(), loaded.orderKeyCount());
+            for (int order = 0; order < written.orderCount(); order++) {
+                assertEquals(written.orderId(order), loaded.orderId(order));
+                assertEquals(written.orderKey(order), loaded.orderKey(order));
+                assertEquals(written.orderAmount(order), loaded.orderAmount(order));
+                assertEquals(written.promotionStart(order), loaded.promotionStart(order));
+                assertEquals(written.promotionEnd(order), loaded.promotionEnd(order));
+            }
+            for (int position = 0; position < written.promotionEnd(written.orderCount() - 1); position++) {
+                assertEquals(written.promotionMethod(position), loaded.promotionMethod(position));
+            }
+        }
+    }
+
+    @Test
+    void loadedSnapshotSelectsLikeTheJsonInput() throws IOException {
+        for (int seed = 0; seed < 200; seed++) {
+            RandomInputs random = new RandomInputs(seed, 20, 4);
+            List<PaymentMethod> methods = random.methods();
+            CompactInput input = CompactInput.of(random.orders(methods), methods);
+            Path snapshot = directory.resolve("select.snap");
+            OrderSnapshot.write(input, snapshot);
+
+            long[] expected;
+            try {
+                expected = new FixedPointSelector(input).select();
+            } catch (IllegalStateException e) {
+                assertThrows(IllegalStateException.class,
+                        () -> new FixedPointSelector(OrderSnapshot.load(snapshot)).select());
+                continue;
+            }
+            assertArrayEquals(expected, new FixedPointSelector(OrderSnapshot.load(snapshot)).select(),
+                    "seed " + seed);
+        }
+    }
+
+    @Test
+    void rejectsOtherFilesAndFurtherOrders() throws IOException {
+        Path text = Files.writeString(directory.resolve("orders.json"), "[{\"id\":\"O1\",\"value\":\"1.00\"}]");
+        assertThrows(IOException.class, () -> OrderSnapshot.load(text));
+
+        List<PaymentMethod> methods = List.of(new PaymentMethod("PUNKTY", BigDecimal.TEN, new BigDecimal("50.00")));
+        Path snapshot = directory.resolve("points.snap");
+        OrderSnapshot.write(CompactInput.of(List.of(new Order("O1", BigDecimal.ONE, List.of())), methods), snapshot);
+        byte[] truncated = Files.readAllBytes(snapshot);
+        Path broken = Files.write(directory.resolve("broken.snap"),
+                Arrays.copyOf(truncated, truncated.length - 4));
+        assertThrows(IOException.class, () -> OrderSnapshot.load(broken));
+
+        CompactInput loaded = OrderSnapshot.load(snapshot);
+        assertThrows(IllegalStateException.class,
+                () -> loaded.addOrder(new Order("O2", BigDecimal.ONE, List.of())));
+    }
+}
@@ -0,0 +1,100 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentJournalTest {
+    @Test
+    void rollsBackToSavepointsAndWholeOrders() {
+        PaymentMethod points = new PaymentMethod("PUNKTY", BigDecimal.ZERO, new BigDecimal("100"));
+        PaymentMethod card = new PaymentMethod("CARD", BigDecimal.ZERO, new BigDecimal("100"));
+        RemainingLimitIndex index = new RemainingLimitIndex(List.of(card));
+        int first = 0;
+        int second = 1;
+        PaymentJournal journal = new PaymentJournal(index);
+
+        journal.pay(first, points, new BigDecimal("10"));
+        journal.pay(first, card, new BigDecimal("20"));
+        int savepoint = journal.savepoint();
+        journal.pay(second, points, new BigDecimal("5"));
+        journal.pay(second, card, new BigDecimal("45"));
+        assertEquals(new BigDecimal("35"), card.getRemainingLimit());
+
+        journal.rollbackTo(savepoint);
+        assertEquals(new BigDecimal("10"), points.getUsedAmount());
+        assertEquals(new BigDecimal("80"), card.getRemainingLimit());
+        assertSame(card, index.findMinFit(new BigDecimal("80")).orElseThrow());
+
+        assertEquals(first, journal.rollbackLastOrder());
+        assertTrue(journal.isEmpty());
+        assertEquals(0, points.getUsedAmount().signum());
+        assertEquals(0, card.getUsedAmount().signum());
+    }
+
+    @Test
+    void compactJournalRefundsLatestFirst() {
+        long[] used = new long[2];
+        CompactJournal journal = new CompactJournal();
+        CompactJournal.Refund refund = (method, amount) -> used[method] -= amount;
+        for (int order = 0; order < 100; order++) {
+            journal.record(order, order % 2, order);
+            used[order % 2] += order;
+        }
+
+        journal.rollbackTo(98, refund);
+        assertEquals(2_352, used[0]);
+        assertEquals(2_401, used[1]);
+        assertEquals(97, journal.rollbackLastOrder(refund));
+        assertEquals(2_304, used[1]);
+        journal.rollbackTo(0, refund);
+        assertArrayEquals(new long[2], used);
+    }
+
+    @Test
+    void failingFallbackRollsBackOnlyWhatItNeeds() {
+        int recovered = 0;
+        for (long seed = 0; seed < 2_000; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, 6, 3);
+            List<PaymentMethod> methods = inputs.methods();
+            List<Order> orders = inputs.orders(methods);
+            SelectionMetrics fixed = new SelectionMetrics("fixed");
+            CompactInput input = CompactInput.of(orders, methods);
+            FixedPointSelector selector = new FixedPointSelector(input, 1, fixed);
+            try {
+                selector.select();
+            } catch (IllegalStateException e) {
+                continue;
+            }
+            if (fixed.getRolledBackOrders() == 0) {
+                continue;
+            }
+            recovered++;
+
+            assertEquals(0, fixed.getNoDiscountFallbacks(), "seed " + seed);
+            assertTrue(fixed.getRolledBackOrders() < orders.size(), "seed " + seed);
+            assertTrue(selector.getPlan().isComplete() || orders.stream().map(Order::id).distinct().count()
+                    < orders.size(), "seed " + seed);
+            PaymentPlan plan = selector.getPlan();
+            for (int order = 0; order < input.orderCount(); order++) {
+                if (plan.isSettled(order)) {
+                    assertEquals(input.orderAmount(order),
+                            plan.points(order) + plan.cardAmount(order) + plan.discount(order), "seed " + seed);
+                }
+            }
+            long[] used = plan.usedAmounts();
+            for (int method = 0; method < used.length; method++) {
+                assertTrue(used[method] <= input.methodLimit(method), "seed " + seed);
+            }
+
+            SelectionMetrics legacy = new SelectionMetrics("legacy");
+            FixedPointSelectorTest.assertSameAsLegacy(seed, orders, methods);
+            new PaymentSelector(orders, RandomInputs.copy(methods), legacy).runSelector();
+            assertEquals(fixed.getRolledBackOrders(), legacy.getRolledBackOrders(), "seed " + seed);
+        }
+        assertTrue(recovered > 0);
+    }
+}
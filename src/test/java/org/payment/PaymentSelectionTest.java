@@ -0,0 +1,108 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentSelectionTest {
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+            new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+            new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+            new Order("ORDER4", new BigDecimal("50.00"), List.of()));
+
+    private static List<PaymentMethod> methods() {
+        return List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00")));
+    }
+
+    @Test
+    void returnsAssignmentsAndTotalsOfTheExample() {
+        SelectionResult result = PaymentSelection.select(ORDERS, methods());
+
+        assertEquals(List.of("PUNKTY", "mZysk", "BosBankrut"), List.copyOf(result.methodTotals().keySet()));
+        assertEquals(new BigDecimal("90.00"), result.methodTotals().get("PUNKTY"));
+        assertEquals(new BigDecimal("175.00"), result.methodTotals().get("mZysk"));
+        assertEquals(new BigDecimal("190.00"), result.methodTotals().get("BosBankrut"));
+        assertEquals(new BigDecimal("45.00"), result.totalDiscount());
+
+        assertEquals(4, result.assignments().size());
+        BigDecimal discounts = BigDecimal.ZERO;
+        for (int i = 0; i < ORDERS.size(); i++) {
+            OrderAssignment assignment = result.assignments().get(i);
+            Order order = ORDERS.get(i);
+            assertEquals(order.id(), assignment.orderId());
+            assertEquals(0, order.amountToPay().compareTo(
+                    assignment.points().add(assignment.cardAmount()).add(assignment.discount())));
+            assertEquals(assignment.cardId() == null, assignment.cardAmount().signum() == 0);
+            discounts = discounts.add(assignment.discount());
+        }
+        assertEquals(result.totalDiscount(), discounts);
+    }
+
+    @Test
+    void leavesInputsUntouched() {
+        List<PaymentMethod> methods = methods();
+        PaymentSelection.select(ORDERS, methods);
+
+        for (PaymentMethod method : methods) {
+            assertEquals(BigDecimal.ZERO, method.getUsedAmount());
+        }
+    }
+
+    @Test
+    void resultIsImmutable() {
+        SelectionResult result = PaymentSelection.select(ORDERS, methods());
+
+        assertThrows(UnsupportedOperationException.class, () -> result.assignments().clear());
+        assertThrows(UnsupportedOperationException.class, () -> result.methodTotals().put("X", BigDecimal.ONE));
+    }
+
+    @Test
+    void matchesLegacyTotals() {
+        for (long seed = 0; seed < 50; seed++) {
+            RandomInputs random = new RandomInputs(seed, 12, 4);
+            List<PaymentMethod> methods = random.methods();
+            List<Order> orders = random.orders(methods);
+            List<PaymentMethod> legacy = RandomInputs.copy(methods);
+            try {
+                new PaymentSelector(orders, legacy).runSelector();
+            } catch (IllegalStateException e) {
+                assertThrows(IllegalStateException.class, () -> PaymentSelection.select(orders, methods));
+                continue;
+            }
+
+            SelectionResult result = PaymentSelection.select(orders, methods);
+            for (PaymentMethod method : legacy) {
+                assertEquals(MoneyUnits.toCents(MoneyUnits.toUnits(method.getUsedAmount())),
+                        result.methodTotals().get(method.getId()), "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void sharedInputsServeConcurrentSelections() throws Exception {
+        List<PaymentMethod> methods = methods();
+        Map<String, BigDecimal> expected = PaymentSelection.select(ORDERS, methods).methodTotals();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<SelectionResult>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(() -> PaymentSelection.select(ORDERS, methods)));
+            }
+            for (Future<SelectionResult> result : results) {
+                assertEquals(expected, result.get().methodTotals());
+            }
+        }
+    }
+}
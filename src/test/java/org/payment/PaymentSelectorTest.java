@@ -84,4 +84,20 @@ public class PaymentSelectorTest {
         assertEquals(new BigDecimal("50"), cardPayment1.getUsedAmount());
         assertEquals(new BigDecimal("20"), cardPayment2.getUsedAmount());
     }
+
+    @Test
+    void keepsAmountsBeyondTheFixedPointRange() throws Exception {
+        PaymentMethod points = new PaymentMethod("PUNKTY", new BigDecimal("10"), new BigDecimal("0.001"));
+        PaymentMethod card = new PaymentMethod("C1", new BigDecimal("5"), new BigDecimal("1e21"));
+        PaymentSelector large = new PaymentSelector(
+                List.of(new Order("O1", new BigDecimal("100000000000000000000.005"), List.of("C1"))),
+                List.of(points, card));
+        Method method = PaymentSelector.class.getDeclaredMethod("payAllNoDiscount", PaymentMethod.class);
+        method.setAccessible(true);
+
+        method.invoke(large, points);
+
+        assertEquals(new BigDecimal("0.001"), points.getUsedAmount());
+        assertEquals(new BigDecimal("100000000000000000000.004"), card.getUsedAmount());
+    }
 }
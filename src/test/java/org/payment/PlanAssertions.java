@@ -0,0 +1,71 @@
+package org.payment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link PaymentPlan}s against the payment rules and the method limits, and builds the greedy plans the
+ * solver tests start from.
+ */
+final class PlanAssertions {
+
+    private PlanAssertions() {
+    }
+
+    /**
+     * Returns the complete plan of the fixed-point greedy selection, or {@code null} when it fails or leaves
+     * orders unpaid.
+     */
+    static PaymentPlan greedyPlan(CompactInput input) {
+        FixedPointSelector selector = new FixedPointSelector(input);
+        try {
+            selector.select();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+        return selector.getPlan().isComplete() ? selector.getPlan() : null;
+    }
+
+    /**
+     * Asserts that every settled order is paid in full under the discount rules and that no method limit is
+     * exceeded.
+     */
+    static void assertValid(CompactInput input, PaymentPlan plan) {
+        for (int order = 0; order < input.orderCount(); order++) {
+            if (!plan.isSettled(order)) {
+                continue;
+            }
+            long amount = input.orderAmount(order);
+            long points = plan.points(order);
+            long cardAmount = plan.cardAmount(order);
+            long discount = plan.discount(order);
+            int card = plan.card(order);
+            assertEquals(amount, points + cardAmount + discount, input.orderId(order));
+            if (card == PaymentPlan.NO_CARD) {
+                assertEquals(0, cardAmount);
+                assertEquals(MoneyUnits.applyRatio(amount, input.methodRatio(input.pointsMethod())), discount);
+            } else if (points == 0) {
+                long promoted = isPromoted(input, order, card)
+                        ? MoneyUnits.applyRatio(amount, input.methodRatio(card))
+                        : 0;
+                assertEquals(promoted, discount, input.orderId(order));
+            } else {
+                long tenPercent = MoneyUnits.applyRatio(amount, CandidateGenerator.TEN_PERCENT);
+                assertEquals(points >= tenPercent ? tenPercent : 0, discount, input.orderId(order));
+                assertTrue(cardAmount > 0);
+            }
+        }
+        long[] used = plan.usedAmounts();
+        for (int method = 0; method < used.length; method++) {
+            assertTrue(used[method] <= input.methodLimit(method), input.methodId(method));
+        }
+    }
+
+    static boolean isPromoted(CompactInput input, int order, int card) {
+        for (int i = input.promotionStart(order); i < input.promotionEnd(order); i++) {
+            if (input.promotionMethod(i) == card) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
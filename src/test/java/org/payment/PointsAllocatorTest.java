@@ -0,0 +1,87 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointsAllocatorTest {
+
+    @Test
+    void fillsThePointsBetterThanTheGreedy() {
+        // the greedy spends 60.00 points on the largest order and leaves 40.00 that fit no other full payment
+        List<Order> orders = List.of(
+                new Order("LARGE", new BigDecimal("75.00"), List.of("mZysk")),
+                new Order("SMALL1", new BigDecimal("62.50"), List.of("mZysk")),
+                new Order("SMALL2", new BigDecimal("62.50"), List.of("mZysk")));
+        List<PaymentMethod> methods = List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("20"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("5"), new BigDecimal("1000.00")));
+        CompactInput input = CompactInput.of(orders, methods);
+        PaymentPlan greedy = PlanAssertions.greedyPlan(input);
+
+        PointsAllocation result = new PointsAllocator(input).solve(greedy);
+
+        assertEquals(MoneyUnits.toUnits(new BigDecimal("27.50")), greedy.totalDiscount());
+        assertEquals(MoneyUnits.toUnits(new BigDecimal("28.75")), result.discount());
+        assertTrue(result.allocated());
+        assertEquals(2, result.pointsOrders());
+        assertEquals(MoneyUnits.toUnits(new BigDecimal("100.00")), result.plan().usedAmounts()[0]);
+        assertTrue(result.plan().isComplete());
+        PlanAssertions.assertValid(input, result.plan());
+    }
+
+    @Test
+    void neverWorseThanGreedyOnRandomInputs() {
+        for (long seed = 0; seed < 200; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, 30, 4);
+            List<PaymentMethod> methods = inputs.methods();
+            CompactInput input = CompactInput.of(inputs.orders(methods), methods);
+            PaymentPlan greedy = PlanAssertions.greedyPlan(input);
+            if (greedy == null) {
+                continue;
+            }
+
+            PointsAllocation result = new PointsAllocator(input).solve(greedy);
+
+            assertTrue(result.discount() >= greedy.totalDiscount(), "seed " + seed);
+            assertEquals(greedy.totalDiscount(), result.greedyDiscount());
+            long[] used = result.plan().usedAmounts();
+            for (int method = 0; method < used.length; method++) {
+                assertTrue(used[method] <= input.methodLimit(method), "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void coarsensLargeCapacitiesWithinTheLimit() {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            orders.add(new Order("ORDER" + i, BigDecimal.valueOf(1_000_000 + 7_919L * i, 2), List.of()));
+        }
+        List<PaymentMethod> methods = List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("10"), new BigDecimal("500000.00")),
+                new PaymentMethod("mZysk", new BigDecimal("5"), new BigDecimal("10000000.00")));
+        CompactInput input = CompactInput.of(orders, methods);
+        PaymentPlan greedy = PlanAssertions.greedyPlan(input);
+
+        PointsAllocation result = new PointsAllocator(input).solve(greedy);
+
+        assertTrue(input.methodLimit(0) / result.step() <= PointsAllocator.MAX_CAPACITY_STEPS);
+        assertTrue(result.discount() >= greedy.totalDiscount());
+        assertTrue(result.plan().usedAmounts()[0] <= input.methodLimit(0));
+        assertTrue(result.plan().isComplete());
+    }
+
+    @Test
+    void failsOnlyWhenNothingPays() {
+        CompactInput input = CompactInput.of(
+                List.of(new Order("ORDER1", new BigDecimal("100.00"), List.of())),
+                List.of(new PaymentMethod("PUNKTY", new BigDecimal("10"), new BigDecimal("1.00"))));
+
+        assertThrows(IllegalStateException.class, () -> new PointsAllocator(input).solve(null));
+    }
+}
@@ -0,0 +1,75 @@
+package org.payment;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded random problems for comparing engines with the legacy {@link PaymentSelector}.
+ */
+final class RandomInputs {
+    private final Random random;
+    private final int maxOrders;
+    private final int maxCards;
+
+    RandomInputs(long seed, int maxOrders, int maxCards) {
+        this.random = new Random(seed);
+        this.maxOrders = maxOrders;
+        this.maxCards = maxCards;
+    }
+
+    List<PaymentMethod> methods() {
+        List<PaymentMethod> methods = new ArrayList<>();
+        int cards = 1 + random.nextInt(maxCards);
+        int pointsPosition = random.nextInt(cards + 1);
+        for (int i = 0; i < cards; i++) {
+            if (i == pointsPosition) {
+                methods.add(method(PaymentSelector.POINTS_ID));
+            }
+            methods.add(method("CARD" + i));
+        }
+        if (pointsPosition == cards) {
+            methods.add(method(PaymentSelector.POINTS_ID));
+        }
+        return methods;
+    }
+
+    List<Order> orders(List<PaymentMethod> methods) {
+        List<Order> orders = new ArrayList<>();
+        int count = 1 + random.nextInt(maxOrders);
+        for (int i = 0; i < count; i++) {
+            List<String> promotions = new ArrayList<>();
+            for (PaymentMethod method : methods) {
+                if (random.nextInt(3) == 0) {
+                    promotions.add(method.getId());
+                }
+                if (random.nextInt(12) == 0) {
+                    promotions.add(method.getId());
+                }
+            }
+            if (random.nextInt(10) == 0) {
+                promotions.add("UNKNOWN");
+            }
+            String id = random.nextInt(20) == 0 && i > 0 ? "ORDER" + random.nextInt(i) : "ORDER" + i;
+            orders.add(new Order(id, amount(500_00), promotions));
+        }
+        return orders;
+    }
+
+    static List<PaymentMethod> copy(List<PaymentMethod> methods) {
+        return methods.stream()
+                .map(m -> new PaymentMethod(m.getId(), m.getDiscountPercent(), m.getLimit()))
+                .toList();
+    }
+
+    private PaymentMethod method(String id) {
+        BigDecimal discount = BigDecimal.valueOf(random.nextInt(4) == 0 ? 10 : random.nextInt(26));
+        return new PaymentMethod(id, discount, amount(Math.max(1_500_00, maxOrders * 100_00)));
+    }
+
+    private BigDecimal amount(int maxCents) {
+        int cents = random.nextInt(maxCents);
+        return random.nextBoolean() ? BigDecimal.valueOf(cents / 100 * 100L, 2) : BigDecimal.valueOf(cents, 2);
+    }
+}
@@ -0,0 +1,70 @@
+package org.payment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemainingLimitIndexTest {
+    private PaymentMethod card1;
+    private PaymentMethod card2;
+    private PaymentMethod card3;
+    private RemainingLimitIndex index;
+
+    @BeforeEach
+    void setUp() {
+        card1 = new PaymentMethod("C1", new BigDecimal("5"), new BigDecimal("100.00"));
+        card2 = new PaymentMethod("C2", new BigDecimal("5"), new BigDecimal("50.00"));
+        card3 = new PaymentMethod("C3", new BigDecimal("5"), new BigDecimal("50"));
+        index = new RemainingLimitIndex(List.of(card1, card2, card3));
+    }
+
+    @Test
+    void minFitPrefersSmallestLimitThenInputOrder() {
+        assertEquals("C2", index.findMinFit(new BigDecimal("40")).get().getId());
+        assertEquals("C2", index.findMinFit(new BigDecimal("50")).get().getId());
+        assertEquals("C1", index.findMinFit(new BigDecimal("50.01")).get().getId());
+        assertTrue(index.findMinFit(new BigDecimal("100.01")).isEmpty());
+    }
+
+    @Test
+    void maxBelowPrefersLargestLimitThenInputOrder() {
+        assertEquals("C2", index.findMaxBelow(new BigDecimal("100")).get().getId());
+        assertEquals("C1", index.findMaxBelow(new BigDecimal("100.01")).get().getId());
+        assertTrue(index.findMaxBelow(new BigDecimal("50")).isEmpty());
+    }
+
+    @Test
+    void paymentsReorderTheIndex() {
+        card2.payAmount(new BigDecimal("20"));
+        index.update(card2);
+        assertEquals("C2", index.findMinFit(new BigDecimal("30")).get().getId());
+        assertEquals("C3", index.findMinFit(new BigDecimal("30.01")).get().getId());
+
+        card1.payAmount(new BigDecimal("50"));
+        index.update(card1);
+        assertEquals("C1", index.findMinFit(new BigDecimal("30.01")).get().getId());
+        assertEquals("C1", index.findMaxBelow(new BigDecimal("60")).get().getId());
+
+        card1.setUsedAmount(BigDecimal.ZERO);
+        card2.setUsedAmount(BigDecimal.ZERO);
+        index.update(card1);
+        index.update(card2);
+        assertEquals("C2", index.findMinFit(new BigDecimal("40")).get().getId());
+    }
+
+    @Test
+    void indexesOverTheSameCardsStayIndependent() {
+        RemainingLimitIndex other = new RemainingLimitIndex(List.of(card1, card2, card3));
+        card2.payAmount(new BigDecimal("20"));
+        index.update(card2);
+
+        assertEquals("C2", index.findMinFit(new BigDecimal("30")).get().getId());
+        other.update(card2);
+        assertEquals("C2", other.findMinFit(new BigDecimal("30")).get().getId());
+        assertEquals("C2", index.findMinFit(new BigDecimal("30")).get().getId());
+    }
+}
@@ -0,0 +1,105 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScenarioEngineTest {
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+            new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+            new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+            new Order("ORDER4", new BigDecimal("50.00"), List.of()));
+
+    private static List<PaymentMethod> methods() {
+        return List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00")));
+    }
+
+    private static List<PaymentMethod> apply(List<PaymentMethod> methods, Scenario scenario) {
+        List<PaymentMethod> changed = new ArrayList<>();
+        for (PaymentMethod method : methods) {
+            changed.add(new PaymentMethod(method.getId(),
+                    scenario.discounts().getOrDefault(method.getId(), method.getDiscountPercent()),
+                    scenario.limits().getOrDefault(method.getId(), method.getLimit())));
+        }
+        return changed;
+    }
+
+    private static void assertMatchesFreshRun(List<Order> orders, List<PaymentMethod> methods, ScenarioResult result) {
+        SelectionResult expected;
+        try {
+            expected = PaymentSelection.select(orders, apply(methods, result.scenario()));
+        } catch (IllegalStateException e) {
+            assertNotNull(result.error(), result.scenario().name());
+            return;
+        }
+        assertEquals(expected, result.selection(), result.scenario().name());
+    }
+
+    @Test
+    void unchangedScenarioMatchesTheExample() {
+        ScenarioResult result = new ScenarioEngine(ORDERS, methods(), 1).evaluate(Scenario.of("base"));
+
+        assertEquals(new BigDecimal("90.00"), result.selection().methodTotals().get("PUNKTY"));
+        assertEquals(new BigDecimal("175.00"), result.selection().methodTotals().get("mZysk"));
+        assertEquals(new BigDecimal("190.00"), result.selection().methodTotals().get("BosBankrut"));
+        assertEquals(new BigDecimal("45.00"), result.totalDiscount());
+    }
+
+    @Test
+    void limitSweepMatchesIndependentRuns() {
+        ScenarioEngine engine = new ScenarioEngine(ORDERS, methods(), 4);
+        List<Scenario> sweep = new ArrayList<>();
+        for (int limit = 0; limit <= 500; limit += 5) {
+            sweep.add(Scenario.of("PUNKTY=" + limit).withLimit("PUNKTY", BigDecimal.valueOf(limit)));
+        }
+
+        List<ScenarioResult> results = engine.evaluate(sweep);
+
+        assertEquals(sweep.size(), results.size());
+        for (int i = 0; i < sweep.size(); i++) {
+            assertSame(sweep.get(i), results.get(i).scenario());
+            assertMatchesFreshRun(ORDERS, methods(), results.get(i));
+        }
+    }
+
+    @Test
+    void randomVariantsMatchIndependentRuns() {
+        Random random = new Random(7);
+        for (int seed = 0; seed < 300; seed++) {
+            RandomInputs inputs = new RandomInputs(seed, 25, 5);
+            List<PaymentMethod> methods = inputs.methods();
+            List<Order> orders = inputs.orders(methods);
+            ScenarioEngine engine = new ScenarioEngine(orders, methods, 1);
+
+            for (int variant = 0; variant < 5; variant++) {
+                Scenario scenario = Scenario.of(seed + "/" + variant);
+                for (PaymentMethod method : methods) {
+                    if (random.nextInt(3) == 0) {
+                        scenario = scenario.withLimit(method.getId(),
+                                method.getLimit().multiply(BigDecimal.valueOf(random.nextInt(200), 2)));
+                    }
+                    if (random.nextInt(3) == 0) {
+                        scenario = scenario.withDiscount(method.getId(), BigDecimal.valueOf(random.nextInt(40)));
+                    }
+                }
+                assertMatchesFreshRun(orders, methods, engine.evaluate(scenario));
+            }
+        }
+    }
+
+    @Test
+    void rejectsUnknownMethods() {
+        ScenarioEngine engine = new ScenarioEngine(ORDERS, methods(), 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.evaluate(Scenario.of("typo").withLimit("mZisk", BigDecimal.TEN)));
+    }
+}
@@ -0,0 +1,167 @@
+package org.payment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SelectionCacheTest {
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+            new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+            new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+            new Order("ORDER4", new BigDecimal("50.00"), List.of()));
+
+    private static List<PaymentMethod> methods() {
+        return List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00")));
+    }
+
+    private static String printed(SelectionResult result) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        result.printTotals(new PrintStream(out, true, StandardCharsets.UTF_8));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Function<CompactInput, SelectionResult> counting(AtomicInteger solves) {
+        return input -> {
+            solves.incrementAndGet();
+            FixedPointSelector selector = new FixedPointSelector(input);
+            selector.select();
+            return SelectionResult.of(selector.getPlan());
+        };
+    }
+
+    @Test
+    void hitPrintsExactlyWhatAFreshSolvePrints() throws Exception {
+        SelectionCache cache = new SelectionCache(1 << 20, null);
+        SelectionResult fresh = PaymentSelection.select(ORDERS, methods());
+
+        SelectionResult first = cache.select(ORDERS, methods());
+        SelectionResult second = cache.select(ORDERS, methods());
+
+        assertEquals(fresh, first);
+        assertSame(first, second);
+        assertEquals(printed(fresh), printed(second));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void keyIgnoresDecimalScaleButNotOrder() {
+        String key = SelectionCache.key(CompactInput.of(ORDERS, methods()));
+        List<Order> rescaled = List.of(
+                new Order("ORDER1", new BigDecimal("100"), List.of("mZysk", "unknown")),
+                new Order("ORDER2", new BigDecimal("200.0"), List.of("BosBankrut", "PUNKTY")),
+                new Order("ORDER3", new BigDecimal("150.000"), List.of("mZysk", "BosBankrut")),
+                new Order("ORDER4", new BigDecimal("5E+1"), List.of()));
+        assertEquals(key, SelectionCache.key(CompactInput.of(rescaled, List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15.0"), new BigDecimal("100")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.0")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5.00"), new BigDecimal("2E+2"))))));
+
+        assertNotEquals(key, SelectionCache.key(CompactInput.of(List.of(ORDERS.get(1), ORDERS.get(0),
+                ORDERS.get(2), ORDERS.get(3)), methods())));
+        assertNotEquals(key, SelectionCache.key(CompactInput.of(ORDERS, List.of(methods().get(1),
+                methods().get(0), methods().get(2)))));
+        assertNotEquals(key, SelectionCache.key(CompactInput.of(ORDERS.subList(0, 3), methods())));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondTheBudget() throws Exception {
+        AtomicInteger solves = new AtomicInteger();
+        CompactInput[] inputs = new CompactInput[4];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = CompactInput.of(List.of(new Order("O" + i, new BigDecimal("10.00"), List.of())),
+                    methods());
+        }
+        SelectionCache probe = new SelectionCache(1 << 20, null);
+        probe.select(inputs[0], counting(solves));
+        long entryBytes = probe.memoryBytes();
+
+        SelectionCache cache = new SelectionCache(2 * entryBytes, null);
+        cache.select(inputs[0], counting(solves));
+        cache.select(inputs[1], counting(solves));
+        cache.select(inputs[0], counting(solves));
+        cache.select(inputs[2], counting(solves));
+
+        assertEquals(2, cache.memoryEntries());
+        assertEquals(1, cache.getEvictions());
+        solves.set(0);
+        cache.select(inputs[0], counting(solves));
+        assertEquals(0, solves.get());
+        cache.select(inputs[1], counting(solves));
+        assertEquals(1, solves.get());
+        assertTrue(cache.memoryBytes() <= 2 * entryBytes);
+    }
+
+    @Test
+    void diskTierOutlivesTheCache(@TempDir Path directory) throws Exception {
+        SelectionResult fresh = new SelectionCache(0, directory).select(ORDERS, methods());
+
+        SelectionCache reopened = new SelectionCache(0, directory);
+        SelectionResult stored = reopened.select(ORDERS, methods());
+
+        assertEquals(fresh, stored);
+        assertEquals(printed(fresh), printed(stored));
+        assertEquals(1, reopened.getDiskHits());
+        assertEquals(0, reopened.getMisses());
+        assertEquals(0, reopened.memoryEntries());
+    }
+
+    @Test
+    void failuresAreNotCached() throws Exception {
+        SelectionCache cache = new SelectionCache(1 << 20, null);
+        List<PaymentMethod> tooSmall = List.of(new PaymentMethod("PUNKTY", BigDecimal.ZERO, new BigDecimal("1.00")));
+
+        assertThrows(IllegalStateException.class, () -> cache.select(ORDERS, tooSmall));
+        assertThrows(IllegalStateException.class, () -> cache.select(ORDERS, tooSmall));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.memoryEntries());
+    }
+
+    @Test
+    void unreadableEntryIsAMiss(@TempDir Path directory) throws Exception {
+        SelectionResult fresh = new SelectionCache(0, directory).select(ORDERS, methods());
+        Path entry;
+        try (Stream<Path> files = Files.list(directory)) {
+            entry = files.findFirst().orElseThrow();
+        }
+        Files.writeString(entry, "{\"methodTotals\":{\"PUNKTY\"");
+
+        SelectionCache reopened = new SelectionCache(0, directory);
+        assertEquals(fresh, reopened.select(ORDERS, methods()));
+        assertEquals(1, reopened.getUnreadableEntries());
+        assertEquals(1, reopened.getMisses());
+
+        SelectionCache repaired = new SelectionCache(0, directory);
+        assertEquals(fresh, repaired.select(ORDERS, methods()));
+        assertEquals(1, repaired.getDiskHits());
+    }
+
+    @Test
+    void failedStoreStillReturnsTheResult(@TempDir Path directory) throws Exception {
+        Path missing = directory.resolve("cache");
+        SelectionCache cache = new SelectionCache(1 << 20, missing);
+        Files.delete(missing);
+
+        SelectionResult result = cache.select(ORDERS, methods());
+
+        assertEquals(PaymentSelection.select(ORDERS, methods()), result);
+        assertEquals(1, cache.getFailedStores());
+        assertEquals(1, cache.memoryEntries());
+    }
+}
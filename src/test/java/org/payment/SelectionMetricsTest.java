@@ -0,0 +1,141 @@
+package org.payment;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SelectionMetricsTest {
+    private static List<Order> exampleOrders() {
+        return List.of(
+                new Order("ORDER1", new BigDecimal("100.00"), List.of("mZysk")),
+                new Order("ORDER2", new BigDecimal("200.00"), List.of("BosBankrut")),
+                new Order("ORDER3", new BigDecimal("150.00"), List.of("mZysk", "BosBankrut")),
+                new Order("ORDER4", new BigDecimal("50.00"), List.of()));
+    }
+
+    private static List<PaymentMethod> exampleMethods() {
+        return List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+                new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+                new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("200.00")));
+    }
+
+    private static List<Order> partialFallbackOrders() {
+        return List.of(
+                new Order("A", new BigDecimal("100.00"), List.of()),
+                new Order("B", new BigDecimal("100.00"), List.of()));
+    }
+
+    private static List<PaymentMethod> partialFallbackMethods() {
+        return List.of(
+                new PaymentMethod("PUNKTY", new BigDecimal("0"), new BigDecimal("100.00")),
+                new PaymentMethod("CARD", new BigDecimal("0"), new BigDecimal("100.00")));
+    }
+
+    private static int settledTotal(SelectionMetrics metrics) {
+        return Arrays.stream(SelectionMetrics.Phase.values()).mapToInt(metrics::getSettledOrders).sum();
+    }
+
+    @Test
+    void legacyRunRecordsPhasesAndTotals() {
+        SelectionMetrics metrics = new SelectionMetrics("legacy");
+        new PaymentSelector(exampleOrders(), exampleMethods(), metrics).runSelector();
+
+        assertEquals(4, settledTotal(metrics));
+        assertTrue(metrics.getGeneratedCandidates() >= metrics.getKeptCandidates());
+        assertTrue(metrics.getKeptCandidates() > 0);
+        assertTrue(metrics.getPhaseNanos(SelectionMetrics.Phase.GREEDY) > 0);
+        assertEquals(0, metrics.getNoDiscountFallbacks());
+        assertEquals(new BigDecimal("45.00"), metrics.getTotalDiscount());
+    }
+
+    @Test
+    void partialFallbackIsCounted() {
+        SelectionMetrics metrics = new SelectionMetrics("legacy");
+        new PaymentSelector(partialFallbackOrders(), partialFallbackMethods(), metrics).runSelector();
+
+        assertEquals(1, metrics.getPartialFallbackOrders());
+        assertEquals(1, metrics.getSettledOrders(SelectionMetrics.Phase.PARTIAL_FALLBACK));
+        assertEquals(2, settledTotal(metrics));
+    }
+
+    @Test
+    void fixedPointEngineMatchesLegacyCounts() {
+        for (List<Order> orders : List.of(exampleOrders(), partialFallbackOrders())) {
+            List<PaymentMethod> methods = orders.size() == 2 ? partialFallbackMethods() : exampleMethods();
+            SelectionMetrics legacy = new SelectionMetrics("legacy");
+            new PaymentSelector(orders, methods.stream()
+                    .map(m -> new PaymentMethod(m.getId(), m.getDiscountPercent(), m.getLimit()))
+                    .toList(), legacy).runSelector();
+            SelectionMetrics fixed = new SelectionMetrics("fixed");
+            new FixedPointSelector(CompactInput.of(orders, methods), 1, fixed).select();
+
+            for (SelectionMetrics.Phase phase : List.of(SelectionMetrics.Phase.FULL_CARD_FALLBACK,
+                    SelectionMetrics.Phase.PARTIAL_FALLBACK, SelectionMetrics.Phase.NO_DISCOUNT_FALLBACK)) {
+                assertEquals(legacy.getSettledOrders(phase), fixed.getSettledOrders(phase), phase.name());
+            }
+            assertEquals(settledTotal(legacy), settledTotal(fixed));
+            assertEquals(legacy.getPartialFallbackOrders(), fixed.getPartialFallbackOrders());
+            assertEquals(legacy.getTotalDiscount(), fixed.getTotalDiscount());
+        }
+    }
+
+    @Test
+    void disabledMetricsRecordNothing() {
+        SelectionMetrics metrics = SelectionMetrics.disabled("legacy");
+        new PaymentSelector(partialFallbackOrders(), partialFallbackMethods(), metrics).runSelector();
+
+        assertFalse(metrics.isEnabled());
+        assertEquals(0, settledTotal(metrics));
+        assertEquals(0, metrics.getPhaseNanos(SelectionMetrics.Phase.GREEDY));
+        assertEquals(0, metrics.getPartialFallbackOrders());
+        assertEquals(0, metrics.getCardLookups());
+    }
+
+    @Test
+    void writesJsonSummary() throws Exception {
+        SelectionMetrics metrics = new SelectionMetrics("fixed");
+        new FixedPointSelector(CompactInput.of(exampleOrders(), exampleMethods()), 1, metrics).select();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        metrics.writeJson(out);
+
+        JsonNode json = new ObjectMapper().readTree(out.toByteArray());
+        assertEquals("fixed", json.get("engine").asText());
+        assertEquals("45.00", json.get("totalDiscount").asText());
+        assertEquals("GENERATE", json.get("phases").get(0).get("name").asText());
+        int settled = 0;
+        for (JsonNode phase : json.get("phases")) {
+            settled += phase.get("ordersSettled").asInt();
+        }
+        assertEquals(4, settled);
+    }
+
+    @Test
+    void phasesAreEmittedAsFlightRecorderEvents(@TempDir Path directory) throws Exception {
+        Path dump = directory.resolve("selection.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.payment.SelectionPhase");
+            recording.start();
+            new FixedPointSelector(CompactInput.of(exampleOrders(), exampleMethods()), 1,
+                    SelectionMetrics.disabled("fixed")).select();
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertTrue(events.stream().anyMatch(e -> e.getString("phase").equals("GREEDY")
+                && e.getString("engine").equals("fixed")));
+    }
+}
@@ -0,0 +1,200 @@
+package org.payment;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SelectionServerTest {
+    private static final String EXAMPLE = """
+            {"orders":[
+              {"id":"ORDER1","value":"100.00","promotions":["mZysk"]},
+              {"id":"ORDER2","value":"200.00","promotions":["BosBankrut"]},
+              {"id":"ORDER3","value":"150.00","promotions":["mZysk","BosBankrut"]},
+              {"id":"ORDER4","value":"50.00"}],
+             "paymentMethods":[
+              {"id":"PUNKTY","discount":"15","limit":"100.00"},
+              {"id":"mZysk","discount":"10","limit":"180.00"},
+              {"id":"BosBankrut","discount":"5","limit":"200.00"}]}
+            """;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private SelectionServer server;
+
+    private SelectionServer start(int maxInFlight, int maxRequestBytes) throws IOException {
+        server = new SelectionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxInFlight,
+                maxRequestBytes);
+        server.start();
+        return server;
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.close();
+        }
+        client.close();
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri("/select"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.port() + path);
+    }
+
+    @Test
+    void selectsTheExample() throws Exception {
+        start(4, 1 << 16);
+
+        HttpResponse<String> response = post(EXAMPLE);
+
+        assertEquals(200, response.statusCode());
+        JsonNode result = mapper.readTree(response.body());
+        assertEquals("90.00", result.get("methodTotals").get("PUNKTY").asText());
+        assertEquals("175.00", result.get("methodTotals").get("mZysk").asText());
+        assertEquals("190.00", result.get("methodTotals").get("BosBankrut").asText());
+        assertEquals(4, result.get("assignments").size());
+        // the latency is recorded once the handler returns, which may be after the client got the response
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.latencies().count() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, server.latencies().count());
+    }
+
+    @Test
+    void concurrentRequestsGetIdenticalResults() throws Exception {
+        start(64, 1 << 16);
+        String expected = post(EXAMPLE).body();
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(uri("/select"))
+                    .POST(HttpRequest.BodyPublishers.ofString(EXAMPLE)).build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> completed = response.get();
+            if (completed.statusCode() != 503) {
+                assertEquals(200, completed.statusCode());
+                assertEquals(expected, completed.body());
+            }
+        }
+    }
+
+    @Test
+    void rejectsBadRequests() throws Exception {
+        start(4, 512);
+
+        assertEquals(400, post("{\"orders\": [").statusCode());
+        assertEquals(413, post(EXAMPLE + " ".repeat(512)).statusCode());
+        assertEquals(422, post("""
+                {"orders":[{"id":"O1","value":"100.00"}],
+                 "paymentMethods":[{"id":"PUNKTY","discount":"15","limit":"10.00"}]}
+                """).statusCode());
+        assertEquals(400, post("""
+                {"orders":[{"id":"O1"}],
+                 "paymentMethods":[{"id":"PUNKTY","discount":"15","limit":"10.00"}]}
+                """).statusCode());
+        assertEquals(400, post("""
+                {"orders":[{"id":"O1","value":"100.00"}],
+                 "paymentMethods":[{"id":"PUNKTY","discount":"15"}]}
+                """).statusCode());
+        HttpResponse<String> get = client.send(HttpRequest.newBuilder(uri("/select")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, get.statusCode());
+    }
+
+    @Test
+    void rejectsAMalformedContentLength() throws Exception {
+        start(4, 512);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            socket.getOutputStream().write(("POST /select HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Content-Length: 12x\r\nConnection: close\r\n\r\n{}").getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            String statusLine = in.readLine();
+            assertNotNull(statusLine);
+            assertTrue(statusLine.startsWith("HTTP/1.1 400"), statusLine);
+        }
+    }
+
+    @Test
+    void rejectsRequestsOverTheInFlightLimit() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = new SelectionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 1 << 16,
+                request -> {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return PaymentSelection.select(request.orders(), request.paymentMethods());
+                });
+        server.start();
+
+        CompletableFuture<HttpResponse<String>> first = client.sendAsync(HttpRequest.newBuilder(uri("/select"))
+                .POST(HttpRequest.BodyPublishers.ofString(EXAMPLE)).build(), HttpResponse.BodyHandlers.ofString());
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        assertEquals(1, stats().get("inFlight").asInt());
+
+        HttpResponse<String> rejected = post(EXAMPLE);
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").orElseThrow());
+
+        release.countDown();
+        assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, post(EXAMPLE).statusCode());
+
+        JsonNode stats = stats();
+        assertEquals(0, stats.get("inFlight").asInt());
+        assertEquals(1, stats.get("rejected").asInt());
+        assertEquals(2, stats.get("latency").get("count").asInt());
+    }
+
+    private JsonNode stats() throws Exception {
+        return mapper.readTree(client.send(HttpRequest.newBuilder(uri("/stats")).build(),
+                HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    @Test
+    void histogramReportsBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(3_000);
+        }
+        histogram.record(5_000_000);
+
+        assertEquals(100, histogram.count());
+        assertEquals(4, histogram.percentileMicros(0.5));
+        assertEquals(4, histogram.percentileMicros(0.99));
+        assertEquals(8192, histogram.percentileMicros(1.0));
+        assertEquals(5_000, histogram.maxMicros());
+    }
+}
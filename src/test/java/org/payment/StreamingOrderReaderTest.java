@@ -0,0 +1,85 @@
+package org.payment;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingOrderReaderTest {
+    private static final String ORDERS_JSON = """
+            [
+                {"id":"ORDER1","value":"100.00","promotions":["mZysk"]},
+                {"id":"ORDER2","value":200.00,"promotions":["BosBankrut","PUNKTY","UNKNOWN"]},
+                {"id":"ORDER3","value":"150.00","promotions":["mZysk","BosBankrut"]},
+                {"id":"ORDER4","value":"50.00"},
+                {"id":"ORDER5","promotions":null,"value":"12.34"}
+            ]
+            """;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory factory = new JsonFactory();
+    private final List<PaymentMethod> methods = List.of(
+            new PaymentMethod("PUNKTY", new BigDecimal("15"), new BigDecimal("100.00")),
+            new PaymentMethod("mZysk", new BigDecimal("10"), new BigDecimal("180.00")),
+            new PaymentMethod("BosBankrut", new BigDecimal("5"), new BigDecimal("250.00")));
+
+    @Test
+    void decodesOrdersLikeTheObjectMapper() throws Exception {
+        CompactInput streamed = new CompactInput(methods);
+        List<Integer> seen = new ArrayList<>();
+        try (JsonParser parser = factory.createParser(ORDERS_JSON)) {
+            StreamingOrderReader.read(parser, streamed, seen::add);
+        }
+        List<Order> orders = mapper.readValue(ORDERS_JSON, new TypeReference<>() {});
+        CompactInput expected = CompactInput.of(orders, methods);
+
+        assertEquals(List.of(0, 1, 2, 3, 4), seen);
+        assertEquals(expected.orderCount(), streamed.orderCount());
+        for (int order = 0; order < expected.orderCount(); order++) {
+            assertEquals(expected.orderId(order), streamed.orderId(order));
+            assertEquals(expected.orderAmount(order), streamed.orderAmount(order));
+            assertEquals(expected.promotionStart(order), streamed.promotionStart(order));
+            assertEquals(expected.promotionEnd(order), streamed.promotionEnd(order));
+        }
+        for (int i = 0; i < expected.promotionEnd(expected.orderCount() - 1); i++) {
+            assertEquals(expected.promotionMethod(i), streamed.promotionMethod(i));
+        }
+    }
+
+    @Test
+    void selectorConsumesOrdersWhileParsing() throws Exception {
+        CompactInput input = new CompactInput(methods);
+        FixedPointSelector selector = new FixedPointSelector(input);
+        try (JsonParser parser = factory.createParser(ORDERS_JSON)) {
+            StreamingOrderReader.read(parser, input, selector::acceptOrder);
+        }
+        long[] used = selector.select();
+
+        List<PaymentMethod> legacyMethods = RandomInputs.copy(methods);
+        new PaymentSelector(mapper.readValue(ORDERS_JSON, new TypeReference<>() {}), legacyMethods).runSelector();
+        for (int i = 0; i < legacyMethods.size(); i++) {
+            assertEquals(legacyMethods.get(i).getUsedAmount().setScale(2, RoundingMode.HALF_UP),
+                    MoneyUnits.toCents(used[i]));
+        }
+    }
+
+    @Test
+    void rejectsUnknownFieldsAndMissingValues() {
+        CompactInput input = new CompactInput(methods);
+        assertThrows(JsonParseException.class, () -> StreamingOrderReader.read(
+                factory.createParser("[{\"id\":\"A\",\"value\":\"1\",\"extra\":1}]"), input, order -> { }));
+        assertThrows(JsonParseException.class, () -> StreamingOrderReader.read(
+                factory.createParser("[{\"id\":\"A\"}]"), input, order -> { }));
+        assertThrows(JsonParseException.class, () -> StreamingOrderReader.read(
+                factory.createParser("[{\"id\":\"A\",\"value\":999999999999999}]"), input, order -> { }));
+    }
+}